@@ -50,6 +50,92 @@ mwanzia.configure = function(defaultExceptionHandler, defaultErrorHandler){
     }
 }
 
+/**
+ * When true, calls are POSTed as an application/json request body instead of
+ * as a form parameter. The server reads the body as a stream straight into
+ * the remote method's parameter types, which saves url-decoding and parsing
+ * large arguments twice.
+ */
+mwanzia.jsonRequests = false;
+
+/**
+ * When true, responses are requested as CBOR (a binary encoding of JSON) and
+ * decoded with mwanzia.cbor.decode(), which saves the server from formatting
+ * numbers as text and the browser from parsing them.  Browsers without
+ * XMLHttpRequest Level 2 (binary responses) keep getting JSON.
+ */
+mwanzia.binaryResponses = false;
+
+/**
+ * Starts a batch of remote calls.  All AjaxInvocations that go() in the same tick
+ * (i.e. before the current code returns to the browser) are sent together in one
+ * request per Application instead of one request each.  For example:
+ *
+ * mwanzia.batch({atomic: true});
+ * company.hire("Sally", "Manager").success(...).go();
+ * company.hire("Second", "Employee").success(...).go();
+ *
+ * If a function is supplied, the batch is sent as soon as that function returns.
+ * Batches can't be nested - calling mwanzia.batch() while a batch is already
+ * collecting calls just adds to that batch.
+ *
+ * Options:
+ *
+ * atomic - when true, the server processes the whole batch as one unit (e.g. in a
+ * single transaction) and stops at the first exception, in which case every call
+ * in the batch reports an exception.  By default, calls are independent.
+ *
+ * @param {Function} fn - optional function that makes the calls
+ * @param {Object} options
+ */
+mwanzia.batch = function(fn, options){
+    if (typeof(fn) != "function") {
+        options = fn;
+        fn = null;
+    }
+    if (mwanzia._batch) {
+        if (fn) 
+            fn();
+        return;
+    }
+    var batch = mwanzia._batch = {
+        atomic: options ? !!options.atomic : false,
+        invocations: []
+    };
+    if (fn) {
+        try {
+            fn();
+        }
+        finally {
+            mwanzia._sendBatch(batch);
+        }
+    }
+    else {
+        setTimeout(function(){
+            mwanzia._sendBatch(batch);
+        }, 0);
+    }
+}
+
+mwanzia._sendBatch = function(batch){
+    if (mwanzia._batch == batch) 
+        mwanzia._batch = null;
+    var queuedByApp = {};
+    var apps = {};
+    for (var i = 0; i < batch.invocations.length; i++) {
+        var queued = batch.invocations[i];
+        var name = queued.invocation._app._name;
+        if (!queuedByApp[name]) {
+            queuedByApp[name] = [];
+            apps[name] = queued.invocation._app;
+        }
+        queuedByApp[name].push(queued);
+    }
+    for (var name in queuedByApp) {
+        apps[name]._invokeRemoteBatch(queuedByApp[name], batch.atomic);
+    }
+}
+
 /**
  * Imports top level packages so that they can be referred to by name.
  * This includes all packages starting with com, org or net.
@@ -135,6 +221,7 @@ mwanzia.AjaxInvocation = Class.extend({
         this._errorCallback = new mwanzia.Future(mwanzia._defaultHandlers.error);
         this._exceptionCallback = new mwanzia.Future(mwanzia._defaultHandlers.exception);
         this._useNamedArgs = false;
+        this._fields = null;
     },
     
     useNamedArgs: function() {
@@ -142,6 +229,16 @@ mwanzia.AjaxInvocation = Class.extend({
     	return this;
     },
     
+    /**
+     * Only return the given properties of the result (and of each element, if
+     * it's an array), e.g. fields("id", "name", "owner.lastName").  The server
+     * doesn't read the other properties at all.
+     */
+    fields: function() {
+        this._fields = Array.prototype.slice.call(arguments);
+        return this;
+    },
+    
     success: function(callback){
         this._successCallback.register(callback);
         return this;
@@ -192,7 +289,17 @@ mwanzia.AjaxInvocation = Class.extend({
     },
     
     _doInvoke: function(){
-        this._app._invokeRemote(this._prepareCall(), this);
+        var call = this._prepareCall();
+        if (mwanzia._batch) {
+            console.debug("Adding call to batch");
+            mwanzia._batch.invocations.push({
+                call: call,
+                invocation: this
+            });
+        }
+        else {
+            this._app._invokeRemote(call, this);
+        }
         return this;
     },
     
@@ -212,13 +319,16 @@ mwanzia.AjaxInvocation = Class.extend({
                 }
             }
         }
-        return {
+        var call = {
             "@class": "org.mwanzia.Call",
             targetClass: this._targetClass,
             target: targetData,
             method: this._methodName,
             arguments: args
-        }
+        };
+        if (this._fields && this._fields.length > 0)
+            call.fields = this._fields;
+        return call;
     },
     
     _identifyTargetFunction: function() {
@@ -385,33 +495,127 @@ mwanzia.Application = mwanzia.RemoteObject.extend({
     
     _invokeRemote: function(call, result){
         console.debug("Making AJAX call");
+        this._post({
+            application: this._name,
+            targetClass: call.targetClass,
+            method: call.method
+        }, "call", call, function(data){
+            if (data.exception) 
+                result._excepted(data.exception);
+            else 
+                result._succeeded(data.result);
+        }, function(error){
+            result._errored(error);
+        });
+        return result;
+    },
+    
+    _invokeRemoteBatch: function(queued, atomic){
+        console.debug("Making batched AJAX call with " + queued.length + " calls");
+        var calls = [];
+        for (var i = 0; i < queued.length; i++) {
+            calls.push(queued[i].call);
+        }
+        this._post({
+            application: this._name
+        }, "batch", {
+            atomic: atomic,
+            calls: calls
+        }, function(data){
+            for (var i = 0; i < queued.length; i++) {
+                if (data[i].exception) 
+                    queued[i].invocation._excepted(data[i].exception);
+                else 
+                    queued[i].invocation._succeeded(data[i].result);
+            }
+        }, function(error){
+            for (var i = 0; i < queued.length; i++) {
+                queued[i].invocation._errored(error);
+            }
+        });
+    },
+    
+    /**
+     * Posts the given payload either as a form parameter with the given name or,
+     * if mwanzia.jsonRequests is set, as the request body (in which case the server
+     * only needs to know that a batch is a batch).
+     */
+    _post: function(params, payloadName, payload, success, error){
         var app = this;
+        var url = this._remoteUrl;
+        var contentType = "application/x-www-form-urlencoded";
+        var data;
+        if (mwanzia.jsonRequests) {
+            if (payloadName == "batch") 
+                params.batch = true;
+            url += (url.indexOf("?") < 0 ? "?" : "&") + jQuery.param(params);
+            contentType = "application/json; charset=utf-8";
+            data = mwanzia.stringify(payload);
+        }
+        else {
+            params[payloadName] = mwanzia.stringify(payload);
+            data = params;
+        }
+        if (mwanzia.binaryResponses && mwanzia.cbor.supported()) {
+            this._postBinary(url, contentType, typeof(data) == "string" ? data : jQuery.param(data), success, error);
+            return;
+        }
         jQuery.ajax({
-            url: this._remoteUrl,
+            url: url,
             type: 'POST',
 			dataType: "text",
-            data: {
-                application: this._name,
-                targetClass: call.targetClass,
-                method: call.method,
-                call: mwanzia.stringify(call)
-            },
+            contentType: contentType,
+            data: data,
             success: function(data, textStatus, xhr){
-                data = app._parseResponse(data);
-                if (data.exception) 
-                    result._excepted(data.exception);
-                else 
-                    result._succeeded(data.result);
+                success(app._parseResponse(data));
             },
-            error: function(xhr, textStatus, error){
-                result._errored(error);
+            error: function(xhr, textStatus, failure){
+                error(failure);
             }
         });
-        return result;
+    },
+    
+    /**
+     * Posts the given data asking for a CBOR response.  jQuery can't receive
+     * binary responses, so this uses XMLHttpRequest directly.  The server may
+     * still answer with JSON (e.g. if it doesn't know CBOR).
+     */
+    _postBinary: function(url, contentType, data, success, error){
+        var app = this;
+        var xhr = new XMLHttpRequest();
+        xhr.open("POST", url, true);
+        xhr.responseType = "arraybuffer";
+        xhr.setRequestHeader("Content-Type", contentType);
+        xhr.setRequestHeader("Accept", "application/cbor, application/json;q=0.9");
+        xhr.onreadystatechange = function(){
+            if (xhr.readyState != 4) 
+                return;
+            if (xhr.status < 200 || xhr.status >= 300) {
+                error(xhr.statusText);
+                return;
+            }
+            var response;
+            try {
+                response = app._decodeResponse(xhr.response, xhr.getResponseHeader("Content-Type"));
+            } 
+            catch (e) {
+                error(e.message);
+                return;
+            }
+            success(response);
+        };
+        xhr.send(data);
     },
     
     _parseResponse: function(data) {
         return JSON.parse(data, mwanzia.buildJsonReviver());
+    },
+    
+    _decodeResponse: function(buffer, contentType) {
+        if (contentType && contentType.indexOf("application/cbor") == 0) 
+            return mwanzia.revive(mwanzia.cbor.decode(buffer), mwanzia.buildJsonReviver());
+        var bytes = new Uint8Array(buffer);
+        return this._parseResponse(mwanzia.cbor.utf8(bytes, 0, bytes.length));
     }
 });
 
@@ -428,6 +632,216 @@ mwanzia.stringify = function(obj) {
 	});
 }
 
+/**
+ * Applies a JSON2 reviver to a value that didn't come from JSON.parse() (e.g. one
+ * decoded from CBOR), visiting it in the same order that JSON.parse() would.
+ *
+ * @param {Object} value
+ * @param {Function} reviver
+ */
+mwanzia.revive = function(value, reviver){
+    var walk = function(holder, key){
+        var value = holder[key];
+        if (value != null && typeof(value) == "object") {
+            for (var k in value) {
+                if (Object.prototype.hasOwnProperty.call(value, k)) {
+                    var revived = walk(value, k);
+                    if (revived === undefined) 
+                        delete value[k];
+                    else 
+                        value[k] = revived;
+                }
+            }
+        }
+        return reviver.call(holder, key, value);
+    };
+    return walk({"": value}, "");
+}
+
+/**
+ * Decoder for CBOR (RFC 7049), the binary format used when mwanzia.binaryResponses
+ * is set.  Decodes to the same values that JSON.parse() would produce for the
+ * equivalent JSON.
+ */
+mwanzia.cbor = {
+    supported: function(){
+        return typeof(XMLHttpRequest) != "undefined" && typeof(DataView) != "undefined" &&
+        "responseType" in new XMLHttpRequest();
+    },
+    
+    /**
+     * @param {ArrayBuffer} buffer
+     */
+    decode: function(buffer){
+        var view = new DataView(buffer);
+        var bytes = new Uint8Array(buffer);
+        var offset = 0;
+        var BREAK = {};
+        var readLength = function(info){
+            var value;
+            if (info < 24) 
+                return info;
+            switch (info) {
+                case 24:
+                    value = view.getUint8(offset);
+                    offset += 1;
+                    return value;
+                case 25:
+                    value = view.getUint16(offset);
+                    offset += 2;
+                    return value;
+                case 26:
+                    value = view.getUint32(offset);
+                    offset += 4;
+                    return value;
+                case 27:
+                    value = view.getUint32(offset) * 4294967296 + view.getUint32(offset + 4);
+                    offset += 8;
+                    return value;
+            }
+            throw new Error("Invalid CBOR length");
+        };
+        var readItem = function(){
+            var initial = view.getUint8(offset++);
+            if (initial == 0xff) 
+                return BREAK;
+            var info = initial & 0x1f;
+            var length, result, item, i;
+            switch (initial >> 5) {
+                case 0:
+                    return readLength(info);
+                case 1:
+                    return -1 - readLength(info);
+                case 2:
+                    length = readLength(info);
+                    offset += length;
+                    return bytes.subarray(offset - length, offset);
+                case 3:
+                    if (info == 31) {
+                        result = "";
+                        while ((item = readItem()) !== BREAK) 
+                            result += item;
+                        return result;
+                    }
+                    length = readLength(info);
+                    offset += length;
+                    return mwanzia.cbor.utf8(bytes, offset - length, length);
+                case 4:
+                    result = [];
+                    length = info == 31 ? -1 : readLength(info);
+                    for (i = 0; i != length; i++) {
+                        item = readItem();
+                        if (item === BREAK) 
+                            break;
+                        result.push(item);
+                    }
+                    return result;
+                case 5:
+                    result = {};
+                    length = info == 31 ? -1 : readLength(info);
+                    for (i = 0; i != length; i++) {
+                        item = readItem();
+                        if (item === BREAK) 
+                            break;
+                        result[item] = readItem();
+                    }
+                    return result;
+                case 6:
+                    var tag = readLength(info);
+                    item = readItem();
+                    if (tag == 2 || tag == 3) {
+                        // Bignums, as precise as JSON.parse() would make them
+                        result = 0;
+                        for (i = 0; i < item.length; i++) 
+                            result = result * 256 + item[i];
+                        return tag == 2 ? result : -1 - result;
+                    }
+                    return item;
+                default:
+                    switch (info) {
+                        case 20:
+                            return false;
+                        case 21:
+                            return true;
+                        case 22:
+                        case 23:
+                            return null;
+                        case 25:
+                            result = mwanzia.cbor.half(view.getUint16(offset));
+                            offset += 2;
+                            return result;
+                        case 26:
+                            result = view.getFloat32(offset);
+                            offset += 4;
+                            return result;
+                        case 27:
+                            result = view.getFloat64(offset);
+                            offset += 8;
+                            return result;
+                    }
+                    throw new Error("Unsupported CBOR simple value " + info);
+            }
+        };
+        return readItem();
+    },
+    
+    half: function(bits){
+        var exponent = (bits >> 10) & 0x1f;
+        var mantissa = bits & 0x3ff;
+        var value;
+        if (exponent == 0) 
+            value = mantissa * Math.pow(2, -24);
+        else if (exponent == 31) 
+            value = mantissa == 0 ? Infinity : NaN;
+        else 
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        return (bits & 0x8000) ? -value : value;
+    },
+    
+    /**
+     * Decodes UTF-8, using TextDecoder for long strings if the browser has it.
+     */
+    utf8: function(bytes, offset, length){
+        if (length > 64 && typeof(TextDecoder) != "undefined") {
+            if (!mwanzia.cbor._decoder) 
+                mwanzia.cbor._decoder = new TextDecoder("utf-8");
+            return mwanzia.cbor._decoder.decode(bytes.subarray(offset, offset + length));
+        }
+        var result = "";
+        var end = offset + length;
+        var c;
+        while (offset < end) {
+            c = bytes[offset++];
+            if (c >= 0xf0) {
+                c = ((c & 0x07) << 18) | ((bytes[offset++] & 0x3f) << 12) | ((bytes[offset++] & 0x3f) << 6) |
+                (bytes[offset++] & 0x3f);
+                c -= 0x10000;
+                result += String.fromCharCode(0xd800 + (c >> 10));
+                c = 0xdc00 + (c & 0x3ff);
+            }
+            else if (c >= 0xe0) 
+                c = ((c & 0x0f) << 12) | ((bytes[offset++] & 0x3f) << 6) | (bytes[offset++] & 0x3f);
+            else if (c >= 0x80) 
+                c = ((c & 0x1f) << 6) | (bytes[offset++] & 0x3f);
+            result += String.fromCharCode(c);
+        }
+        return result;
+    }
+};
+
+/**
+ * Server-side types that are sent as {"@class": ..., isoString: ...} and
+ * become Dates on the client.
+ */
+mwanzia.dateTypes = {
+    "java.util.Date": true,
+    "java.sql.Date": true,
+    "java.sql.Time": true,
+    "java.sql.Timestamp": true,
+    "java.util.Calendar": true,
+    "java.util.GregorianCalendar": true
+};
+
 /**
  * A JSON2 reviver that replaces remote objects with actual instances of the right class
  * during deserialization.  Also handles converting date strings into actual dates.
@@ -439,10 +853,14 @@ mwanzia.buildJsonReviver = function() {
     return function(key, target) {
     	var result = target;
         if (target != null) {
+            if (target['@columns']) {
+                // A collection sent in columns, whose values have already been revived
+                return mwanzia.fromColumns(target);
+            }
             var targetTypeName = target['@class'];
             
             if (targetTypeName) {
-                if (targetTypeName == "java.util.Date") {
+                if (targetTypeName in mwanzia.dateTypes) {
                     // Special handling for dates
                     var result = new Date();
                     result.setISO8601(target.isoString);
@@ -467,6 +885,31 @@ mwanzia.buildJsonReviver = function() {
     }
 }
 
+/**
+ * Turns a collection that the server sent in columns (see the Columnar annotation)
+ * back into an array of remote objects, just like the ones it would have sent
+ * one by one.
+ *
+ * @param {Object} columns - the class ("@columns"), property names and one array of
+ * values per property
+ */
+mwanzia.fromColumns = function(columns){
+    var className = columns['@columns'];
+    var targetType = mwanzia.getFromMap(mwanzia, className);
+    var names = columns.names;
+    var values = columns.values;
+    var length = values.length > 0 ? values[0].length : 0;
+    var rows = new Array(length);
+    for (var i = 0; i < length; i++) {
+        var properties = {"@class": className};
+        for (var j = 0; j < names.length; j++) {
+            properties[names[j]] = values[j][i];
+        }
+        rows[i] = targetType == null ? properties : new targetType(properties);
+    }
+    return rows;
+}
+
 /**
  * Converts plain JavaScript objects into a form ready for serialization to the server.
  * This is done based on the known types that are expected on the server.
@@ -0,0 +1,108 @@
+package org.mwanzia;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.mwanzia.extras.jackson.JacksonApplication;
+import org.mwanzia.test.Account;
+import org.mwanzia.test.Branch;
+import org.mwanzia.test.Company;
+import org.mwanzia.test.Customer;
+import org.mwanzia.test.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Runs remote calls end-to-end through an Application without any plugins,
+ * from the JSON of the call to the JSON of the response, and generates the
+ * Application's JavaScript. The remote methods don't do any work of their
+ * own, so this measures Mwanzia's overhead per call.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ApplicationBenchmark {
+    private static final String TARGET_CLASS = BenchRemote.class.getName();
+
+    private Application application;
+    private String echoCall;
+    private byte[] echoBytes;
+    private String companyCall;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws Exception {
+        application = new BenchApplication();
+        echoCall = "{\"target\":null,\"arguments\":[\"Hello, Mwanzia\"]}";
+        echoBytes = echoCall.getBytes("UTF-8");
+        companyCall = "{\"target\":null,\"arguments\":[]}";
+        out = new ByteArrayOutputStream();
+        if (!application.invoke(TARGET_CLASS, "echo", echoCall).contains("\"Hello, Mwanzia\""))
+            throw new IllegalStateException("Echo failed");
+    }
+
+    @Benchmark
+    public int invokeEcho() throws Exception {
+        out.reset();
+        application.invoke(TARGET_CLASS, "echo", echoCall, out).await();
+        return out.size();
+    }
+
+    @Benchmark
+    public int invokeEchoStreaming() throws Exception {
+        out.reset();
+        application.invoke(TARGET_CLASS, "echo", new ByteArrayInputStream(echoBytes), out).await();
+        return out.size();
+    }
+
+    @Benchmark
+    public int invokeCompany() throws Exception {
+        out.reset();
+        application.invoke(TARGET_CLASS, "company", companyCall, out).await();
+        return out.size();
+    }
+
+    @Benchmark
+    public String coreJavaScript() throws Exception {
+        return application.coreJavaScript();
+    }
+
+    public static class BenchApplication extends JacksonApplication {
+        public BenchApplication() {
+            registerRemote(BenchRemote.class);
+            registerRemote(Company.class);
+            registerRemote(Branch.class);
+            registerRemote(Account.class);
+            registerRemote(Customer.class);
+            registerRemote(Employee.class);
+        }
+    }
+
+    public static class BenchRemote {
+        private static final Company COMPANY = BenchModel.company(100);
+
+        @Remote
+        public static String echo(String value) {
+            return value;
+        }
+
+        @Remote
+        public static Company company() {
+            return COMPANY;
+        }
+    }
+}
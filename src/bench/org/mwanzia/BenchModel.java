@@ -0,0 +1,63 @@
+package org.mwanzia;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.UUID;
+
+import org.mwanzia.test.Account;
+import org.mwanzia.test.Address;
+import org.mwanzia.test.Branch;
+import org.mwanzia.test.Company;
+import org.mwanzia.test.Customer;
+import org.mwanzia.test.Employee;
+import org.mwanzia.test.State;
+
+/**
+ * <p>
+ * Builds graphs of the test model for the benchmarks: a Company with a single
+ * Branch that holds the given number of Accounts, each with its own Customer.
+ * </p>
+ *
+ * <p>
+ * Back references (Account.branch, Branch.company, Employee.company) are left
+ * empty, because JSON doesn't break cycles on its own (in a real Application
+ * that's the job of the JPA plugins). Entities get sequential ids, as if they
+ * had been persisted, and all other values come from a fixed seed, so every
+ * fork of every run serializes exactly the same bytes.
+ * </p>
+ */
+final class BenchModel {
+    private static final long SEED = 20100601L;
+    private static final long EPOCH = 1275350400000L;
+    private static final State[] STATES = State.values();
+
+    private BenchModel() {
+    }
+
+    static Company company(int accounts) {
+        Random random = new Random(SEED);
+        long id = 0;
+        Company company = new Company("Company with " + accounts + " accounts");
+        company.setId(++id);
+        Employee manager = new Employee(null, "Branch", "Manager");
+        manager.setId(++id);
+        Branch branch = new Branch(null, manager, "Main", address(random));
+        branch.setId(++id);
+        company.getBranches().put(branch.getName(), branch);
+        for (int i = 0; i < accounts; i++) {
+            Customer owner = new Customer("First" + i, "Last" + i, String.format("%09d", random.nextInt(1000000000)),
+                    18 + random.nextInt(80), address(random));
+            owner.setId(++id);
+            Account account = new Account(owner, null, new UUID(random.nextLong(), random.nextLong()), new Date(
+                    EPOCH + random.nextInt(Integer.MAX_VALUE) * 1000L));
+            account.setId(++id);
+            branch.getAccounts().add(account);
+        }
+        return company;
+    }
+
+    private static Address address(Random random) {
+        return new Address(random.nextInt(10000) + " Main Street", null, "Springfield", STATES[random
+                .nextInt(STATES.length)], String.format("%05d", random.nextInt(100000)));
+    }
+}
@@ -0,0 +1,134 @@
+package org.mwanzia;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Runs the benchmarks and compares them against a baseline run:
+ * </p>
+ *
+ * <pre>
+ * java org.mwanzia.Benchmarks [-baseline before.json] [-result after.json] [regex ...]
+ * </pre>
+ *
+ * <p>
+ * Without regexes, all benchmarks except InvocationExecutorBenchmark (which
+ * needs a database and takes much longer) are run. The results are written in
+ * JMH's JSON format (to build/bench/result.json by default), so the result of
+ * one run can be the baseline of the next. When a baseline is given, every
+ * benchmark that is in both runs is printed with its change, and flagged as
+ * faster or slower when the 99.9% confidence intervals of the two scores
+ * don't overlap.
+ * </p>
+ *
+ * <p>
+ * Forks, iterations and heap size are fixed by the annotations on each
+ * benchmark, and the benchmark data comes from a fixed seed (see BenchModel).
+ * To keep runs on the same Linux box comparable, run both on the same JVM,
+ * on an otherwise idle machine, with the frequency governor set to
+ * "performance" and pinned to the same cores (e.g. with taskset -c 2,3).
+ * </p>
+ */
+public class Benchmarks {
+    private static final String DEFAULT_INCLUDE = "org\\.mwanzia\\.(?!InvocationExecutor)\\w+Benchmark\\.";
+
+    public static void main(String[] args) throws Exception {
+        String baseline = null;
+        String result = "build/bench/result.json";
+        List<String> includes = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-baseline".equals(args[i]) && i + 1 < args.length)
+                baseline = args[++i];
+            else if ("-result".equals(args[i]) && i + 1 < args.length)
+                result = args[++i];
+            else
+                includes.add(args[i]);
+        }
+        if (includes.isEmpty())
+            includes.add(DEFAULT_INCLUDE);
+
+        File resultFile = new File(result);
+        if (resultFile.getParentFile() != null)
+            resultFile.getParentFile().mkdirs();
+        OptionsBuilder options = new OptionsBuilder();
+        for (String include : includes) {
+            options.include(include);
+        }
+        options.resultFormat(ResultFormatType.JSON);
+        options.result(resultFile.getPath());
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        if (baseline != null)
+            compare(readBaseline(new File(baseline)), results);
+    }
+
+    /**
+     * Baseline scores as [score, error], keyed by benchmark and parameters.
+     */
+    private static Map<String, double[]> readBaseline(File file) throws Exception {
+        Map<String, double[]> scores = new HashMap<String, double[]>();
+        List<Map<String, Object>> runs = new ObjectMapper().readValue(file, List.class);
+        for (Map<String, Object> run : runs) {
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            scores.put(key((String) run.get("benchmark"), params != null ? new TreeMap<String, Object>(params)
+                    : new TreeMap<String, Object>()), new double[] { toDouble(metric.get("score")),
+                    toDouble(metric.get("scoreError")) });
+        }
+        return scores;
+    }
+
+    private static void compare(Map<String, double[]> baseline, Collection<RunResult> results) {
+        System.out.println();
+        System.out.println(String.format("%1$-70s %2$22s %3$22s %4$8s", "Benchmark", "Baseline", "Current",
+                "Change"));
+        for (RunResult run : results) {
+            BenchmarkParams params = run.getParams();
+            Map<String, Object> paramValues = new TreeMap<String, Object>();
+            for (String name : params.getParamsKeys()) {
+                paramValues.put(name, params.getParam(name));
+            }
+            String key = key(params.getBenchmark(), paramValues);
+            double[] before = baseline.get(key);
+            if (before == null)
+                continue;
+            Result score = run.getPrimaryResult();
+            double after = score.getScore();
+            double afterError = toDouble(score.getScoreError());
+            String verdict = "";
+            if (after - afterError > before[0] + before[1])
+                verdict = params.getMode() == Mode.Throughput ? "faster" : "slower";
+            else if (after + afterError < before[0] - before[1])
+                verdict = params.getMode() == Mode.Throughput ? "slower" : "faster";
+            System.out.println(String.format("%1$-70s %2$12.3f +- %3$7.3f %4$12.3f +- %5$7.3f %6$+7.1f%% %7$s",
+                    key, before[0], before[1], after, afterError, (after - before[0]) * 100 / before[0], verdict));
+        }
+    }
+
+    private static String key(String benchmark, Map<String, Object> params) {
+        String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+        return params.isEmpty() ? name : name + params;
+    }
+
+    private static double toDouble(Object value) {
+        // JMH writes NaN errors (e.g. for single iterations) as strings
+        if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue()))
+            return ((Number) value).doubleValue();
+        return 0;
+    }
+}
@@ -0,0 +1,169 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.mwanzia.extras.jackson.JacksonApplication;
+import org.mwanzia.test.JPA;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Load test comparing thread-per-request processing of remote calls
+ * ("container") with processing on a bounded pool per Application ("pool") and
+ * on a virtual thread per call ("virtual", falls back to a pool before Java
+ * 21), see InvocationExecutors.
+ * </p>
+ * 
+ * <p>
+ * A fixed pool of CONTAINER_THREADS stands in for the servlet container. Each
+ * call runs a query against the demo-h2 persistence unit that blocks for the
+ * given latency, like a slow JDBC call would. In the executor modes, container
+ * threads hand off unfinished responses the same way MwanziaServlet does on a
+ * Servlet 3.0 container, instead of waiting for them.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvocationExecutorBenchmark {
+    private static final int CONTAINER_THREADS = 16;
+    private static final int REQUESTS = 512;
+    private static final String APPLICATION = "BenchApplication";
+    private static final String TARGET_CLASS = BenchQueries.class.getName();
+
+    @Param( { "container", "pool", "virtual" })
+    public String mode;
+
+    @Param( { "10", "50" })
+    public int latency;
+
+    private Mwanzia mwanzia;
+    private ExecutorService container;
+    private String call;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put("application", BenchApplication.class.getName());
+        if (!"container".equals(mode)) {
+            config.put("invocationExecutor", mode);
+            config.put("invocationThreads", "128");
+            config.put("invocationQueue", String.valueOf(REQUESTS));
+        }
+        mwanzia = new Mwanzia(config);
+        container = Executors.newFixedThreadPool(CONTAINER_THREADS);
+        call = String.format("{\"target\":null,\"arguments\":[%1$s]}", latency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        container.shutdown();
+        mwanzia.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void requests() throws Exception {
+        final CountDownLatch done = new CountDownLatch(REQUESTS);
+        final RemoteFuture.Callback<Void> finished = new RemoteFuture.Callback<Void>() {
+            public void completed(Void result) {
+                done.countDown();
+            }
+
+            public void failed(Throwable exception) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < REQUESTS; i++) {
+            container.execute(new Runnable() {
+                public void run() {
+                    try {
+                        mwanzia.call(APPLICATION, TARGET_CLASS, "query", call, new ByteArrayOutputStream())
+                                .onCompletion(finished);
+                    } catch (Exception e) {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+    }
+
+    public static class BenchApplication extends JacksonApplication {
+        static {
+            JPA.initialize("demo-h2");
+            EntityManager entityManager = JPA.getInstance().getEntityManager();
+            entityManager.getTransaction().begin();
+            entityManager.createNativeQuery(
+                    String.format("CREATE ALIAS IF NOT EXISTS PAUSE FOR \"%1$s.pause\"", BenchQueries.class
+                            .getName())).executeUpdate();
+            entityManager.getTransaction().commit();
+        }
+
+        public BenchApplication() {
+            registerRemote(BenchQueries.class);
+            registerPlugin(new Plugin(this) {
+                @Override
+                public Interceptor buildInterceptor() {
+                    return new Interceptor() {
+                        @Override
+                        public void invocationSucceeded(Object target, Object result) throws Exception {
+                            close();
+                        }
+
+                        @Override
+                        public Throwable invocationFailed(Throwable exception) throws Exception {
+                            close();
+                            return exception;
+                        }
+
+                        private void close() {
+                            JPA.getInstance().getEntityManager().close();
+                            JPA.getInstance().clear();
+                        }
+                    };
+                }
+            });
+        }
+    }
+
+    public static class BenchQueries {
+        @Remote
+        public static Object query(int latency) {
+            return JPA.getInstance().getEntityManager().createNativeQuery("SELECT PAUSE(?1)").setParameter(1,
+                    latency).getSingleResult();
+        }
+
+        /**
+         * Called by the database to simulate a slow query.
+         */
+        public static int pause(int latency) throws InterruptedException {
+            Thread.sleep(latency);
+            return latency;
+        }
+    }
+}
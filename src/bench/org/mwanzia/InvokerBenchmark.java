@@ -0,0 +1,102 @@
+package org.mwanzia;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Compares the reflective and generated Invokers on methods shaped like the
+ * test model's Company.create() (static, String argument) and Account.close()
+ * (instance, no arguments, declares a checked exception).
+ * </p>
+ * 
+ * <p>
+ * The generated invokers need Javassist on the benchmark classpath.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class InvokerBenchmark {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private Invoker reflectiveCreate;
+    private Invoker generatedCreate;
+    private Invoker reflectiveClose;
+    private Invoker generatedClose;
+    private Object[] createArguments;
+    private BenchAccount account;
+
+    @Setup
+    public void setup() throws Exception {
+        reflectiveCreate = InvokerFactory.reflective(BenchCompany.class.getMethod("create", String.class));
+        generatedCreate = InvokerFactory.generate(BenchCompany.class.getMethod("create", String.class));
+        reflectiveClose = InvokerFactory.reflective(BenchAccount.class.getMethod("close"));
+        generatedClose = InvokerFactory.generate(BenchAccount.class.getMethod("close"));
+        createArguments = new Object[] { "My Test Company" };
+        account = new BenchAccount();
+    }
+
+    @Benchmark
+    public Object reflectiveStatic() throws Throwable {
+        return reflectiveCreate.invoke(null, createArguments);
+    }
+
+    @Benchmark
+    public Object generatedStatic() throws Throwable {
+        return generatedCreate.invoke(null, createArguments);
+    }
+
+    @Benchmark
+    public Object reflectiveInstance() throws Throwable {
+        return reflectiveClose.invoke(account, NO_ARGUMENTS);
+    }
+
+    @Benchmark
+    public Object generatedInstance() throws Throwable {
+        return generatedClose.invoke(account, NO_ARGUMENTS);
+    }
+
+    public static class BenchCompany {
+        private String name;
+
+        public BenchCompany(String name) {
+            this.name = name;
+        }
+
+        public static BenchCompany create(String name) {
+            return new BenchCompany(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class BenchAccount {
+        private Date dateClosed;
+
+        public BenchAccount close() throws Exception {
+            this.dateClosed = new Date();
+            return this;
+        }
+
+        public Date getDateClosed() {
+            return dateClosed;
+        }
+    }
+}
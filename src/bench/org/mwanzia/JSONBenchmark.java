@@ -0,0 +1,83 @@
+package org.mwanzia;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.mwanzia.test.Company;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Serializes and deserializes a Company of the test model with 1, 100 and
+ * 10,000 Accounts (see BenchModel), both through the intermediate maps of
+ * toJson()/fromJson() and streaming through writeJson()/readJson(), the way
+ * Application does.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class JSONBenchmark {
+    @Param( { "1", "100", "10000" })
+    public int accounts;
+
+    private Company company;
+    private Map<String, Object> json;
+    private byte[] bytes;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws Exception {
+        company = BenchModel.company(accounts);
+        out = new ByteArrayOutputStream();
+        writeJson();
+        bytes = out.toByteArray();
+        json = (Map<String, Object>) new ObjectMapper().readValue(new ByteArrayInputStream(bytes),
+                Map.class);
+        Company roundTripped = JSON.fromJson(json, Company.class);
+        if (roundTripped.getBranches().get("Main").getAccounts().size() != accounts)
+            throw new IllegalStateException("Round trip lost accounts");
+    }
+
+    @Benchmark
+    public Object toJson() {
+        return JSON.toJson(company, true);
+    }
+
+    @Benchmark
+    public int writeJson() throws Exception {
+        out.reset();
+        JsonOutput json = new JsonWriter(out);
+        JSON.writeJson(company, true, json);
+        json.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public Object fromJson() {
+        return JSON.fromJson(json, Company.class);
+    }
+
+    @Benchmark
+    public Object readJson() throws Exception {
+        JsonInput in = new JsonReader(new ByteArrayInputStream(bytes));
+        in.next();
+        return JSON.readJson(in, Company.class);
+    }
+}
@@ -0,0 +1,296 @@
+package org.mwanzia;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.shiro.web.servlet.IniShiroFilter;
+import org.eclipse.jetty.server.DispatcherType;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * <p>
+ * Command-line load driver for TestApplication, replacing perf_tests.html.
+ * Starts MwanziaServlet behind Shiro's IniShiroFilter (as in web.xml) in an
+ * embedded Jetty, against the in-memory demo-h2 persistence unit, and has
+ * virtual users replay the scenario of perf_tests.html over HTTP (see
+ * VirtualUser):
+ * </p>
+ *
+ * <pre>
+ * java org.mwanzia.LoadDriver [-users 1,2,4,8,16] [-loop closed|open] [-rate 5] [-think 0]
+ *         [-warmup 10] [-duration 30] [-threads 64] [-executor pool|virtual] [-invocationThreads n]
+ *         [-url http://host:port/server.js] [-csv scaling.csv]
+ * </pre>
+ *
+ * <p>
+ * Each number of users is a separate run with its own warmup, reporting
+ * throughput, error rate and latency percentiles per remote method, followed
+ * by a summary of all runs (the scaling curve), which -csv also appends to a
+ * file. In an open loop, every user starts -rate scenarios per second;
+ * perf_tests.html corresponds to one user at a rate of 6.67.
+ * </p>
+ *
+ * <p>
+ * -threads sizes Jetty's thread pool, and -executor/-invocationThreads are
+ * passed on to Mwanzia (see InvocationExecutors). With -url, the driver runs
+ * against an already running server instead, e.g. one pinned to other cores
+ * with taskset, so that the driver doesn't compete with it for CPUs.
+ * </p>
+ */
+public class LoadDriver {
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final String[] OPTIONS = { "users", "loop", "rate", "think", "warmup", "duration", "threads",
+            "executor", "invocationThreads", "url", "csv" };
+
+    private final String url;
+    private volatile boolean running;
+    private volatile Stats stats;
+    private volatile boolean failureReported;
+
+    LoadDriver(String url) {
+        this.url = url;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("users", "1,2,4,8,16");
+        options.put("loop", "closed");
+        options.put("rate", "5");
+        options.put("think", "0");
+        options.put("warmup", "10");
+        options.put("duration", "30");
+        options.put("threads", "64");
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("-") ? args[i].substring(1) : null;
+            if (name == null || !Arrays.asList(OPTIONS).contains(name) || i + 1 == args.length)
+                throw new IllegalArgumentException("Unknown option " + args[i] + ", expected one of -"
+                        + Arrays.toString(OPTIONS));
+            options.put(name, args[++i]);
+        }
+        boolean open = "open".equals(options.get("loop"));
+        long periodNanos = open ? (long) (1000000000L / Double.parseDouble(options.get("rate"))) : 0;
+
+        Server server = null;
+        String url = options.get("url");
+        if (url == null) {
+            server = startServer(options);
+            url = String.format("http://127.0.0.1:%1$s/server.js", ((SelectChannelConnector) server
+                    .getConnectors()[0]).getLocalPort());
+        }
+        System.out.println(String.format("%1$s processors, Java %2$s, %3$s", Runtime.getRuntime()
+                .availableProcessors(), System.getProperty("java.version"), new TreeMap<String, String>(options)));
+
+        List<String> summary = new ArrayList<String>();
+        for (String users : options.get("users").split(",")) {
+            LoadDriver driver = new LoadDriver(url);
+            Stats result = driver.run(Integer.parseInt(users.trim()), periodNanos, Long.parseLong(options
+                    .get("think")), Integer.parseInt(options.get("warmup")), Integer.parseInt(options
+                    .get("duration")));
+            System.out.println();
+            System.out.println(String.format("%1$s users, %2$s loop", users.trim(), options.get("loop")));
+            result.print();
+            summary.add(result.summarize(users.trim()));
+        }
+        System.out.println();
+        System.out.println(Stats.SUMMARY_HEADER.replace(',', '\t'));
+        for (String row : summary) {
+            System.out.println(row.replace(',', '\t'));
+        }
+        if (options.get("csv") != null)
+            appendCsv(new File(options.get("csv")), options, summary);
+
+        if (server != null)
+            server.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Start TestApplication in an embedded Jetty on an ephemeral port.
+     */
+    private static Server startServer(Map<String, String> options) throws Exception {
+        System.setProperty("mwanzia.persistenceUnit", "demo-h2");
+        Server server = new Server();
+        server.setThreadPool(new QueuedThreadPool(Integer.parseInt(options.get("threads"))));
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/");
+        FilterHolder shiro = new FilterHolder(IniShiroFilter.class);
+        shiro.setInitParameter("configPath", "classpath:shiro.ini");
+        context.addFilter(shiro, "/*", EnumSet.of(DispatcherType.REQUEST));
+        ServletHolder mwanzia = new ServletHolder(MwanziaServlet.class);
+        mwanzia.setInitParameter("application", "org.mwanzia.test.TestApplication");
+        for (String name : new String[] { "executor", "invocationThreads" }) {
+            if (options.get(name) != null)
+                mwanzia.setInitParameter("executor".equals(name) ? "invocationExecutor" : name, options.get(name));
+        }
+        mwanzia.setInitOrder(0);
+        context.addServlet(mwanzia, "/server.js");
+        server.setHandler(context);
+        server.start();
+        return server;
+    }
+
+    private static void appendCsv(File file, Map<String, String> options, List<String> summary) throws Exception {
+        boolean exists = file.exists();
+        PrintWriter out = new PrintWriter(new FileWriter(file, true));
+        try {
+            if (!exists)
+                out.println("processors,loop,rate,executor," + Stats.SUMMARY_HEADER);
+            for (String row : summary) {
+                out.println(String.format("%1$s,%2$s,%3$s,%4$s,%5$s", Runtime.getRuntime().availableProcessors(),
+                        options.get("loop"), "open".equals(options.get("loop")) ? options.get("rate") : "",
+                        options.get("executor") != null ? options.get("executor") : "", row));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Run the given number of users for the warmup, then measure them for the
+     * given duration.
+     */
+    Stats run(int users, long periodNanos, long thinkMillis, int warmupSeconds, int durationSeconds)
+            throws InterruptedException {
+        running = true;
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[users];
+        for (int i = 0; i < users; i++) {
+            // Spread the users' schedules evenly over the period
+            threads[i] = new Thread(new VirtualUser(this, i, periodNanos, start + periodNanos * i / users,
+                    thinkMillis), "user-" + i);
+            threads[i].start();
+        }
+        Thread.sleep(warmupSeconds * 1000L);
+        Stats measured = new Stats();
+        stats = measured;
+        Thread.sleep(durationSeconds * 1000L);
+        stats = null;
+        measured.finish();
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return measured;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Record a call that was started at the given time (System.nanoTime()).
+     */
+    void record(String label, long start, boolean succeeded) {
+        Stats current = stats;
+        if (current != null)
+            current.record(label, (System.nanoTime() - start) / 1000, succeeded);
+    }
+
+    void scenarioFinished(long start) {
+        Stats current = stats;
+        if (current != null)
+            current.scenarios.record((System.nanoTime() - start) / 1000);
+    }
+
+    void failed(Exception e) {
+        if (!failureReported) {
+            failureReported = true;
+            System.err.println("First failed scenario (later ones are only counted): " + e);
+        }
+    }
+
+    /**
+     * The calls and scenarios recorded during one measurement.
+     */
+    static class Stats {
+        static final String SUMMARY_HEADER = "users,scenarios/s,calls/s,errors %,p50 ms,p99 ms,max ms";
+
+        private final long start = System.nanoTime();
+        private long end;
+        private final Map<String, Histogram> latencies = new ConcurrentHashMap<String, Histogram>();
+        private final Map<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+        private final Histogram all = new Histogram();
+        private final AtomicLong allErrors = new AtomicLong();
+        final Histogram scenarios = new Histogram();
+
+        void record(String label, long micros, boolean succeeded) {
+            Histogram latency = latencies.get(label);
+            if (latency == null) {
+                synchronized (this) {
+                    latency = latencies.get(label);
+                    if (latency == null) {
+                        errors.put(label, new AtomicLong());
+                        latency = new Histogram();
+                        latencies.put(label, latency);
+                    }
+                }
+            }
+            if (succeeded) {
+                latency.record(micros);
+                all.record(micros);
+            } else {
+                errors.get(label).incrementAndGet();
+                allErrors.incrementAndGet();
+            }
+        }
+
+        void finish() {
+            end = System.nanoTime();
+        }
+
+        void print() {
+            System.out.println(String.format("%1$-22s %2$9s %3$9s %4$7s %5$9s %6$9s %7$9s %8$9s %9$9s", "Method",
+                    "Calls", "Calls/s", "Errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+            for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(latencies).entrySet()) {
+                print(entry.getKey(), entry.getValue(), errors.get(entry.getKey()).get());
+            }
+            print("All calls", all, allErrors.get());
+            print("Scenarios", scenarios, 0);
+        }
+
+        private void print(String label, Histogram latency, long errorCount) {
+            long calls = latency.getCount() + errorCount;
+            StringBuilder line = new StringBuilder(String.format("%1$-22s %2$9d %3$9.1f %4$7d", label, calls,
+                    perSecond(calls), errorCount));
+            for (double percentile : PERCENTILES) {
+                line.append(String.format(" %1$9.2f", latency.getValueAtPercentile(percentile) / 1000.0));
+            }
+            line.append(String.format(" %1$9.2f", latency.getMax() / 1000.0));
+            System.out.println(line);
+        }
+
+        String summarize(String users) {
+            long calls = all.getCount() + allErrors.get();
+            return String.format("%1$s,%2$.1f,%3$.1f,%4$.2f,%5$.2f,%6$.2f,%7$.2f", users, perSecond(scenarios
+                    .getCount()), perSecond(calls), calls > 0 ? allErrors.get() * 100.0 / calls : 0.0, all
+                    .getValueAtPercentile(50) / 1000.0, all.getValueAtPercentile(99) / 1000.0, all.getMax() / 1000.0);
+        }
+
+        private double perSecond(long count) {
+            return count * 1000000000.0 / (end - start);
+        }
+    }
+}
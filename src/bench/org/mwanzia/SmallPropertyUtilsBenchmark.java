@@ -0,0 +1,88 @@
+package org.mwanzia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.mwanzia.test.Account;
+import org.mwanzia.test.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Looks up the properties of test model classes and coerces the kinds of
+ * values a JSON parser produces (Integers, Strings, Lists) to the property
+ * types they end up in (Long, enums, UUID, Set).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class SmallPropertyUtilsBenchmark {
+    private Account account;
+    private Integer number;
+    private String state;
+    private String uuid;
+    private List<Object> list;
+
+    @Setup
+    public void setup() {
+        account = BenchModel.company(1).getBranches().get("Main").getAccounts().iterator().next();
+        number = Integer.valueOf(42);
+        state = org.mwanzia.test.State.TX.name();
+        uuid = account.getNumber().toString();
+        list = new ArrayList<Object>();
+        for (int i = 0; i < 10; i++) {
+            list.add(Long.valueOf(i));
+        }
+    }
+
+    @Benchmark
+    public Object getPropertiesOfClass() {
+        return SmallPropertyUtils.getProperties(Customer.class);
+    }
+
+    @Benchmark
+    public Object getPropertiesOfObject() {
+        return SmallPropertyUtils.getProperties(account);
+    }
+
+    @Benchmark
+    public Long coerceIntegerToLong() {
+        return SmallPropertyUtils.coerce(number, Long.class);
+    }
+
+    @Benchmark
+    public Object coerceStringToEnum() {
+        return SmallPropertyUtils.coerce(state, org.mwanzia.test.State.class);
+    }
+
+    @Benchmark
+    public UUID coerceStringToUUID() {
+        return SmallPropertyUtils.coerce(uuid, UUID.class);
+    }
+
+    @Benchmark
+    public Set coerceListToSet() {
+        return SmallPropertyUtils.coerce(list, Set.class);
+    }
+
+    @Benchmark
+    public String coerceUnchanged() {
+        return SmallPropertyUtils.coerce(state, String.class);
+    }
+}
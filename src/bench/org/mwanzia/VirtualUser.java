@@ -0,0 +1,258 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * <p>
+ * A user of TestApplication, with its own HTTP session, that replays the
+ * scenario of perf_tests.html over and over: create a Company, hire a manager,
+ * open two Branches, open an Account, submit a Transaction, reload and close
+ * the Account, and fail to submit a Transaction against the closed Account.
+ * That is 9 remote calls per scenario, posted as JSON bodies the way
+ * mwanzia.core.js does with mwanzia.jsonRequests set, with entities passed
+ * (and targeted) by Reference like mwanzia.jpa.js does.
+ * </p>
+ *
+ * <p>
+ * In a closed loop, a scenario starts as soon as the previous one has
+ * finished (plus the think time between calls). In an open loop, scenarios
+ * are scheduled at a fixed rate whether or not the previous one has finished
+ * in time, and the first call of each is timed from when it was scheduled,
+ * so that a slow server shows up as latency instead of as fewer calls.
+ * </p>
+ */
+class VirtualUser implements Runnable {
+    private static final String APPLICATION = "TestApplication";
+    private static final String COMPANY = "org.mwanzia.test.Company";
+    private static final String BRANCH = "org.mwanzia.test.Branch";
+    private static final String ACCOUNT = "org.mwanzia.test.Account";
+    private static final String EMPLOYEE = "org.mwanzia.test.Employee";
+    private static final String TRANSACTION = "org.mwanzia.test.Transaction";
+    private static final String ACCOUNT_CLOSED = "org.mwanzia.test.AccountClosedException";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final LoadDriver driver;
+    private final int number;
+    private final long periodNanos;
+    private final long firstStart;
+    private final long thinkMillis;
+    private final Map<String, String> cookies = new TreeMap<String, String>();
+    private int scenarios;
+
+    /**
+     * @param driver
+     * @param number
+     *            - this user's number, used to make its data unique
+     * @param periodNanos
+     *            - the time between scenario starts in an open loop, or 0 for
+     *            a closed loop
+     * @param firstStart
+     *            - when to start the first scenario (System.nanoTime())
+     * @param thinkMillis
+     *            - time to wait between calls
+     */
+    VirtualUser(LoadDriver driver, int number, long periodNanos, long firstStart, long thinkMillis) {
+        this.driver = driver;
+        this.number = number;
+        this.periodNanos = periodNanos;
+        this.firstStart = firstStart;
+        this.thinkMillis = thinkMillis;
+    }
+
+    public void run() {
+        long scheduled = firstStart;
+        try {
+            pause(scheduled - System.nanoTime());
+            invoke(System.nanoTime(), "TestApplication.login", "org.mwanzia.test.TestApplication", "login", object(
+                    "org.mwanzia.test.TestApplication"), "user" + number, "password");
+        } catch (Exception e) {
+            driver.failed(e);
+            return;
+        }
+        while (driver.isRunning()) {
+            long start = periodNanos > 0 ? scheduled : System.nanoTime();
+            try {
+                scenario(start);
+                driver.scenarioFinished(start);
+            } catch (Exception e) {
+                driver.failed(e);
+            }
+            if (periodNanos > 0) {
+                scheduled += periodNanos;
+                pause(scheduled - System.nanoTime());
+            }
+        }
+    }
+
+    private void scenario(long start) throws Exception {
+        Map<String, Object> address = address();
+        Map<String, Object> company = invoke(start, "Company.create", COMPANY, "create", null, String.format(
+                "Company %1$s-%2$s", number, scenarios++));
+        Object companyId = company.get("id");
+        Map<String, Object> manager = invoke(think(), "Company.hire", COMPANY, "hire", reference(COMPANY,
+                companyId), "First", "Manager");
+        invoke(think(), "Company.newBranch", COMPANY, "newBranch", reference(COMPANY, companyId), reference(
+                EMPLOYEE, manager.get("id")), "Austin Branch", address);
+        Map<String, Object> secondBranch = invoke(think(), "Company.newBranch", COMPANY, "newBranch", reference(
+                COMPANY, companyId), reference(EMPLOYEE, manager.get("id")), "Austin Branch 2", address);
+        Map<String, Object> account = invoke(think(), "Branch.openAccount", BRANCH, "openAccount", reference(
+                BRANCH, secondBranch.get("id")), object("org.mwanzia.test.Customer", "firstName", "Percy",
+                "lastName", "Wegmann", "ssn", "123-45-6789", "age", 27, "address", address), null);
+        Map<String, Object> accountReference = reference(ACCOUNT, account.get("id"));
+        invoke(think(), "Transaction.submit", TRANSACTION, "submit", object(TRANSACTION, "account",
+                accountReference, "amount", 5.98, "memo", "This is a test transaction"));
+        invoke(think(), "Account.reload", ACCOUNT, "reload", accountReference);
+        invoke(think(), "Account.close", ACCOUNT, "close", accountReference);
+        call(think(), "Transaction.submit", TRANSACTION, "submit", ACCOUNT_CLOSED, object(TRANSACTION,
+                "account", accountReference, "amount", -10.00, "memo", "This is a test debit"));
+    }
+
+    private <T> T invoke(long start, String label, String targetClass, String method, Object target,
+            Object... arguments) throws Exception {
+        return (T) call(start, label, targetClass, method, null, target, arguments);
+    }
+
+    /**
+     * Make the given remote call and record it under the given label.
+     *
+     * @return the result of the call
+     * @throws Exception
+     *             if the call failed, or threw an exception other than the
+     *             expected one
+     */
+    private <T> T call(long start, String label, String targetClass, String method, String expectedException,
+            Object target, Object... arguments) throws Exception {
+        Map<String, Object> call = new HashMap<String, Object>();
+        call.put("@class", "org.mwanzia.Call");
+        call.put("targetClass", targetClass);
+        call.put("target", target);
+        call.put("method", method);
+        call.put("arguments", new ArrayList<Object>(Arrays.asList(arguments)));
+        Map<String, Object> response;
+        try {
+            response = post(String.format("application=%1$s&targetClass=%2$s&method=%3$s", APPLICATION, URLEncoder
+                    .encode(targetClass, "UTF-8"), method), MAPPER.writeValueAsBytes(call));
+        } catch (Exception e) {
+            driver.record(label, start, false);
+            throw e;
+        }
+        Map<String, Object> exception = (Map<String, Object>) response.get("exception");
+        String exceptionClass = exception != null ? (String) exception.get("@class") : null;
+        boolean expected = exceptionClass == null ? expectedException == null : exceptionClass
+                .equals(expectedException);
+        driver.record(label, start, expected);
+        if (!expected)
+            throw new MwanziaException(String.format("%1$s returned %2$s instead of %3$s", label, exception != null
+                    ? exception.get("message") : "a result", expectedException));
+        return (T) response.get("result");
+    }
+
+    private Map<String, Object> post(String query, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(driver.getUrl() + "?" + query).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setFixedLengthStreamingMode(body.length);
+        if (!cookies.isEmpty())
+            connection.setRequestProperty("Cookie", cookieHeader());
+        OutputStream out = connection.getOutputStream();
+        out.write(body);
+        out.close();
+        int status = connection.getResponseCode();
+        List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+        if (setCookies != null)
+            storeCookies(setCookies);
+        // Read the whole response either way, so the connection can be reused
+        byte[] response = readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        if (status != HttpURLConnection.HTTP_OK)
+            throw new IOException(String.format("HTTP %1$s: %2$s", status, new String(response, "UTF-8")));
+        return MAPPER.readValue(response, 0, response.length, Map.class);
+    }
+
+    /**
+     * Keep the session cookie (and any others) the way a browser would,
+     * dropping the ones the server deletes.
+     */
+    private void storeCookies(List<String> setCookies) {
+        for (String setCookie : setCookies) {
+            String[] nameAndValue = setCookie.split(";", 2)[0].split("=", 2);
+            if (nameAndValue.length < 2 || setCookie.toLowerCase().contains("max-age=0"))
+                cookies.remove(nameAndValue[0].trim());
+            else
+                cookies.put(nameAndValue[0].trim(), nameAndValue[1].trim());
+        }
+    }
+
+    private String cookieHeader() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            if (header.length() > 0)
+                header.append("; ");
+            header.append(cookie.getKey()).append('=').append(cookie.getValue());
+        }
+        return header.toString();
+    }
+
+    private long think() {
+        pause(thinkMillis * 1000000L);
+        return System.nanoTime();
+    }
+
+    private static void pause(long nanos) {
+        if (nanos <= 0)
+            return;
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in == null)
+            return out.toByteArray();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, Object> reference(String className, Object id) {
+        return object("org.mwanzia.extras.jpa.Reference", "targetClassName", className, "id", id);
+    }
+
+    private static Map<String, Object> address() {
+        return object(null, "line1", "2110 Slaughter Lane", "city", "Austin", "state", "TX", "postalCode", "78748");
+    }
+
+    private static Map<String, Object> object(String className, Object... properties) {
+        Map<String, Object> object = new HashMap<String, Object>();
+        if (className != null)
+            object.put("@class", className);
+        for (int i = 0; i < properties.length; i += 2) {
+            object.put((String) properties[i], properties[i + 1]);
+        }
+        return object;
+    }
+}
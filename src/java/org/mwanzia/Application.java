@@ -1,19 +1,26 @@
 package org.mwanzia;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.mwanzia.SmallPropertyUtils.Property;
+import org.mwanzia.Timings.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +45,15 @@ public abstract class Application {
     private boolean whitelistProperties;
     private Set<Class> remoteTypes = new HashSet<Class>();
     private List<Plugin> plugins = new ArrayList<Plugin>();
+    // Dispatch index of remote methods by target class name and method name
+    private Map<String, Map<String, RemoteMethod>> remoteMethods = new HashMap<String, Map<String, RemoteMethod>>();
+    // Pipelines of the remote methods that have been invoked so far
+    private final Map<RemoteMethod, InvocationPipeline> pipelines = new ConcurrentHashMap<RemoteMethod, InvocationPipeline>();
+    private final ModifierRegistry modifiers = new ModifierRegistry(ModifierRegistry.GLOBAL);
+    private volatile Executor invocationExecutor;
+    private final Metrics metrics;
+    private final ResultCache resultCache = new ResultCache();
+    private final Coalescer coalescer = new Coalescer();
 
     /**
      * Construct a new Application identified by the given name. Amongst other
@@ -49,6 +65,8 @@ public abstract class Application {
     protected Application(String name, boolean whitelistProperties) {
         this.name = name;
         this.whitelistProperties = whitelistProperties;
+        this.metrics = new Metrics(name);
+        indexRemoteMethods(this.getClass());
     }
 
     /**
@@ -57,6 +75,8 @@ public abstract class Application {
     protected Application(boolean whitelistProperties) {
         this.name = this.getClass().getSimpleName();
         this.whitelistProperties = whitelistProperties;
+        this.metrics = new Metrics(this.name);
+        indexRemoteMethods(this.getClass());
     }
 
     /**
@@ -67,13 +87,50 @@ public abstract class Application {
     }
 
     /**
-     * Implement this to hook into whatever JSON serializer you're using.
+     * Implement this to hook into whatever JSON serializer you're using. Unless
+     * createJsonOutput() is overridden, responses are serialized with this
+     * (from a tree of maps and lists, like the one built by JSON.toJson()).
      * 
      * @param object
      * @return
      */
     public abstract String serializeToJson(Object object);
 
+    /**
+     * Override this to stream responses through whatever JSON generator you're
+     * using (see JacksonApplication), or simply return a JsonWriter. By
+     * default, each response is collected and handed to serializeToJson(), so
+     * that Applications which only implement that keep control over their
+     * responses, but don't stream them.
+     * 
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public JsonOutput createJsonOutput(OutputStream out) throws IOException {
+        return new SerializingJsonOutput(this, out);
+    }
+
+    /**
+     * Override this to stream requests through whatever JSON parser you're
+     * using. The default reads UTF-8 JSON using Mwanzia's own JsonReader.
+     * 
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public JsonInput createJsonInput(InputStream in) throws IOException {
+        return new JsonReader(in);
+    }
+
+    private JsonOutput createOutput(Codec codec, OutputStream out) throws IOException {
+        return codec != null ? codec.createOutput(out) : createJsonOutput(out);
+    }
+
+    private JsonInput createInput(Codec codec, InputStream in) throws IOException {
+        return codec != null ? codec.createInput(in) : createJsonInput(in);
+    }
+
     /**
      * Implement this to hook into whatever JSON parser you're using.
      * 
@@ -89,7 +146,11 @@ public abstract class Application {
      * @param remoteType
      */
     protected void registerRemote(Class remoteType) {
-        this.remoteTypes.add(remoteType);
+        if (this.remoteTypes.add(remoteType)) {
+            for (Class clazz : buildClassHierarchy(remoteType)) {
+                indexRemoteMethods(clazz);
+            }
+        }
     }
 
     /**
@@ -101,6 +162,7 @@ public abstract class Application {
      */
     protected void registerPlugin(Plugin plugin) {
         this.plugins.add(plugin);
+        this.pipelines.clear();
         for (Class remoteType : plugin.getRemoteTypes()) {
             this.registerRemote(remoteType);
         }
@@ -110,6 +172,64 @@ public abstract class Application {
         return name;
     }
 
+    /**
+     * The serialization and deserialization modifiers used by this
+     * Application. Plugins register their modifiers here.
+     * 
+     * @return
+     */
+    @JsonExclude
+    public ModifierRegistry getModifiers() {
+        return modifiers;
+    }
+
+    /**
+     * <p>
+     * Process invocations on the given Executor instead of on the calling
+     * thread. Together with a Servlet 3.0 container, this means that blocking
+     * work in remote methods doesn't tie up the container's threads.
+     * </p>
+     * 
+     * <p>
+     * Each invocation is processed on a single thread of the Executor, with
+     * its InvocationContext as the current context. Other state of the calling
+     * thread is carried over by Plugin.propagateContext().
+     * </p>
+     * 
+     * @param invocationExecutor
+     *            the Executor, or null to process invocations on the calling
+     *            thread
+     */
+    public void setInvocationExecutor(Executor invocationExecutor) {
+        this.invocationExecutor = invocationExecutor;
+    }
+
+    @JsonExclude
+    public Executor getInvocationExecutor() {
+        return invocationExecutor;
+    }
+
+    /**
+     * Call counts, exceptions, latencies and request/response sizes of this
+     * Application's remote methods.
+     * 
+     * @return
+     */
+    @JsonExclude
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The cached results of this Application's @Cacheable remote methods.
+     * 
+     * @return
+     */
+    @JsonExclude
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
     /**
      * <p>
      * Handles a remote invocation, supplied in the form of JSON.
@@ -122,69 +242,778 @@ public abstract class Application {
      * @throws Throwable
      */
     String invoke(String targetClassName, String methodName, String callString) throws Exception {
-        Class targetClass = this.getClass().getClassLoader().loadClass(targetClassName);
-        Method method = null;
-        for (Method candidate : targetClass.getMethods()) {
-            if (candidate.getName().equals(methodName)) {
-                method = candidate;
-                break;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invoke(targetClassName, methodName, callString, out).await();
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * <p>
+     * Handles a remote invocation, supplied in the form of JSON, and streams
+     * the JSON response to the given OutputStream.
+     * </p>
+     * 
+     * @param callString
+     *            JSON structure defining the remote call (target, method,
+     *            parameters, etc.)
+     * @param out
+     *            where to write the response
+     * @return future that is done once the response has been written, which
+     *         for asynchronous remote methods may be after this returns
+     * @throws Throwable
+     */
+    RemoteFuture<Void> invoke(String targetClassName, String methodName, String callString, OutputStream out)
+            throws Exception {
+        return invoke(targetClassName, methodName, callString, out, null);
+    }
+
+    /**
+     * <p>
+     * Handles a remote invocation, supplied in the form of JSON, and streams
+     * the response to the given OutputStream in the format of the given
+     * Codec.
+     * </p>
+     * 
+     * @param codec
+     *            the format of the response, or null for JSON
+     */
+    RemoteFuture<Void> invoke(final String targetClassName, final String methodName, final String callString,
+            final OutputStream out, final Codec codec) throws Exception {
+        return dispatch(new Invocation() {
+            public RemoteFuture<Void> process(InvocationContext context) throws Exception {
+                context.requestBytes = Metrics.utf8Length(callString);
+                RemoteMethod remoteMethod = lookupRemoteMethod(targetClassName, methodName);
+                InvocationPipeline pipeline = beforeInvocation(remoteMethod, context);
+                long time = System.nanoTime();
+                Map<String, Object> call = parseJson(callString);
+                time = context.getTimings().addSince(Phase.PARSE, time);
+                Object target = JSON.fromJson(call.get("target"), remoteMethod.getTargetClass(), modifiers);
+                context.projection = Projection.parse((List<String>) call.get("fields"));
+                List<Object> jsonArguments = (List<Object>) call.get("arguments");
+                checkArgumentCount(remoteMethod, jsonArguments.size());
+                Object[] arguments = new Object[jsonArguments.size()];
+                for (int i = 0; i < jsonArguments.size(); i++) {
+                    arguments[i] = JSON.fromJson(jsonArguments.get(i), remoteMethod.getParameterType(i), modifiers);
+                }
+                context.getTimings().addSince(Phase.DESERIALIZE, time);
+                Object callKey = sharesResult(remoteMethod) ? ResultCache.key(call.get("target"), jsonArguments,
+                        context.projection) : null;
+                return invoke(remoteMethod, pipeline, target, arguments, callKey, context, out, codec);
             }
+        });
+    }
+
+    /**
+     * <p>
+     * Handles a remote invocation whose call is read as a stream of JSON from
+     * the given InputStream. The target and arguments are built directly from
+     * the stream as the remote method's declared types, and the JSON response
+     * is streamed to the given OutputStream.
+     * </p>
+     * 
+     * @param in
+     *            JSON object with the call's "target", "arguments" and
+     *            (optionally) "fields"; other fields are ignored
+     * @param out
+     *            where to write the response
+     * @return future that is done once the response has been written
+     * @throws Throwable
+     */
+    RemoteFuture<Void> invoke(String targetClassName, String methodName, InputStream in, OutputStream out)
+            throws Exception {
+        return invoke(targetClassName, methodName, in, out, null, null);
+    }
+
+    /**
+     * <p>
+     * Handles a remote invocation whose call is read from the given
+     * InputStream in the format of one Codec, and whose response is written
+     * in the format of another, see above.
+     * </p>
+     * 
+     * @param requestCodec
+     *            the format of the call, or null for JSON
+     * @param responseCodec
+     *            the format of the response, or null for JSON
+     */
+    RemoteFuture<Void> invoke(final String targetClassName, final String methodName, final InputStream in,
+            final OutputStream out, final Codec requestCodec, final Codec responseCodec)
+            throws Exception {
+        return dispatch(new Invocation() {
+            public RemoteFuture<Void> process(InvocationContext context) throws Exception {
+                RemoteMethod remoteMethod = lookupRemoteMethod(targetClassName, methodName);
+                InvocationPipeline pipeline = beforeInvocation(remoteMethod, context);
+                long time = System.nanoTime();
+                Metrics.CountingInputStream countingIn = new Metrics.CountingInputStream(in);
+                JsonInput json = createInput(requestCodec, countingIn);
+                if (json.next() != JsonInput.Token.START_OBJECT)
+                    throw new MwanziaException("Remote call is not a JSON object");
+                // The key of a shared result is made from the call's JSON, so
+                // that's read first for those methods
+                boolean sharesResult = sharesResult(remoteMethod);
+                Object target = null;
+                Object targetJson = null;
+                List<Object> arguments = new ArrayList<Object>();
+                List<Object> argumentsJson = new ArrayList<Object>();
+                while (json.next() == JsonInput.Token.FIELD_NAME) {
+                    String field = json.getText();
+                    json.next();
+                    if ("target".equals(field)) {
+                        if (sharesResult) {
+                            targetJson = JSON.readPlain(json);
+                            target = JSON.fromJson(targetJson, remoteMethod.getTargetClass(), modifiers);
+                        } else {
+                            target = JSON.readJson(json, remoteMethod.getTargetClass(), modifiers);
+                        }
+                    } else if ("arguments".equals(field) && json.current() == JsonInput.Token.START_ARRAY) {
+                        while (json.next() != JsonInput.Token.END_ARRAY) {
+                            if (arguments.size() == remoteMethod.getParameterCount())
+                                checkArgumentCount(remoteMethod, arguments.size() + 1);
+                            Class type = remoteMethod.getParameterType(arguments.size());
+                            if (sharesResult) {
+                                Object argumentJson = JSON.readPlain(json);
+                                argumentsJson.add(argumentJson);
+                                arguments.add(JSON.fromJson(argumentJson, type, modifiers));
+                            } else {
+                                arguments.add(JSON.readJson(json, type, modifiers));
+                            }
+                        }
+                    } else if ("fields".equals(field) && json.current() == JsonInput.Token.START_ARRAY) {
+                        List<String> fields = new ArrayList<String>();
+                        while (json.next() == JsonInput.Token.STRING) {
+                            fields.add(json.getText());
+                        }
+                        if (json.current() != JsonInput.Token.END_ARRAY)
+                            throw new MwanziaException("Fields of remote call must be strings");
+                        context.projection = Projection.parse(fields);
+                    } else {
+                        JSON.skipValue(json);
+                    }
+                }
+                checkArgumentCount(remoteMethod, arguments.size());
+                context.requestBytes = countingIn.getCount();
+                context.getTimings().addSince(Phase.DESERIALIZE, time);
+                Object callKey = sharesResult ? ResultCache.key(targetJson, argumentsJson, context.projection)
+                        : null;
+                return invoke(remoteMethod, pipeline, target, arguments.toArray(), callKey, context, out,
+                        responseCodec);
+            }
+        });
+    }
+
+    /**
+     * Make sure that a call passes as many arguments as the remote method
+     * declares parameters.
+     * 
+     * @throws MwanziaException
+     *             if it doesn't
+     */
+    private static void checkArgumentCount(RemoteMethod remoteMethod, int count) {
+        if (count != remoteMethod.getParameterCount())
+            throw new MwanziaException(String.format("Wrong number of arguments for remote method %1$s (expects %2$s)",
+                    remoteMethod, remoteMethod.getParameterCount()));
+    }
+
+    /**
+     * Whether calls of the given method may share their results with other
+     * calls (see Cacheable and Coalesce), which needs a key for each call.
+     */
+    private boolean sharesResult(RemoteMethod remoteMethod) {
+        return resultCache.forMethod(remoteMethod) != null || remoteMethod.getAnnotation(Coalesce.class) != null;
+    }
+
+    private InvocationPipeline beforeInvocation(RemoteMethod remoteMethod, InvocationContext context)
+            throws Exception {
+        context.setRemoteMethod(remoteMethod);
+        InvocationPipeline pipeline = pipelines.get(remoteMethod);
+        if (pipeline == null) {
+            pipeline = InvocationPipeline.compile(remoteMethod, plugins);
+            pipelines.put(remoteMethod, pipeline);
         }
-        if (method == null)
-            throw new MwanziaException(String.format("No method %1$s found on type %2$s",
-                    methodName,
-                    targetClass.getName()));
-        if (!isRemotelyExecutable(method))
-            throw new MwanziaException(String.format("Method %1$s on type %2$s is not remotely executable",
-                    methodName,
-                    targetClass.getName()));
+        long time = System.nanoTime();
+        pipeline.beforeInvocation(context);
+        context.getTimings().addSince(Phase.INTERCEPT, time);
+        return pipeline;
+    }
+
+    /**
+     * <p>
+     * Handles a batch of remote invocations, supplied in the form of JSON, and
+     * streams a JSON array with the response to each call (in order) to the
+     * given OutputStream.
+     * </p>
+     * 
+     * <p>
+     * By default, the calls are independent - each one is processed just like
+     * a single call and a failed call doesn't affect the others. If the batch
+     * is atomic, the calls are processed within the BatchInterceptors of this
+     * Application's Plugins (e.g. in a single transaction). The first failed
+     * call stops the batch, in which case all calls are reported as failed.
+     * </p>
+     * 
+     * <p>
+     * Each call gets its own InvocationContext, whose parent is the context of
+     * the batch. They are all closed once the whole response has been written.
+     * </p>
+     * 
+     * @param batchString
+     *            JSON structure defining the batch ("atomic" and the "calls",
+     *            each with its targetClass, method, target and arguments)
+     * @param out
+     *            where to write the response
+     * @return future that is done once the response has been written
+     * @throws Throwable
+     */
+    RemoteFuture<Void> invokeBatch(String batchString, OutputStream out) throws Exception {
+        return invokeBatch(batchString, out, null);
+    }
 
-        List<Interceptor> interceptors = new ArrayList<Interceptor>();
+    /**
+     * Handles a batch of remote invocations, see above, writing the response
+     * in the format of the given Codec (or JSON if it's null).
+     */
+    RemoteFuture<Void> invokeBatch(final String batchString, final OutputStream out, final Codec codec)
+            throws Exception {
+        return dispatch(new Invocation() {
+            public RemoteFuture<Void> process(InvocationContext context) throws Exception {
+                long time = System.nanoTime();
+                Map<String, Object> batch = parseJson(batchString);
+                context.getTimings().addSince(Phase.PARSE, time);
+                List<Map<String, Object>> calls = (List<Map<String, Object>>) batch.get("calls");
+                if (calls == null)
+                    throw new MwanziaException("Batch contains no calls");
+                List<Map<String, Object>> results = Boolean.TRUE.equals(batch.get("atomic")) ? invokeAtomically(
+                        calls, context) : invokeIndependently(calls, context);
+                time = System.nanoTime();
+                JsonOutput json = createOutput(codec, out);
+                json.writeStartArray();
+                for (Map<String, Object> resultMap : results) {
+                    JSON.writeJson(resultMap, whitelistProperties, json, modifiers);
+                }
+                json.writeEndArray();
+                json.flush();
+                context.getTimings().addSince(Phase.SERIALIZE, time);
+                RemoteFuture<Void> response = new RemoteFuture<Void>();
+                response.complete(null);
+                return response;
+            }
+        });
+    }
+
+    /**
+     * Process the given invocation in a new InvocationContext, on the
+     * invocation Executor if there is one. The context is closed once the
+     * response has been written (or the invocation has failed).
+     */
+    private RemoteFuture<Void> dispatch(final Invocation invocation) throws Exception {
+        final InvocationContext context = new InvocationContext(this, null);
+        final InvocationResponse response = new InvocationResponse(context.getTimings());
+        Executor executor = invocationExecutor;
+        if (executor == null) {
+            try {
+                process(invocation, context).forwardTo(response);
+            } catch (Exception e) {
+                finish(context, e);
+                throw e;
+            }
+            return closeWhenDone(response, context);
+        }
+        Runnable task = new Runnable() {
+            public void run() {
+                Timings timings = context.getTimings();
+                timings.addSince(Phase.QUEUE, timings.getStartTime());
+                try {
+                    process(invocation, context).forwardTo(response);
+                } catch (Throwable t) {
+                    response.fail(t);
+                }
+            }
+        };
         for (Plugin plugin : plugins) {
-            interceptors.add(plugin.buildInterceptor());
+            task = plugin.propagateContext(task);
         }
-        for (Interceptor interceptor : interceptors) {
-            interceptor.beforeInvocation(targetClass, method);
+        closeWhenDone(response, context);
+        executor.execute(task);
+        return response;
+    }
+
+    private RemoteFuture<Void> process(Invocation invocation, InvocationContext context) throws Exception {
+        InvocationContext previous = context.attach();
+        try {
+            return invocation.process(context);
+        } finally {
+            context.detach(previous);
         }
-        Map<String, Object> call = parseJson(callString);
-        Object target = JSON.fromJson(call.get("target"), targetClass);
-        Class[] argumentTypes = method.getParameterTypes();
-        List<Object> jsonArguments = (List<Object>) call.get("arguments");
-        Object[] arguments = new Object[jsonArguments.size()];
-        for (int i = 0; i < jsonArguments.size(); i++) {
-            arguments[i] = JSON.fromJson(jsonArguments.get(i), argumentTypes[i]);
+    }
+
+    private RemoteFuture<Void> closeWhenDone(RemoteFuture<Void> response, final InvocationContext context) {
+        response.onCompletion(new RemoteFuture.Callback<Void>() {
+            public void completed(Void result) {
+                finish(context, null);
+            }
+
+            public void failed(Throwable exception) {
+                finish(context, exception);
+            }
+        });
+        return response;
+    }
+
+    private void finish(InvocationContext context, Throwable failure) {
+        try {
+            record(context, failure);
+        } finally {
+            context.close();
         }
-        final Iterator<Plugin> pluginIterator = plugins.iterator();
-        Map<String, Object> resultMap = new LinkedHashMap<String, Object>();
-        resultMap.put("result", null);
-        resultMap.put("exception", null);
+    }
+
+    private void record(InvocationContext context, Throwable failure) {
+        RemoteMethod remoteMethod = context.getRemoteMethod();
+        if (remoteMethod != null) {
+            Timings timings = context.getTimings();
+            metrics.forMethod(remoteMethod).record(System.nanoTime() - timings.getStartTime(),
+                    failure != null ? failure : context.exception,
+                    context.requestBytes,
+                    context.responseBytes,
+                    timings);
+        }
+    }
+
+    private List<Map<String, Object>> invokeIndependently(List<Map<String, Object>> calls,
+            InvocationContext batchContext) throws Exception {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        for (Map<String, Object> call : calls) {
+            results.add(invokeBatched(call, batchContext));
+        }
+        return results;
+    }
+
+    private List<Map<String, Object>> invokeAtomically(List<Map<String, Object>> calls,
+            InvocationContext batchContext) throws Exception {
+        batchContext.atomic = true;
+        List<BatchInterceptor> batchInterceptors = new ArrayList<BatchInterceptor>();
+        try {
+            for (Plugin plugin : plugins) {
+                BatchInterceptor batchInterceptor = plugin.buildBatchInterceptor();
+                if (batchInterceptor != null) {
+                    batchInterceptor.setContext(batchContext);
+                    batchInterceptor.beforeBatch();
+                    batchInterceptors.add(batchInterceptor);
+                }
+            }
+        } catch (Exception e) {
+            // Undo the batch interceptors that already started
+            batchFailed(batchInterceptors, 0, e);
+            throw e;
+        }
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        Throwable failure = null;
+        int failedCall = -1;
         try {
-            for (Interceptor interceptor : interceptors) {
+            while (failure == null && results.size() < calls.size()) {
+                Map<String, Object> resultMap = invokeBatched(calls.get(results.size()), batchContext);
+                results.add(resultMap);
+                failure = (Throwable) resultMap.get("exception");
+            }
+            if (failure != null)
+                failedCall = results.size() - 1;
+        } catch (Exception e) {
+            failure = e;
+            failedCall = results.size();
+        }
+        if (failure != null) {
+            batchFailed(batchInterceptors, 0, failure);
+        } else {
+            int i = 0;
+            try {
+                for (; i < batchInterceptors.size(); i++) {
+                    batchInterceptors.get(i).batchSucceeded();
+                }
+                return results;
+            } catch (Exception e) {
+                // The failing batch interceptor is responsible for itself
+                failure = e;
+                batchFailed(batchInterceptors, i + 1, failure);
+            }
+        }
+        // Nothing in the batch took effect, so report every call as failed
+        List<Map<String, Object>> failedResults = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < calls.size(); i++) {
+            Map<String, Object> resultMap = newResultMap();
+            resultMap.put("exception", i == failedCall ? failure : new MwanziaException(String.format(
+                    "Batch failed: %1$s",
+                    failure.getMessage())));
+            failedResults.add(resultMap);
+        }
+        return failedResults;
+    }
+
+    private void batchFailed(List<BatchInterceptor> batchInterceptors, int from, Throwable failure)
+            throws Exception {
+        for (int i = from; i < batchInterceptors.size(); i++) {
+            batchInterceptors.get(i).batchFailed(failure);
+        }
+    }
+
+    /**
+     * Process a single call of a batch. Unlike single calls, a call that can't
+     * be resolved or deserialized only fails itself.
+     */
+    private Map<String, Object> invokeBatched(Map<String, Object> call, InvocationContext batchContext)
+            throws Exception {
+        // Closed along with the batch, since results are only written then
+        InvocationContext context = new InvocationContext(this, batchContext);
+        InvocationContext previous = context.attach();
+        try {
+            Map<String, Object> resultMap = processBatched(call, context);
+            record(context, (Throwable) resultMap.get("exception"));
+            return resultMap;
+        } catch (Exception e) {
+            record(context, e);
+            throw e;
+        } finally {
+            context.detach(previous);
+        }
+    }
+
+    private Map<String, Object> processBatched(Map<String, Object> call, InvocationContext context)
+            throws Exception {
+        InvocationPipeline pipeline = null;
+        RemoteMethod remoteMethod;
+        Object target;
+        Object[] arguments;
+        Object callKey;
+        try {
+            remoteMethod = lookupRemoteMethod((String) call.get("targetClass"), (String) call.get("method"));
+            pipeline = beforeInvocation(remoteMethod, context);
+            long time = System.nanoTime();
+            target = JSON.fromJson(call.get("target"), remoteMethod.getTargetClass(), modifiers);
+            context.projection = Projection.parse((List<String>) call.get("fields"));
+            List<Object> jsonArguments = (List<Object>) call.get("arguments");
+            checkArgumentCount(remoteMethod, jsonArguments.size());
+            arguments = new Object[jsonArguments.size()];
+            for (int i = 0; i < jsonArguments.size(); i++) {
+                arguments[i] = JSON.fromJson(jsonArguments.get(i), remoteMethod.getParameterType(i), modifiers);
+            }
+            context.getTimings().addSince(Phase.DESERIALIZE, time);
+            callKey = sharesResult(remoteMethod) ? ResultCache.key(call.get("target"), jsonArguments,
+                    context.projection) : null;
+        } catch (Throwable exception) {
+            if (pipeline != null) {
+                exception = pipeline.invocationFailed(context, exception);
+            }
+            LOGGER.info("Returning exception from batched call to {}.{}", call.get("targetClass"), call.get("method"));
+            Map<String, Object> resultMap = newResultMap();
+            resultMap.put("exception", exception);
+            return resultMap;
+        }
+        // Calls in a batch are processed one after the other, so wait for
+        // asynchronous methods
+        return execute(remoteMethod, pipeline, target, arguments, callKey, context).await();
+    }
+
+    private RemoteFuture<Void> invoke(RemoteMethod remoteMethod, InvocationPipeline pipeline, Object target,
+            Object[] arguments, Object callKey, final InvocationContext context, OutputStream out,
+            final Codec codec) throws Exception {
+        final RemoteFuture<Void> response = new RemoteFuture<Void>();
+        final Metrics.CountingOutputStream countingOut = new Metrics.CountingOutputStream(out);
+        execute(remoteMethod, pipeline, target, arguments, callKey, context).onCompletion(
+                new RemoteFuture.Callback<Map<String, Object>>() {
+                    public void completed(Map<String, Object> resultMap) {
+                        try {
+                            long time = System.nanoTime();
+                            JsonOutput json = createOutput(codec, countingOut);
+                            JSON.writeJson(resultMap, whitelistProperties, json, modifiers);
+                            json.flush();
+                            context.getTimings().addSince(Phase.SERIALIZE, time);
+                            context.exception = (Throwable) resultMap.get("exception");
+                            context.responseBytes = countingOut.getCount();
+                            response.complete(null);
+                        } catch (Throwable t) {
+                            response.fail(t);
+                        }
+                    }
+
+                    public void failed(Throwable exception) {
+                        response.fail(exception);
+                    }
+                });
+        return response;
+    }
+
+    /**
+     * Invoke the remote method, producing the result map for the response.
+     * For asynchronous methods, the invocation only succeeds or fails once the
+     * RemoteFuture returned by the method is done, so that's also when the
+     * pipeline hears about it (with the invocation's context attached to
+     * whatever thread completed the method's RemoteFuture).
+     * 
+     * For @Cacheable methods, the method is only invoked if the ResultCache
+     * doesn't have its result yet, and for @Coalesce methods only if there is
+     * no identical call in flight. Either is checked once the pipeline has
+     * prepared the invocation (so that calls are still authorized and
+     * validated).
+     */
+    private RemoteFuture<Map<String, Object>> execute(RemoteMethod remoteMethod,
+            final InvocationPipeline pipeline, Object target, Object[] arguments, final Object callKey,
+            final InvocationContext context) {
+        final Method method = remoteMethod.getMethod();
+        final RemoteFuture<Map<String, Object>> resultMap = new RemoteFuture<Map<String, Object>>();
+        final Timings timings = context.getTimings();
+        final ResultCache.MethodCache cache = resultCache.forMethod(remoteMethod);
+        Coalesce coalesce = remoteMethod.getAnnotation(Coalesce.class);
+        final boolean shareResult = cache != null || coalesce != null;
+        try {
+            long time = System.nanoTime();
+            for (InvocationStage stage : pipeline.preparing) {
                 if (target != null)
-                    target = interceptor.replaceTarget(target);
-                arguments = interceptor.prepareInvocation(target, method, arguments);
+                    target = stage.replaceTarget(context, target);
+                arguments = stage.prepareInvocation(context, target, arguments);
             }
-            Object result = method.invoke(target, arguments);
-            if (result != null) {
-                for (Interceptor interceptor : interceptors) {
-                    result = interceptor.replaceResult(result);
+            final long invoked = timings.addSince(Phase.INTERCEPT, time);
+            if (cache != null) {
+                RawJson cached = cache.get(callKey);
+                metrics.forMethod(remoteMethod).recordCacheLookup(cached != null);
+                if (cached != null) {
+                    Map<String, Object> hit = newResultMap();
+                    hit.put("result", cached);
+                    resultMap.complete(hit);
+                    return resultMap;
                 }
             }
-            for (Interceptor interceptor : interceptors) {
-                interceptor.invocationSucceeded(target, result);
+            // Taken on a miss, so that the result isn't cached if the cache
+            // is invalidated while the method runs
+            final long generation = cache != null ? cache.generation() : 0;
+            if (coalesce != null && !inAtomicBatch(context)) {
+                RemoteFuture<Map<String, Object>> inFlight = coalescer.join(Arrays.asList(remoteMethod, coalesce
+                        .perPrincipal() ? getPrincipal(context) : null, callKey), resultMap);
+                if (inFlight != null) {
+                    metrics.forMethod(remoteMethod).recordCoalesced();
+                    waitFor(remoteMethod, inFlight, coalesce.timeout(), invoked, context, resultMap);
+                    return resultMap;
+                }
+            }
+            Object result = remoteMethod.invoke(target, arguments);
+            if (remoteMethod.isAsynchronous() && result != null) {
+                final Object finalTarget = target;
+                ((RemoteFuture<Object>) result).onCompletion(new RemoteFuture.Callback<Object>() {
+                    public void completed(Object result) {
+                        timings.addSince(Phase.INVOKE, invoked);
+                        InvocationContext previous = context.attach();
+                        try {
+                            invocationSucceeded(method, pipeline, context, finalTarget, result, shareResult,
+                                    cache, callKey, generation, resultMap);
+                        } finally {
+                            context.detach(previous);
+                        }
+                    }
+
+                    public void failed(Throwable exception) {
+                        timings.addSince(Phase.INVOKE, invoked);
+                        InvocationContext previous = context.attach();
+                        try {
+                            invocationFailed(method, pipeline, context, exception, resultMap);
+                        } finally {
+                            context.detach(previous);
+                        }
+                    }
+                });
+            } else {
+                timings.addSince(Phase.INVOKE, invoked);
+                invocationSucceeded(method, pipeline, context, target, result, shareResult, cache, callKey,
+                        generation, resultMap);
+            }
+        } catch (Throwable exception) {
+            invocationFailed(method, pipeline, context, exception, resultMap);
+        }
+        return resultMap;
+    }
+
+    /**
+     * Whether the given context is that of a call in an atomic batch. Such a
+     * call only takes effect if the whole batch succeeds, so other calls can't
+     * share its result.
+     */
+    private static boolean inAtomicBatch(InvocationContext context) {
+        return context.getParent() != null && context.getParent().atomic;
+    }
+
+    private void invocationSucceeded(Method method, InvocationPipeline pipeline, InvocationContext context,
+            Object target, Object result, boolean shareResult, ResultCache.MethodCache cache, Object callKey,
+            long generation, RemoteFuture<Map<String, Object>> resultMap) {
+        try {
+            Timings timings = context.getTimings();
+            long time = System.nanoTime();
+            if (result != null) {
+                result = pipeline.replaceResult(context, result);
+                time = timings.addSince(Phase.RESULT, time);
+            }
+            pipeline.invocationSucceeded(context, target, result);
+            time = timings.addSince(Phase.COMPLETE, time);
+            if (result != null && context.getRemoteMethod().isAnnotationPresent(Columnar.class))
+                result = new Columns(result);
+            if (result != null && context.projection != null)
+                result = new Projected(result, context.projection);
+            if (shareResult) {
+                // Serialize once for the cache and for coalesced calls
+                result = serializeResult(method, result);
+                if (cache != null && result instanceof RawJson && !inAtomicBatch(context))
+                    cache.put(callKey, (RawJson) result, generation);
+                timings.addSince(Phase.SERIALIZE, time);
             }
-            resultMap.put("result", result);
+            Map<String, Object> succeeded = newResultMap();
+            succeeded.put("result", result);
+            resultMap.complete(succeeded);
         } catch (Throwable exception) {
-            if (exception instanceof InvocationTargetException) {
-                exception = exception.getCause();
+            invocationFailed(method, pipeline, context, exception, resultMap);
+        }
+    }
+
+    /**
+     * Serialize the given result ahead of the response, so that it can be
+     * shared with other calls.
+     * 
+     * @return the serialized result, or the result itself if it can't be
+     *         serialized (in which case writing the response will fail too)
+     */
+    private Object serializeResult(Method method, Object result) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonOutput json = createJsonOutput(out);
+            JSON.writeJson(result, whitelistProperties, json, modifiers);
+            json.flush();
+            return new RawJson(out.toString("UTF-8"));
+        } catch (Exception e) {
+            LOGGER.warn("Unable to serialize result of {} ahead of the response", method, e);
+            return result;
+        }
+    }
+
+    /**
+     * Complete the given result map with the result map of the in-flight call
+     * that the current call was coalesced with, or with a MwanziaException once
+     * the timeout (if any) has passed.
+     */
+    private void waitFor(final RemoteMethod remoteMethod, RemoteFuture<Map<String, Object>> inFlight,
+            long timeout, final long waitingSince, InvocationContext context,
+            final RemoteFuture<Map<String, Object>> resultMap) {
+        final Timings timings = context.getTimings();
+        // Scheduled before the in-flight call's callback is registered, since
+        // that may run right away and cancel it
+        final Coalescer.Timeout timeoutTask = timeout > 0 ? coalescer.schedule(new Runnable() {
+            public void run() {
+                if (resultMap.isDone())
+                    return;
+                timings.addSince(Phase.INVOKE, waitingSince);
+                Map<String, Object> timedOut = newResultMap();
+                timedOut.put("exception", new MwanziaException(String.format(
+                        "Timed out waiting for identical call to %1$s", remoteMethod)));
+                resultMap.complete(timedOut);
+            }
+        }, timeout) : null;
+        inFlight.onCompletion(new RemoteFuture.Callback<Map<String, Object>>() {
+            public void completed(Map<String, Object> result) {
+                cancelTimeout();
+                timings.addSince(Phase.INVOKE, waitingSince);
+                resultMap.complete(result);
+            }
+
+            public void failed(Throwable exception) {
+                cancelTimeout();
+                timings.addSince(Phase.INVOKE, waitingSince);
+                resultMap.fail(exception);
             }
-            for (Interceptor interceptor : interceptors) {
-                exception = interceptor.invocationFailed(exception);
+
+            private void cancelTimeout() {
+                if (timeoutTask != null)
+                    timeoutTask.cancel();
             }
+        });
+    }
+
+    /**
+     * Release the resources of this Application that outlive its invocations
+     * (the timer for the timeouts of coalesced calls).
+     */
+    public void destroy() {
+        coalescer.shutdown();
+    }
+
+    /**
+     * The principal of the current invocation according to the first Plugin
+     * that knows it.
+     */
+    private Object getPrincipal(InvocationContext context) {
+        for (Plugin plugin : plugins) {
+            Object principal = plugin.getPrincipal(context);
+            if (principal != null)
+                return principal;
+        }
+        return null;
+    }
+
+    private void invocationFailed(Method method, InvocationPipeline pipeline, InvocationContext context,
+            Throwable exception, RemoteFuture<Map<String, Object>> resultMap) {
+        try {
+            long time = System.nanoTime();
+            exception = pipeline.invocationFailed(context, exception);
+            context.getTimings().addSince(Phase.COMPLETE, time);
             LOGGER.info("Returning exception from {}", method, exception);
-            resultMap.put("exception", exception);
+            Map<String, Object> failed = newResultMap();
+            failed.put("exception", exception);
+            resultMap.complete(failed);
+        } catch (Throwable t) {
+            // The pipeline itself failed
+            resultMap.fail(t);
+        }
+    }
+
+    /**
+     * The processing of an invocation within its InvocationContext.
+     */
+    private interface Invocation {
+        RemoteFuture<Void> process(InvocationContext context) throws Exception;
+    }
+
+    private Map<String, Object> newResultMap() {
+        Map<String, Object> resultMap = new LinkedHashMap<String, Object>();
+        resultMap.put("result", null);
+        resultMap.put("exception", null);
+        return resultMap;
+    }
+
+    /**
+     * Find the remote method with the given name on the given target class.
+     * Only this Application's own class and classes that were registered with
+     * it are considered, so unknown class names never reach the class loader.
+     * 
+     * @param targetClassName
+     * @param methodName
+     * @return
+     */
+    RemoteMethod lookupRemoteMethod(String targetClassName, String methodName) {
+        Map<String, RemoteMethod> methodsByName = remoteMethods.get(targetClassName);
+        RemoteMethod remoteMethod = methodsByName != null ? methodsByName.get(methodName) : null;
+        if (remoteMethod == null)
+            throw new MwanziaException(String.format("No remote method %1$s found on type %2$s",
+                    methodName,
+                    targetClassName));
+        return remoteMethod;
+    }
+
+    private void indexRemoteMethods(Class clazz) {
+        if (remoteMethods.containsKey(clazz.getName()))
+            return;
+        Map<String, RemoteMethod> methodsByName = new HashMap<String, RemoteMethod>();
+        for (Method method : clazz.getMethods()) {
+            // Skip bridge methods generated for covariant return types
+            if (!method.isBridge() && isRemotelyExecutable(method) && !methodsByName.containsKey(method.getName())) {
+                RemoteMethod remoteMethod = new RemoteMethod(clazz, method);
+                methodsByName.put(method.getName(), remoteMethod);
+                resultCache.register(remoteMethod);
+            }
         }
-        return serializeToJson(JSON.toJson(resultMap, whitelistProperties));
+        remoteMethods.put(clazz.getName(), methodsByName);
     }
 
     String coreJavaScript() throws Exception {
@@ -231,12 +1060,13 @@ public abstract class Application {
 
     String javaScriptInstance(String servletUrl) throws Exception {
         // Instantiate application (including properties)
+        SerializationPlan plan = SerializationPlan.forClass(this.getClass(), false);
         Map<Object, Object> properties = new LinkedHashMap<Object, Object>();
-        for (Property descriptor : SmallPropertyUtils.getProperties(this.getClass()).values()) {
-            properties.put(descriptor.getName(), descriptor.read(this));
+        for (int i = 0; i < plan.size(); i++) {
+            properties.put(plan.getName(i), plan.read(this, i));
         }
         return String.format("mwanzia._apps.%1$s = new mwanzia.%2$s('%3$s', '%4$s', %5$s);", this.name, this.getClass()
-                .getName(), name, servletUrl, serializeToJson(JSON.toJson(properties, false)));
+                .getName(), name, servletUrl, serializeToJson(JSON.toJson(properties, false, modifiers)));
     }
 
     private void writeClass(PrettyPrinter js, Class clazz, String baseClassName, Runnable constructor) {
@@ -0,0 +1,61 @@
+package org.mwanzia;
+
+/**
+ * <p>
+ * A class that intercepts an atomic batch of method invocations (see
+ * Application.invokeBatch()). The default implementation does not affect the
+ * batch at all.
+ * </p>
+ * 
+ * <p>
+ * Each call in the batch is still intercepted by its own Interceptors, which
+ * run inside of the callbacks here. For example, a TransactionPlugin begins a
+ * single transaction in beforeBatch() and its Interceptors then leave
+ * transaction demarcation to the batch.
+ * </p>
+ */
+public class BatchInterceptor {
+    private InvocationContext context;
+
+    /**
+     * The context of the batch, which is the parent of the InvocationContexts
+     * of its calls. It is available from beforeBatch() onwards.
+     * 
+     * @return
+     */
+    public InvocationContext getContext() {
+        return context;
+    }
+
+    void setContext(InvocationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * This callback fires before the first call in the batch is processed.
+     * 
+     * @throws Exception
+     */
+    public void beforeBatch() throws Exception {
+    }
+
+    /**
+     * This callback fires after all calls in the batch have been invoked, if
+     * and only if none of them threw an exception.
+     * 
+     * @throws Exception
+     */
+    public void batchSucceeded() throws Exception {
+    }
+
+    /**
+     * This callback fires as soon as one of the calls in the batch has thrown
+     * an exception. The remaining calls are not invoked.
+     * 
+     * @param exception
+     *            the exception thrown by the failed call
+     * @throws Exception
+     */
+    public void batchFailed(Throwable exception) throws Exception {
+    }
+}
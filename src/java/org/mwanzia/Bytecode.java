@@ -0,0 +1,166 @@
+package org.mwanzia;
+
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+/**
+ * <p>
+ * Generates small helper classes at runtime using Javassist. Javassist is not
+ * a required dependency of Mwanzia (it usually comes along with Hibernate), so
+ * callers must be prepared for generation to fail with any Throwable
+ * (including NoClassDefFoundError) and fall back to plain reflection.
+ * </p>
+ *
+ * <p>
+ * Generated classes are defined in the same package and class loader as the
+ * class that they support, which lets them call package-private members and
+ * keeps them from pinning unrelated class loaders.
+ * </p>
+ */
+final class Bytecode {
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private Bytecode() {
+    }
+
+    /**
+     * Generate and instantiate a class that implements the given interface
+     * using the given method sources.
+     *
+     * @param <T>
+     * @param anchor
+     *            the class whose package and class loader will host the
+     *            generated class
+     * @param suffix
+     *            descriptive suffix for the generated class name
+     * @param implementedInterface
+     * @param methodSources
+     *            Java source for each method (Javassist dialect)
+     * @return a new instance of the generated class
+     * @throws Exception
+     */
+    static <T> T generate(Class anchor, String suffix, Class<T> implementedInterface, String... methodSources)
+            throws Exception {
+        ClassLoader loader = anchor.getClassLoader();
+        if (loader == null)
+            throw new MwanziaException("Cannot generate classes for bootstrap type " + anchor.getName());
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(loader));
+        pool.appendClassPath(new LoaderClassPath(implementedInterface.getClassLoader()));
+        String className = String.format("%1$s$$Mwanzia%2$s$$%3$s", anchor.getName(), suffix, SEQUENCE
+                .incrementAndGet());
+        CtClass generated = pool.makeClass(className);
+        try {
+            generated.addInterface(pool.get(implementedInterface.getName()));
+            generated.addConstructor(CtNewConstructor.defaultConstructor(generated));
+            for (String methodSource : methodSources) {
+                generated.addMethod(CtNewMethod.make(methodSource, generated));
+            }
+            Class<?> clazz = generated.toClass(loader, anchor.getProtectionDomain());
+            return implementedInterface.cast(clazz.newInstance());
+        } finally {
+            generated.detach();
+        }
+    }
+
+    /**
+     * Make sure that the given type can be referenced from code in the
+     * package (and class loader) of the given class.
+     * 
+     * @param type
+     * @param from
+     * @throws MwanziaException
+     *             if the type isn't accessible
+     */
+    static void checkAccessible(Class type, Class from) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (!type.isPrimitive() && !Modifier.isPublic(type.getModifiers())
+                && (type.getClassLoader() != from.getClassLoader() || type.getPackage() != from.getPackage()))
+            throw new MwanziaException(String.format("Type %1$s is not accessible from %2$s",
+                    type.getName(),
+                    from.getName()));
+    }
+
+    /**
+     * The name of the given type as it would appear in Javassist source (nested
+     * classes keep their binary names).
+     *
+     * @param type
+     * @return
+     */
+    static String sourceName(Class type) {
+        if (type.isArray())
+            return sourceName(type.getComponentType()) + "[]";
+        return type.getName();
+    }
+
+    /**
+     * Source for a boolean expression that tells whether the given Object
+     * expression can be converted to the given type using
+     * {@link #unbox(Class, String)}. Like Method.invoke(), null is acceptable
+     * for every type except primitives.
+     *
+     * @param type
+     * @param expression
+     * @return
+     */
+    static String accepts(Class type, String expression) {
+        if (Object.class == type)
+            return "true";
+        if (!type.isPrimitive())
+            return String.format("(%2$s == null || %2$s instanceof %1$s)", sourceName(type), expression);
+        if (Boolean.TYPE == type)
+            return String.format("(%1$s instanceof java.lang.Boolean)", expression);
+        if (Character.TYPE == type)
+            return String.format("(%1$s instanceof java.lang.Character)", expression);
+        return String.format("(%1$s instanceof java.lang.Number)", expression);
+    }
+
+    /**
+     * Source for an expression that converts the given Object expression to the
+     * given type. Primitive types are unboxed, using Number so that any numeric
+     * wrapper is accepted for any numeric primitive.
+     *
+     * @param type
+     * @param expression
+     * @return
+     */
+    static String unbox(Class type, String expression) {
+        if (!type.isPrimitive())
+            return String.format("((%1$s) %2$s)", sourceName(type), expression);
+        if (Boolean.TYPE == type)
+            return String.format("((java.lang.Boolean) %1$s).booleanValue()", expression);
+        if (Character.TYPE == type)
+            return String.format("((java.lang.Character) %1$s).charValue()", expression);
+        return String.format("((java.lang.Number) %1$s).%2$sValue()", expression, type.getName());
+    }
+
+    /**
+     * Source for an expression that converts the given expression of the given
+     * type to an Object, boxing it if it is primitive.
+     *
+     * @param type
+     * @param expression
+     * @return
+     */
+    static String box(Class type, String expression) {
+        if (!type.isPrimitive())
+            return expression;
+        String wrapper;
+        if (Integer.TYPE == type)
+            wrapper = "java.lang.Integer";
+        else if (Character.TYPE == type)
+            wrapper = "java.lang.Character";
+        else
+            wrapper = "java.lang." + Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+        return String.format("%1$s.valueOf(%2$s)", wrapper, expression);
+    }
+}
@@ -0,0 +1,41 @@
+package org.mwanzia;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a remote method whose results may be cached by the Application. The
+ * result of a successful invocation is kept, already serialized to JSON (and
+ * to CBOR, once it has been sent as CBOR), under the JSON of the call's target
+ * and arguments (as they were sent, so that the cache doesn't hold on to live
+ * objects), and later calls with equal targets and arguments are answered from
+ * the cache without invoking the method. Exceptions are never cached, and
+ * neither are results of calls during which the method's cache was
+ * invalidated.
+ * </p>
+ *
+ * <p>
+ * Plugins still get to authorize and validate every call, but a cached call
+ * skips the rest of the pipeline (replaceResult() and invocationSucceeded()),
+ * so only use this on methods whose results depend on nothing but their
+ * target and arguments. See ResultCache for invalidating cached results.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.METHOD })
+public @interface Cacheable {
+    /**
+     * How long a cached result stays valid, in milliseconds, or 0 to keep it
+     * until it is evicted or invalidated.
+     */
+    long ttl() default 0;
+
+    /**
+     * The maximum number of results cached for this method. Once it is
+     * reached, the least recently used result is evicted.
+     */
+    int maxEntries() default 1000;
+}
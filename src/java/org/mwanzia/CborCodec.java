@@ -0,0 +1,31 @@
+package org.mwanzia;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Codec for CBOR (RFC 7049), a binary encoding of the JSON data model. Numbers
+ * are sent as binary integers and floats instead of decimal text, and strings
+ * without escaping, which makes responses that are mostly numbers both
+ * smaller and cheaper to write and read.
+ * </p>
+ */
+public class CborCodec implements Codec {
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public JsonOutput createOutput(OutputStream out) {
+        return new CborWriter(out);
+    }
+
+    @Override
+    public JsonInput createInput(InputStream in) {
+        return new CborReader(in);
+    }
+}
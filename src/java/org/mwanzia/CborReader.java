@@ -0,0 +1,283 @@
+package org.mwanzia;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * JsonInput that reads CBOR (RFC 7049) from an InputStream. It has no
+ * dependencies beyond the JDK.
+ * </p>
+ *
+ * <p>
+ * Both definite and indefinite lengths are supported. Map keys have to be
+ * strings or integers (which are read as their decimal text), and numbers are
+ * read like JsonReader reads them: the smallest of Integer, Long and
+ * BigInteger for integers and bignums, and a Double for floats. Tags other
+ * than bignums are ignored, and byte strings aren't supported.
+ * </p>
+ */
+public class CborReader implements JsonInput {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final BigInteger UNSIGNED_LONG = BigInteger.ONE.shiftLeft(64);
+
+    private final InputStream in;
+    // For each open container, whether it is a map (true) or array (false),
+    // how many items (keys and values) it has left or -1 if its length is
+    // indefinite, and whether its next item is a key
+    private boolean[] isMap = new boolean[16];
+    private long[] remaining = new long[16];
+    private boolean[] keyNext = new boolean[16];
+    private int depth = 0;
+    private Token current;
+    private String text;
+    private Number number;
+
+    public CborReader(InputStream in) {
+        this.in = new BufferedInputStream(in, 8192);
+    }
+
+    @Override
+    public Token current() {
+        return current;
+    }
+
+    @Override
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public Number getNumber() {
+        return number;
+    }
+
+    @Override
+    public Token next() throws IOException {
+        text = null;
+        number = null;
+        if (depth > 0 && remaining[depth - 1] == 0)
+            return current = pop();
+        int b = in.read();
+        if (b == -1) {
+            if (depth > 0)
+                throw syntaxError("Unexpected end of input");
+            return current = Token.END;
+        }
+        if (b == 0xff) {
+            if (depth == 0 || remaining[depth - 1] != -1 || (isMap[depth - 1] && !keyNext[depth - 1]))
+                throw syntaxError("Unexpected break");
+            return current = pop();
+        }
+        boolean isKey = false;
+        if (depth > 0) {
+            if (remaining[depth - 1] > 0)
+                remaining[depth - 1] -= 1;
+            if (isMap[depth - 1]) {
+                isKey = keyNext[depth - 1];
+                keyNext[depth - 1] = !isKey;
+            }
+        }
+        current = readItem(b);
+        if (isKey) {
+            if (current == Token.NUMBER)
+                text = number.toString();
+            else if (current != Token.STRING)
+                throw syntaxError("Map keys must be strings");
+            number = null;
+            current = Token.FIELD_NAME;
+        }
+        return current;
+    }
+
+    private Token readItem(int b) throws IOException {
+        int majorType = b >> 5;
+        int info = b & 0x1f;
+        switch (majorType) {
+        case 0:
+            number = unsigned(readLength(info));
+            return Token.NUMBER;
+        case 1:
+            number = negative(readLength(info));
+            return Token.NUMBER;
+        case 2:
+            throw syntaxError("Byte strings are not supported");
+        case 3:
+            text = readText(info);
+            return Token.STRING;
+        case 4:
+            push(false, info == 31 ? -1 : readLength(info));
+            return Token.START_ARRAY;
+        case 5:
+            push(true, info == 31 ? -1 : readLength(info) * 2);
+            return Token.START_OBJECT;
+        case 6:
+            long tag = readLength(info);
+            if (tag == 2 || tag == 3) {
+                int next = read();
+                if (next >> 5 != 2 || (next & 0x1f) == 31)
+                    throw syntaxError("Invalid bignum");
+                byte[] bytes = readBytes(readLength(next & 0x1f));
+                BigInteger big = new BigInteger(1, bytes);
+                number = smallest(tag == 2 ? big : big.not());
+                return Token.NUMBER;
+            }
+            return readItem(read());
+        default:
+            switch (info) {
+            case 20:
+                return Token.FALSE;
+            case 21:
+                return Token.TRUE;
+            case 22:
+            case 23:
+                // null and undefined
+                return Token.NULL;
+            case 25:
+                number = Double.valueOf(halfToDouble((int) readFixed(2)));
+                return Token.NUMBER;
+            case 26:
+                number = Double.valueOf(Float.intBitsToFloat((int) readFixed(4)));
+                return Token.NUMBER;
+            case 27:
+                number = Double.valueOf(Double.longBitsToDouble(readFixed(8)));
+                return Token.NUMBER;
+            default:
+                throw syntaxError("Unsupported simple value " + info);
+            }
+        }
+    }
+
+    private void push(boolean map, long length) {
+        if (depth == isMap.length) {
+            isMap = copyOf(isMap, depth * 2);
+            keyNext = copyOf(keyNext, depth * 2);
+            long[] expanded = new long[depth * 2];
+            System.arraycopy(remaining, 0, expanded, 0, depth);
+            remaining = expanded;
+        }
+        isMap[depth] = map;
+        remaining[depth] = length;
+        keyNext[depth] = map;
+        depth += 1;
+    }
+
+    private Token pop() {
+        depth -= 1;
+        return isMap[depth] ? Token.END_OBJECT : Token.END_ARRAY;
+    }
+
+    private static boolean[] copyOf(boolean[] array, int length) {
+        boolean[] expanded = new boolean[length];
+        System.arraycopy(array, 0, expanded, 0, array.length);
+        return expanded;
+    }
+
+    private String readText(int info) throws IOException {
+        if (info != 31)
+            return new String(readBytes(readLength(info)), UTF8);
+        // An indefinite length string is a series of definite length chunks
+        StringBuilder chunks = new StringBuilder();
+        for (int b = read(); b != 0xff; b = read()) {
+            if (b >> 5 != 3 || (b & 0x1f) == 31)
+                throw syntaxError("Invalid string chunk");
+            chunks.append(new String(readBytes(readLength(b & 0x1f)), UTF8));
+        }
+        return chunks.toString();
+    }
+
+    private long readLength(int info) throws IOException {
+        if (info < 24)
+            return info;
+        switch (info) {
+        case 24:
+            return readFixed(1);
+        case 25:
+            return readFixed(2);
+        case 26:
+            return readFixed(4);
+        case 27:
+            return readFixed(8);
+        default:
+            throw syntaxError("Invalid length");
+        }
+    }
+
+    private byte[] readBytes(long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw syntaxError("String too long");
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read == -1)
+                throw new EOFException("Invalid CBOR: Unexpected end of input");
+            offset += read;
+        }
+        return bytes;
+    }
+
+    private long readFixed(int bytes) throws IOException {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | read();
+        }
+        return value;
+    }
+
+    private int read() throws IOException {
+        int b = in.read();
+        if (b == -1)
+            throw new EOFException("Invalid CBOR: Unexpected end of input");
+        return b;
+    }
+
+    /**
+     * The given 64 bits as an unsigned integer
+     */
+    private static Number unsigned(long value) {
+        if (value < 0)
+            return BigInteger.valueOf(value).add(UNSIGNED_LONG);
+        return smallest(value);
+    }
+
+    /**
+     * The negative integer -1 - n for the given 64 bits as an unsigned n
+     */
+    private static Number negative(long n) {
+        if (n < 0)
+            return BigInteger.valueOf(n).add(UNSIGNED_LONG).not();
+        return smallest(-1 - n);
+    }
+
+    private static Number smallest(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+            return Integer.valueOf((int) value);
+        return Long.valueOf(value);
+    }
+
+    private static Number smallest(BigInteger value) {
+        return value.bitLength() < 64 ? smallest(value.longValue()) : value;
+    }
+
+    private static double halfToDouble(int half) {
+        int exponent = (half >> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        double value;
+        if (exponent == 0)
+            value = mantissa * Math.pow(2, -24);
+        else if (exponent == 31)
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        else
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Invalid CBOR: " + message);
+    }
+}
@@ -0,0 +1,232 @@
+package org.mwanzia;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * JsonOutput that writes CBOR (RFC 7049) to an OutputStream. It has no
+ * dependencies beyond the JDK.
+ * </p>
+ *
+ * <p>
+ * Objects and arrays are written with indefinite lengths, so that they can be
+ * streamed like JSON. Integral numbers are written as CBOR integers (or
+ * bignums), and other numbers as single precision floats if that's lossless
+ * and as double precision floats otherwise. Like JsonWriter, leaf values other
+ * than Strings, Numbers and Booleans are written as strings.
+ * </p>
+ */
+public class CborWriter implements JsonOutput {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1 << 5;
+    private static final int BYTES = 2 << 5;
+    private static final int TEXT = 3 << 5;
+    private static final int START_ARRAY = 0x9f;
+    private static final int START_MAP = 0xbf;
+    private static final int POSITIVE_BIGNUM = 0xc2;
+    private static final int NEGATIVE_BIGNUM = 0xc3;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT = 0xfa;
+    private static final int DOUBLE = 0xfb;
+    private static final int BREAK = 0xff;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int position = 0;
+
+    public CborWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writeByte(START_MAP);
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        writeByte(BREAK);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        writeByte(START_ARRAY);
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        writeByte(BREAK);
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        writeText(name);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        writeByte(NULL);
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        writeText(value);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void writeNumber(Number value) throws IOException {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeInteger(value.longValue());
+        } else if (value instanceof BigInteger) {
+            BigInteger big = (BigInteger) value;
+            if (big.bitLength() < 64) {
+                writeInteger(big.longValue());
+            } else {
+                // A bignum holds the magnitude of n (or of -1 - n, if n is
+                // negative) as a big-endian byte string
+                boolean negative = big.signum() < 0;
+                byte[] magnitude = (negative ? big.not() : big).toByteArray();
+                int offset = magnitude[0] == 0 ? 1 : 0;
+                writeByte(negative ? NEGATIVE_BIGNUM : POSITIVE_BIGNUM);
+                writeHeader(BYTES, magnitude.length - offset);
+                writeBytes(magnitude, offset, magnitude.length - offset);
+            }
+        } else {
+            // Floats are widened from their decimal form, like JSON readers
+            // would, so that 0.1f doesn't become 0.10000000149011612
+            double d = value instanceof Float ? Double.parseDouble(value.toString()) : value.doubleValue();
+            if ((float) d == d || Double.isNaN(d)) {
+                writeByte(FLOAT);
+                writeFixed(Float.floatToIntBits((float) d), 4);
+            } else {
+                writeByte(DOUBLE);
+                writeFixed(Double.doubleToLongBits(d), 8);
+            }
+        }
+    }
+
+    @Override
+    public void writeValue(Object value) throws IOException {
+        if (value == null)
+            writeNull();
+        else if (value instanceof Enum)
+            writeString(((Enum) value).name());
+        else
+            writeString(value.toString());
+    }
+
+    /**
+     * Transcodes the given JSON to CBOR.
+     */
+    @Override
+    public void writeRawValue(String json) throws IOException {
+        JsonReader in = new JsonReader(new StringReader(json));
+        in.next();
+        JSON.copyValue(in, this);
+    }
+
+    /**
+     * Write a value that has already been encoded as CBOR.
+     */
+    void writeEncoded(byte[] encoded) throws IOException {
+        writeBytes(encoded, 0, encoded.length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void writeInteger(long value) throws IOException {
+        if (value >= 0)
+            writeHeader(UNSIGNED, value);
+        else
+            writeHeader(NEGATIVE, -1 - value);
+    }
+
+    private void writeText(String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                byte[] bytes = value.getBytes(UTF8);
+                writeHeader(TEXT, bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+                return;
+            }
+        }
+        // ASCII, one byte per char
+        writeHeader(TEXT, length);
+        int offset = 0;
+        while (offset < length) {
+            if (position == buffer.length)
+                drain();
+            int chunk = Math.min(length - offset, buffer.length - position);
+            for (int i = 0; i < chunk; i++) {
+                buffer[position++] = (byte) value.charAt(offset++);
+            }
+        }
+    }
+
+    private void writeHeader(int majorType, long length) throws IOException {
+        if (length < 24) {
+            writeByte(majorType | (int) length);
+        } else if (length < 0x100) {
+            writeByte(majorType | 24);
+            writeFixed(length, 1);
+        } else if (length < 0x10000) {
+            writeByte(majorType | 25);
+            writeFixed(length, 2);
+        } else if (length < 0x100000000L) {
+            writeByte(majorType | 26);
+            writeFixed(length, 4);
+        } else {
+            writeByte(majorType | 27);
+            writeFixed(length, 8);
+        }
+    }
+
+    private void writeFixed(long value, int bytes) throws IOException {
+        if (buffer.length - position < bytes)
+            drain();
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length)
+            drain();
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            drain();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
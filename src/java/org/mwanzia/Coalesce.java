@@ -0,0 +1,39 @@
+package org.mwanzia;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a remote method whose concurrent identical calls share a single
+ * invocation. While a call is in flight, further calls with an equal target
+ * and equal arguments (as they were sent, i.e. equal JSON) and the same fields
+ * don't invoke the method themselves but wait for the in-flight call, and get
+ * its response (its already serialized result, or its exception).
+ * </p>
+ *
+ * <p>
+ * By default, only calls made on behalf of the same user are coalesced (see
+ * Plugin.getPrincipal()). Plugins still get to authorize and validate every
+ * call, but a coalesced call skips the rest of the pipeline (replaceResult()
+ * and invocationSucceeded()), so only use this on methods without side
+ * effects.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.METHOD })
+public @interface Coalesce {
+    /**
+     * How long a call waits for the in-flight call, in milliseconds, before
+     * failing with a MwanziaException, or 0 to wait as long as it takes.
+     */
+    long timeout() default 30000;
+
+    /**
+     * Whether to only coalesce calls made on behalf of the same user. Only
+     * turn this off for methods whose results are the same for everybody.
+     */
+    boolean perPrincipal() default true;
+}
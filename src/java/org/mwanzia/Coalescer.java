@@ -0,0 +1,108 @@
+package org.mwanzia;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-flight invocations of an Application's @Coalesce remote methods, by
+ * the key of their call, along with the timer for the timeouts of the calls
+ * that wait for them.
+ */
+final class Coalescer {
+    private ScheduledExecutorService timeouts;
+    private boolean shutdown;
+
+    private final ConcurrentMap<Object, RemoteFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<Object, RemoteFuture<Map<String, Object>>>();
+
+    /**
+     * Join the in-flight invocation with the given key, or, if there is none,
+     * make the given invocation the one in flight until its result map is
+     * done.
+     *
+     * @param key
+     * @param resultMap
+     *            the result map of the invocation that wants to join
+     * @return the result map of the in-flight invocation to wait for, or null
+     *         if the given invocation is now in flight
+     */
+    RemoteFuture<Map<String, Object>> join(final Object key, final RemoteFuture<Map<String, Object>> resultMap) {
+        RemoteFuture<Map<String, Object>> existing = inFlight.putIfAbsent(key, resultMap);
+        if (existing != null)
+            return existing;
+        resultMap.onCompletion(new RemoteFuture.Callback<Map<String, Object>>() {
+            public void completed(Map<String, Object> result) {
+                inFlight.remove(key, resultMap);
+            }
+
+            public void failed(Throwable exception) {
+                inFlight.remove(key, resultMap);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Run the given task after the given delay, on a daemon thread that is
+     * started the first time it's needed.
+     *
+     * @return the scheduled task, to be cancelled if it's no longer needed, or
+     *         null if the Coalescer has been shut down
+     */
+    synchronized Timeout schedule(Runnable task, long delayMillis) {
+        if (shutdown)
+            return null;
+        if (timeouts == null) {
+            timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "mwanzia-coalesce-timeouts");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        Timeout timeout = new Timeout(task);
+        timeout.future = timeouts.schedule(timeout, delayMillis, TimeUnit.MILLISECONDS);
+        return timeout;
+    }
+
+    /**
+     * Stop the timer's thread (if it was started). Calls that are still
+     * waiting then wait without a timeout.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        if (timeouts != null)
+            timeouts.shutdownNow();
+    }
+
+    /**
+     * A scheduled task that lets go of the task once it's cancelled. Cancelled
+     * tasks stay in the timer's queue until they would have run, and this
+     * keeps them from holding on to the waiting call until then.
+     */
+    static final class Timeout implements Runnable {
+        private volatile Runnable task;
+        private volatile ScheduledFuture<?> future;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            Runnable current = task;
+            if (current != null)
+                current.run();
+        }
+
+        void cancel() {
+            task = null;
+            future.cancel(false);
+        }
+    }
+}
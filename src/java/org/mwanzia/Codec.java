@@ -0,0 +1,35 @@
+package org.mwanzia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * A wire format for calls and responses other than JSON text, see Codecs.
+ * JSON.writeJson() and JSON.readJson() work in terms of JSON tokens, so a
+ * Codec only has to translate those tokens to and from its format.
+ * </p>
+ */
+public interface Codec {
+    /**
+     * @return the media type of the format (e.g. "application/cbor"), which
+     *         clients send as the Content-Type of calls and ask for with the
+     *         Accept header
+     */
+    String getContentType();
+
+    /**
+     * @param out
+     * @return a JsonOutput that writes the format to the given stream
+     * @throws IOException
+     */
+    JsonOutput createOutput(OutputStream out) throws IOException;
+
+    /**
+     * @param in
+     * @return a JsonInput that reads the format from the given stream
+     * @throws IOException
+     */
+    JsonInput createInput(InputStream in) throws IOException;
+}
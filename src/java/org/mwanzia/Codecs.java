@@ -0,0 +1,109 @@
+package org.mwanzia;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Registry of the Codecs that the MwanziaServlet can use instead of JSON text,
+ * by media type. A call whose Content-Type is a registered media type is read
+ * with that Codec, and a response is written with the Codec that the client
+ * prefers according to its Accept header. JSON remains the default for
+ * clients that don't ask for anything else.
+ * </p>
+ *
+ * <p>
+ * CBOR (application/cbor, see CborCodec) is registered out of the box. Other
+ * Codecs are registered with register(), or by listing their classes in
+ * Mwanzia's "codecs" configuration. The registry is shared by all
+ * Applications in the JVM.
+ * </p>
+ */
+public final class Codecs {
+    private static final String JSON_TYPE = "application/json";
+    private static final Map<String, Codec> CODECS = new ConcurrentHashMap<String, Codec>();
+
+    static {
+        register(new CborCodec());
+    }
+
+    private Codecs() {
+    }
+
+    /**
+     * Register the given Codec, replacing any Codec registered for the same
+     * media type.
+     *
+     * @param codec
+     */
+    public static void register(Codec codec) {
+        CODECS.put(mediaType(codec.getContentType()), codec);
+    }
+
+    /**
+     * @param contentType
+     *            a Content-Type header (parameters like charset are ignored),
+     *            or null
+     * @return the Codec registered for the given content type, or null if
+     *         there is none (e.g. for JSON)
+     */
+    public static Codec forContentType(String contentType) {
+        return contentType == null ? null : CODECS.get(mediaType(contentType));
+    }
+
+    /**
+     * The Codec to write the response with for a client that sent the given
+     * Accept header: the one with the highest quality. Of media ranges with
+     * the same quality, an explicit media type beats a wildcard (which stands
+     * for JSON), and otherwise the first one listed wins.
+     *
+     * @param accept
+     *            the header, or null
+     * @return the Codec, or null to write JSON
+     */
+    public static Codec negotiate(String accept) {
+        if (accept == null || CODECS.isEmpty())
+            return null;
+        Codec best = null;
+        double bestQuality = 0;
+        boolean bestExplicit = false;
+        for (String range : accept.split(",")) {
+            String mediaType = mediaType(range);
+            double quality = quality(range);
+            boolean explicit = !mediaType.endsWith("/*");
+            if (quality < bestQuality || (quality == bestQuality && (bestExplicit || !explicit)) || quality <= 0)
+                continue;
+            if (JSON_TYPE.equals(mediaType) || "*/*".equals(mediaType) || "application/*".equals(mediaType)) {
+                best = null;
+            } else {
+                Codec codec = CODECS.get(mediaType);
+                if (codec == null)
+                    continue;
+                best = codec;
+            }
+            bestQuality = quality;
+            bestExplicit = explicit;
+        }
+        return best;
+    }
+
+    private static String mediaType(String header) {
+        int parameters = header.indexOf(';');
+        return (parameters < 0 ? header : header.substring(0, parameters)).trim().toLowerCase();
+    }
+
+    private static double quality(String range) {
+        String[] parameters = range.split(";");
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException nfe) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
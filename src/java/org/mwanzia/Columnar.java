@@ -0,0 +1,31 @@
+package org.mwanzia;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a remote method whose collection results are sent in columns. If
+ * every element of the collection is an object of the same class, the result
+ * is written as that class and its property names (once), followed by one
+ * array of values per property:
+ * </p>
+ *
+ * <pre>
+ * {"@columns": "org.mwanzia.test.Account", "names": ["id", "name"],
+ *  "values": [[1, 2], ["Checking", "Savings"]]}
+ * </pre>
+ *
+ * <p>
+ * instead of repeating the class and every property name for each element.
+ * The JavaScript client turns this back into an array of objects. Other
+ * results (including empty collections and collections of mixed classes) are
+ * written as usual.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.METHOD })
+public @interface Columnar {
+}
@@ -0,0 +1,17 @@
+package org.mwanzia;
+
+/**
+ * The result of a Columnar remote method, which JSON.writeJson() writes in
+ * columns if it's a collection of objects of a single class.
+ */
+final class Columns {
+    private final Object value;
+
+    Columns(Object value) {
+        this.value = value;
+    }
+
+    Object getValue() {
+        return value;
+    }
+}
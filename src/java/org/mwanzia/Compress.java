@@ -0,0 +1,31 @@
+package org.mwanzia;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Overrides how responses of a remote method are compressed by the
+ * MwanziaServlet, which by default compresses responses larger than its
+ * "compressionThreshold" for clients that accept gzip or deflate. For example,
+ * use @Compress(false) for methods that return data that doesn't compress
+ * well, and @Compress(threshold = 0) for methods whose responses are always
+ * worth compressing.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.METHOD })
+public @interface Compress {
+    /**
+     * Whether to compress responses at all.
+     */
+    boolean value() default true;
+
+    /**
+     * The size in bytes above which responses are compressed, or -1 to use the
+     * servlet's threshold.
+     */
+    int threshold() default -1;
+}
@@ -0,0 +1,236 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>
+ * Streams a response to an HttpServletResponse, compressed with gzip or
+ * deflate once it turns out to be larger than a threshold. Up to the
+ * threshold, the response is buffered. If it's finished before reaching the
+ * threshold, it's sent as is, with its Content-Length. Otherwise, the
+ * Content-Encoding header is set and everything written from then on streams
+ * through the compressor, without ever holding the whole response in memory.
+ * </p>
+ *
+ * <p>
+ * The response has to be finished with finish(), which also records the
+ * compression ratio and the CPU time spent compressing in the remote method's
+ * MethodMetrics (if any). The compressor's native memory is released as soon
+ * as the response is finished, or by end() if writing the response failed.
+ * </p>
+ */
+public class CompressingOutputStream extends OutputStream {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final int BUFFER_SIZE = 8192;
+    // Magic number, deflate method, and no flags, mtime or extra flags, and
+    // an unknown OS (RFC 1952)
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final HttpServletResponse response;
+    private final String encoding;
+    private final int threshold;
+    private final MethodMetrics metrics;
+    private ByteArrayOutputStream buffer;
+    private Metrics.CountingOutputStream compressed;
+    private Deflater deflater;
+    private DeflaterOutputStream compressor;
+    // The checksum of the uncompressed data, for gzip's trailer
+    private CRC32 crc;
+    private long uncompressedBytes;
+    private long compressionNanos;
+    private boolean finished;
+
+    /**
+     * @param response
+     * @param encoding
+     *            "gzip" or "deflate", see negotiate()
+     * @param threshold
+     *            the size in bytes above which the response is compressed
+     * @param metrics
+     *            where to record the compression, or null
+     */
+    public CompressingOutputStream(HttpServletResponse response, String encoding, int threshold,
+            MethodMetrics metrics) {
+        this.response = response;
+        this.encoding = encoding;
+        this.threshold = threshold;
+        this.metrics = metrics;
+        this.buffer = new ByteArrayOutputStream(Math.min(threshold, BUFFER_SIZE) + 1);
+    }
+
+    /**
+     * The content encoding to use for a client that sent the given
+     * Accept-Encoding header, preferring gzip over deflate. A "*" only stands
+     * for the codings that the header doesn't list, so it doesn't override an
+     * explicit refusal such as "gzip;q=0".
+     *
+     * @param acceptEncoding
+     *            the header, or null
+     * @return "gzip", "deflate" or null if the client accepts neither
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return null;
+        // null for codings that aren't listed
+        Boolean gzip = null;
+        Boolean deflate = null;
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase();
+            boolean accepted = !isRefused(parameters);
+            if ("gzip".equals(name) || "x-gzip".equals(name))
+                gzip = accepted || Boolean.TRUE.equals(gzip);
+            else if ("deflate".equals(name))
+                deflate = accepted || Boolean.TRUE.equals(deflate);
+            else if ("*".equals(name))
+                any = accepted;
+        }
+        if (gzip != null ? gzip : any)
+            return "gzip";
+        if (deflate != null ? deflate : any)
+            return "deflate";
+        return null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (compressor == null) {
+            if (buffer.size() + len <= threshold) {
+                buffer.write(b, off, len);
+                return;
+            }
+            startCompressing();
+        }
+        compress(b, off, len);
+    }
+
+    /**
+     * Flushes the compressed data written so far (while the response is still
+     * being buffered, there's nothing to flush).
+     */
+    @Override
+    public void flush() throws IOException {
+        if (compressor != null)
+            compressor.flush();
+    }
+
+    /**
+     * Send whatever is left of the response, and record the compression.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        finished = true;
+        if (compressor == null) {
+            response.setContentLength(buffer.size());
+            buffer.writeTo(response.getOutputStream());
+            buffer = null;
+        } else {
+            try {
+                long start = cpuTime();
+                compressor.finish();
+                if (crc != null)
+                    writeGzipTrailer();
+                compressionNanos += cpuTime() - start;
+            } finally {
+                end();
+            }
+            if (metrics != null)
+                metrics.recordCompression(uncompressedBytes, compressed.getCount(), compressionNanos);
+        }
+        response.getOutputStream().flush();
+    }
+
+    /**
+     * Release the compressor without sending the rest of the response, for
+     * when writing the response failed. This does nothing if the response has
+     * been finished (or nothing has been compressed).
+     */
+    public void end() {
+        finished = true;
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void startCompressing() throws IOException {
+        response.setHeader("Content-Encoding", encoding);
+        compressed = new Metrics.CountingOutputStream(response.getOutputStream());
+        // gzip is raw deflate data with its own header and trailer, while
+        // HTTP's deflate is the zlib format
+        boolean gzip = "gzip".equals(encoding);
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        if (gzip) {
+            compressed.write(GZIP_HEADER);
+            crc = new CRC32();
+        }
+        compressor = new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE);
+        byte[] buffered = buffer.toByteArray();
+        buffer = null;
+        compress(buffered, 0, buffered.length);
+    }
+
+    private void compress(byte[] b, int off, int len) throws IOException {
+        long start = cpuTime();
+        compressor.write(b, off, len);
+        if (crc != null)
+            crc.update(b, off, len);
+        compressionNanos += cpuTime() - start;
+        uncompressedBytes += len;
+    }
+
+    /**
+     * Write the checksum and the size (modulo 2^32) of the uncompressed data,
+     * least significant byte first
+     */
+    private void writeGzipTrailer() throws IOException {
+        byte[] trailer = new byte[8];
+        long checksum = crc.getValue();
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (checksum >>> (i * 8));
+            trailer[i + 4] = (byte) (uncompressedBytes >>> (i * 8));
+        }
+        compressed.write(trailer, 0, trailer.length);
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private static boolean isRefused(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) <= 0;
+                } catch (NumberFormatException nfe) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,16 @@
+package org.mwanzia;
+
+/**
+ * <p>
+ * Converts values of one type to another, see Converters.
+ * </p>
+ */
+public interface Converter {
+    /**
+     * @param value
+     *            - never null
+     * @return the converted value
+     * @throws Exception
+     */
+    Object convert(Object value) throws Exception;
+}
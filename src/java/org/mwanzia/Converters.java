@@ -0,0 +1,261 @@
+package org.mwanzia;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Registry of the Converters used by SmallPropertyUtils.coerce(). Which
+ * conversion applies only depends on the class of the value and the target
+ * type, so the Converter for each (source, target) pair is resolved once and
+ * cached.
+ * </p>
+ * 
+ * <p>
+ * Custom converters (e.g. for money types) are registered for a source type
+ * (applying to its subtypes as well) and an exact target type, and take
+ * precedence over the built-in conversions. The registry is shared by all
+ * Applications in the JVM.
+ * </p>
+ */
+public final class Converters {
+    /**
+     * Returns values unchanged
+     */
+    public static final Converter NO_CONVERSION = new Converter() {
+        public Object convert(Object value) {
+            return value;
+        }
+    };
+
+    private static final List<Registration> REGISTRATIONS = new ArrayList<Registration>();
+    private static final Map<Class, Map<Class, Converter>> CACHE = new ConcurrentHashMap<Class, Map<Class, Converter>>();
+
+    private Converters() {
+    }
+
+    /**
+     * Register a custom converter from the given source type (and its
+     * subtypes) to the given target type.
+     * 
+     * @param sourceType
+     * @param targetType
+     * @param converter
+     */
+    public static synchronized void register(Class sourceType, Class targetType, Converter converter) {
+        REGISTRATIONS.add(0, new Registration(sourceType, targetType, converter));
+        CACHE.clear();
+    }
+
+    /**
+     * Get the converter from the given source class to the given target type.
+     * 
+     * @param sourceClass
+     * @param targetType
+     * @return
+     */
+    public static Converter forTypes(Class sourceClass, Class targetType) {
+        Map<Class, Converter> converters = CACHE.get(sourceClass);
+        if (converters == null) {
+            converters = new ConcurrentHashMap<Class, Converter>();
+            CACHE.put(sourceClass, converters);
+        }
+        Converter converter = converters.get(targetType);
+        if (converter == null) {
+            converter = resolve(sourceClass, targetType);
+            converters.put(targetType, converter);
+        }
+        return converter;
+    }
+
+    private static synchronized Converter resolve(Class sourceClass, Class targetType) {
+        for (Registration registration : REGISTRATIONS) {
+            if (registration.targetType == targetType && registration.sourceType.isAssignableFrom(sourceClass))
+                return registration.converter;
+        }
+        return builtIn(sourceClass, targetType);
+    }
+
+    /**
+     * The built-in conversions, in order of precedence.
+     */
+    private static Converter builtIn(Class sourceClass, Class targetType) {
+        if (sourceClass != targetType && Number.class.isAssignableFrom(targetType)) {
+            // Handle numeric conversions
+            if (BigDecimal.class == targetType)
+                return TO_BIG_DECIMAL;
+            if (BigInteger.class == targetType)
+                return TO_BIG_INTEGER;
+            if (Byte.class == targetType)
+                return TO_BYTE;
+            if (Double.class == targetType)
+                return TO_DOUBLE;
+            if (Float.class == targetType)
+                return TO_FLOAT;
+            if (Integer.class == targetType)
+                return TO_INTEGER;
+            if (Long.class == targetType)
+                return TO_LONG;
+            if (Short.class == targetType)
+                return TO_SHORT;
+            return TO_NUMBER;
+        }
+        if (Collection.class.isAssignableFrom(sourceClass)) {
+            // Handle collection conversions
+            if (SortedSet.class.isAssignableFrom(targetType))
+                return TO_SORTED_SET;
+            if (Set.class.isAssignableFrom(targetType))
+                return TO_SET;
+            return NO_CONVERSION;
+        }
+        if (String.class == sourceClass && targetType.isArray() && Character.TYPE == targetType.getComponentType())
+            return TO_CHAR_ARRAY;
+        if (char[].class == sourceClass && String.class.isAssignableFrom(targetType))
+            return FROM_CHAR_ARRAY;
+        if (targetType.isEnum() && String.class == sourceClass)
+            return new EnumConverter(targetType);
+        if (UUID.class.isAssignableFrom(targetType) && String.class == sourceClass)
+            return TO_UUID;
+        if (String.class.isAssignableFrom(targetType) && String.class != sourceClass)
+            return TO_STRING;
+        return NO_CONVERSION;
+    }
+
+    private static final Converter TO_BIG_DECIMAL = new Converter() {
+        public Object convert(Object value) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+    };
+
+    private static final Converter TO_BIG_INTEGER = new Converter() {
+        public Object convert(Object value) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        }
+    };
+
+    private static final Converter TO_BYTE = new Converter() {
+        public Object convert(Object value) {
+            return ((Number) value).byteValue();
+        }
+    };
+
+    private static final Converter TO_DOUBLE = new Converter() {
+        public Object convert(Object value) {
+            return ((Number) value).doubleValue();
+        }
+    };
+
+    private static final Converter TO_FLOAT = new Converter() {
+        public Object convert(Object value) {
+            return ((Number) value).floatValue();
+        }
+    };
+
+    private static final Converter TO_INTEGER = new Converter() {
+        public Object convert(Object value) {
+            return ((Number) value).intValue();
+        }
+    };
+
+    private static final Converter TO_LONG = new Converter() {
+        public Object convert(Object value) {
+            return ((Number) value).longValue();
+        }
+    };
+
+    private static final Converter TO_SHORT = new Converter() {
+        public Object convert(Object value) {
+            return ((Number) value).shortValue();
+        }
+    };
+
+    private static final Converter TO_NUMBER = new Converter() {
+        public Object convert(Object value) {
+            Number number = (Number) value;
+            return number;
+        }
+    };
+
+    private static final Converter TO_SORTED_SET = new Converter() {
+        public Object convert(Object value) {
+            return new TreeSet<Object>((Collection<?>) value);
+        }
+    };
+
+    private static final Converter TO_SET = new Converter() {
+        public Object convert(Object value) {
+            return new HashSet<Object>((Collection<?>) value);
+        }
+    };
+
+    private static final Converter TO_CHAR_ARRAY = new Converter() {
+        public Object convert(Object value) {
+            return ((String) value).toCharArray();
+        }
+    };
+
+    private static final Converter FROM_CHAR_ARRAY = new Converter() {
+        public Object convert(Object value) {
+            return String.valueOf((char[]) value);
+        }
+    };
+
+    private static final Converter TO_UUID = new Converter() {
+        public Object convert(Object value) {
+            return UUID.fromString((String) value);
+        }
+    };
+
+    private static final Converter TO_STRING = new Converter() {
+        public Object convert(Object value) {
+            return value.toString();
+        }
+    };
+
+    /**
+     * Looks up enum constants by name in a map built once per enum type.
+     */
+    private static class EnumConverter implements Converter {
+        private final Class enumType;
+        private final Map<String, Object> constants = new HashMap<String, Object>();
+
+        EnumConverter(Class enumType) {
+            this.enumType = enumType;
+            for (Object constant : enumType.getEnumConstants()) {
+                constants.put(((Enum) constant).name(), constant);
+            }
+        }
+
+        public Object convert(Object value) {
+            Object constant = constants.get(value);
+            if (constant == null)
+                throw new IllegalArgumentException(String.format("No enum constant %1$s.%2$s",
+                        enumType.getName(),
+                        value));
+            return constant;
+        }
+    }
+
+    private static class Registration {
+        private final Class sourceType;
+        private final Class targetType;
+        private final Converter converter;
+
+        Registration(Class sourceType, Class targetType, Converter converter) {
+            this.sourceType = sourceType;
+            this.targetType = targetType;
+            this.converter = converter;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.mwanzia;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +30,7 @@ public class DefaultMwanzia extends Mwanzia {
 		Application application = (Application) this.getClass().getClassLoader().loadClass(applicationName)
 					.newInstance();
 		this.applications.put(application.getName(), application);
+		configureApplication(application, config);
 		buildJavaScript();
 	}
 
@@ -52,6 +55,40 @@ public class DefaultMwanzia extends Mwanzia {
 		}
 	}
 
+	public RemoteFuture<Void> call(String applicationName, String targetClass, String methodName,
+			String callString, OutputStream out, Codec codec) throws Exception {
+		try {
+			return applications.get(applicationName).invoke(targetClass, methodName, callString, out, codec);
+		} catch (Exception e) {
+			LOGGER.error(String.format("Unable to make call to application %1s: %2$s", applicationName, e.getMessage()),
+					e);
+			throw e;
+		}
+	}
+
+	public RemoteFuture<Void> call(String applicationName, String targetClass, String methodName, InputStream in,
+			OutputStream out, Codec requestCodec, Codec responseCodec) throws Exception {
+		try {
+			return applications.get(applicationName).invoke(targetClass, methodName, in, out, requestCodec,
+					responseCodec);
+		} catch (Exception e) {
+			LOGGER.error(String.format("Unable to make call to application %1s: %2$s", applicationName, e.getMessage()),
+					e);
+			throw e;
+		}
+	}
+
+	public RemoteFuture<Void> callBatch(String applicationName, String batchString, OutputStream out,
+			Codec codec) throws Exception {
+		try {
+			return applications.get(applicationName).invokeBatch(batchString, out, codec);
+		} catch (Exception e) {
+			LOGGER.error(String.format("Unable to make call to application %1s: %2$s", applicationName, e.getMessage()),
+					e);
+			throw e;
+		}
+	}
+
 	private void buildJavaScript() throws ServletException {
 		LOGGER.info("Building Mwanzia JavaScript");
 		try {
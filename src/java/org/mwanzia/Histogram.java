@@ -0,0 +1,111 @@
+package org.mwanzia;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Lock-free histogram of non-negative long values (e.g. latencies in
+ * microseconds), in the style of HdrHistogram. Values are counted in buckets
+ * whose width grows with the magnitude of the values, so that every recorded
+ * value is known to within about 3% while the whole range up to 2^40 takes a
+ * fixed ~9KB. Larger values are counted as 2^40 - 1.
+ * </p>
+ * 
+ * <p>
+ * Recording a value is a handful of atomic operations and never blocks, so
+ * histograms can be updated by any number of threads. Reading is not atomic
+ * with respect to concurrent recording, which is fine for monitoring.
+ * </p>
+ */
+public final class Histogram {
+    // Values below 2^SUB_BUCKET_BITS are counted exactly, larger ones in
+    // HALF_SUB_BUCKET_COUNT buckets per power of 2
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_MAGNITUDE = 40;
+    public static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS)
+            * HALF_SUB_BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        else if (value > MAX_VALUE)
+            value = MAX_VALUE;
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = this.count.get();
+        return count > 0 ? (double) total.get() / count : 0;
+    }
+
+    /**
+     * The value below which the given percentage of the recorded values fall,
+     * reported as the highest value of the bucket that it's in (but never more
+     * than the maximum recorded value).
+     * 
+     * @param percentile
+     *            between 0 and 100, e.g. 99.9
+     * @return the value, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long recorded = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            recorded += counts.get(i);
+        }
+        if (recorded == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKET_COUNT + (magnitude - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT
+                + (int) (value >> shift) - HALF_SUB_BUCKET_COUNT;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+        int offset = bucket - SUB_BUCKET_COUNT;
+        int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,300 @@
+package org.mwanzia;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * Thread-safe codec for the ISO8601 dates exchanged with the client, in the
+ * form yyyy-MM-dd'T'HH:mm:ss.SSSZ (e.g. 2010-05-06T07:08:09.123+0000). This is
+ * the shape produced by the client's Date.prototype.toJSON and understood by
+ * its Date.prototype.setISO8601.
+ * </p>
+ * 
+ * <p>
+ * Dates are always formatted in UTC. Parsing accepts any offset (+hhmm,
+ * +hh:mm or Z) and any number of fractional second digits.
+ * </p>
+ * 
+ * <p>
+ * Besides java.util.Date, the codec handles the other temporal types of the
+ * JDK (java.sql.Date, java.sql.Time, java.sql.Timestamp and Calendar), which
+ * are all exchanged in the same form.
+ * </p>
+ */
+public final class ISO8601 {
+    /**
+     * Length of a formatted date
+     */
+    public static final int LENGTH = 28;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[LENGTH];
+        }
+    };
+
+    private ISO8601() {
+    }
+
+    /**
+     * Whether values of the given type are exchanged as ISO8601 dates.
+     * 
+     * @param type
+     * @return
+     */
+    public static boolean isTemporal(Class type) {
+        return Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type);
+    }
+
+    public static String format(Date date) {
+        return format(date.getTime());
+    }
+
+    /**
+     * Format the given temporal value (a Date or Calendar).
+     * 
+     * @param temporal
+     * @return
+     */
+    public static String format(Object temporal) {
+        return format(toMillis(temporal));
+    }
+
+    public static String format(long millis) {
+        char[] buffer = BUFFER.get();
+        if (format(millis, buffer, 0) < 0) {
+            // Outside of the 4 digit years that we can format ourselves
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+            format.setTimeZone(UTC);
+            return format.format(new Date(millis));
+        }
+        return new String(buffer, 0, LENGTH);
+    }
+
+    /**
+     * Format the given time into the given buffer, which must have room for
+     * LENGTH characters starting at offset.
+     * 
+     * @param millis
+     * @param buffer
+     * @param offset
+     * @return the number of characters written, or -1 if the year doesn't
+     *         have 4 digits
+     */
+    public static int format(long millis, char[] buffer, int offset) {
+        long days = millis / MILLIS_PER_DAY;
+        int millisOfDay = (int) (millis % MILLIS_PER_DAY);
+        if (millisOfDay < 0) {
+            days -= 1;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        // Civil date from days since the epoch (proleptic Gregorian)
+        long shifted = days + 719468;
+        long era = (shifted >= 0 ? shifted : shifted - 146096) / 146097;
+        int dayOfEra = (int) (shifted - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999)
+            return -1;
+
+        int i = offset;
+        i = digits(buffer, i, (int) year, 4);
+        buffer[i++] = '-';
+        i = digits(buffer, i, month, 2);
+        buffer[i++] = '-';
+        i = digits(buffer, i, day, 2);
+        buffer[i++] = 'T';
+        i = digits(buffer, i, millisOfDay / 3600000, 2);
+        buffer[i++] = ':';
+        i = digits(buffer, i, millisOfDay / 60000 % 60, 2);
+        buffer[i++] = ':';
+        i = digits(buffer, i, millisOfDay / 1000 % 60, 2);
+        buffer[i++] = '.';
+        i = digits(buffer, i, millisOfDay % 1000, 3);
+        buffer[i++] = '+';
+        buffer[i++] = '0';
+        buffer[i++] = '0';
+        buffer[i++] = '0';
+        buffer[i++] = '0';
+        return i - offset;
+    }
+
+    private static int digits(char[] buffer, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + count;
+    }
+
+    public static Date parse(String isoString) throws ParseException {
+        return new Date(parseMillis(isoString));
+    }
+
+    /**
+     * Parse the given ISO8601 string as an instance of the given temporal type.
+     * 
+     * @param <T>
+     * @param isoString
+     * @param type
+     *            - Date, Calendar or one of their subclasses
+     * @return
+     * @throws ParseException
+     */
+    public static <T> T parse(String isoString, Class<T> type) throws ParseException {
+        return toTemporal(parseMillis(isoString), type);
+    }
+
+    /**
+     * Parse the given ISO8601 string to milliseconds since the epoch.
+     * 
+     * @param isoString
+     * @return
+     * @throws ParseException
+     */
+    public static long parseMillis(String isoString) throws ParseException {
+        if (isoString == null)
+            throw new ParseException("No date given", 0);
+        int length = isoString.length();
+        if (length < 20)
+            throw new ParseException("Unparseable date: \"" + isoString + "\"", length);
+        int year = number(isoString, 0, 4);
+        expect(isoString, 4, '-');
+        int month = number(isoString, 5, 2);
+        expect(isoString, 7, '-');
+        int day = number(isoString, 8, 2);
+        expect(isoString, 10, 'T');
+        int hour = number(isoString, 11, 2);
+        expect(isoString, 13, ':');
+        int minute = number(isoString, 14, 2);
+        expect(isoString, 16, ':');
+        int second = number(isoString, 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60)
+            throw new ParseException("Unparseable date: \"" + isoString + "\"", 0);
+
+        int i = 19;
+        int millis = 0;
+        if (isoString.charAt(i) == '.') {
+            i += 1;
+            int scale = 100;
+            int start = i;
+            while (i < length && Character.isDigit(isoString.charAt(i))) {
+                millis += (isoString.charAt(i) - '0') * scale;
+                scale /= 10;
+                i += 1;
+            }
+            if (i == start)
+                throw new ParseException("Unparseable date: \"" + isoString + "\"", i);
+        }
+
+        if (i >= length)
+            throw new ParseException("Unparseable date: \"" + isoString + "\"", i);
+        int offsetMinutes = 0;
+        char sign = isoString.charAt(i);
+        if (sign == 'Z') {
+            i += 1;
+        } else if (sign == '+' || sign == '-') {
+            int offsetHours = number(isoString, i + 1, 2);
+            i += 3;
+            if (i < length && isoString.charAt(i) == ':')
+                i += 1;
+            offsetMinutes = offsetHours * 60 + number(isoString, i, 2);
+            i += 2;
+            if (sign == '-')
+                offsetMinutes = -offsetMinutes;
+        } else {
+            throw new ParseException("Unparseable date: \"" + isoString + "\"", i);
+        }
+        if (i != length)
+            throw new ParseException("Unparseable date: \"" + isoString + "\"", i);
+
+        // Days since the epoch from the civil date (proleptic Gregorian)
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return days * MILLIS_PER_DAY + ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000 + millis;
+    }
+
+    private static int number(String string, int offset, int count) throws ParseException {
+        if (offset + count > string.length())
+            throw new ParseException("Unparseable date: \"" + string + "\"", offset);
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9')
+                throw new ParseException("Unparseable date: \"" + string + "\"", i);
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void expect(String string, int offset, char expected) throws ParseException {
+        if (string.charAt(offset) != expected)
+            throw new ParseException("Unparseable date: \"" + string + "\"", offset);
+    }
+
+    /**
+     * Milliseconds since the epoch of the given Date or Calendar.
+     * 
+     * @param temporal
+     * @return
+     */
+    public static long toMillis(Object temporal) {
+        if (temporal instanceof Calendar)
+            return ((Calendar) temporal).getTimeInMillis();
+        return ((Date) temporal).getTime();
+    }
+
+    /**
+     * Build an instance of the given temporal type for the given time.
+     * 
+     * @param <T>
+     * @param millis
+     * @param type
+     * @return
+     */
+    public static <T> T toTemporal(long millis, Class<T> type) {
+        Object result;
+        if (Date.class == type) {
+            result = new Date(millis);
+        } else if (java.sql.Timestamp.class == type) {
+            result = new java.sql.Timestamp(millis);
+        } else if (java.sql.Date.class == type) {
+            result = new java.sql.Date(millis);
+        } else if (java.sql.Time.class == type) {
+            result = new java.sql.Time(millis);
+        } else if (Calendar.class.isAssignableFrom(type) && type.isAssignableFrom(Calendar.getInstance().getClass())) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(millis);
+            result = calendar;
+        } else {
+            try {
+                result = type.newInstance();
+                if (result instanceof Calendar)
+                    ((Calendar) result).setTimeInMillis(millis);
+                else
+                    ((Date) result).setTime(millis);
+            } catch (Exception e) {
+                throw new RuntimeException(String.format("Unable to build %1$s: %2$s", type.getName(), e
+                        .getMessage()), e);
+            }
+        }
+        return (T) result;
+    }
+}
@@ -10,13 +10,31 @@ import java.lang.reflect.Method;
  * 
  * <p>
  * Interceptors are used throughout the duration of a method invocation and are
- * discarded afterwards, so it is safe for them to store instance state.
+ * discarded afterwards, so it is safe for them to store instance state. State
+ * that is shared with other Interceptors or with the remote method belongs in
+ * the InvocationContext.
  * </p>
  * 
  * @author percy wegmann ( percy <at> karen and percy <dot> net )
  * 
  */
 public class Interceptor {
+    private InvocationContext context;
+
+    /**
+     * The context of the invocation that this Interceptor intercepts. It is
+     * available from beforeInvocation() onwards.
+     * 
+     * @return
+     */
+    public InvocationContext getContext() {
+        return context;
+    }
+
+    void setContext(InvocationContext context) {
+        this.context = context;
+    }
+
     /**
      * This callback fires before the Application starts processing the
      * invocation (at the very beginning).
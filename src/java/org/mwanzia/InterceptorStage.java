@@ -0,0 +1,56 @@
+package org.mwanzia;
+
+import java.lang.reflect.Method;
+
+/**
+ * Adapts the Interceptors of a Plugin that still overrides
+ * Plugin.buildInterceptor() to the pipeline. A new Interceptor is built for
+ * each invocation and kept in the invocation's context.
+ */
+class InterceptorStage extends InvocationStage {
+    private final Plugin plugin;
+    private final Class targetClass;
+    private final Method method;
+    private final InvocationContext.Key<Interceptor> interceptor;
+
+    InterceptorStage(Plugin plugin, RemoteMethod remoteMethod) {
+        this.plugin = plugin;
+        this.targetClass = remoteMethod.getTargetClass();
+        this.method = remoteMethod.getMethod();
+        this.interceptor = new InvocationContext.Key<Interceptor>(plugin.getClass().getName());
+    }
+
+    @Override
+    public void beforeInvocation(InvocationContext context) throws Exception {
+        Interceptor interceptor = plugin.buildInterceptor();
+        interceptor.setContext(context);
+        context.set(this.interceptor, interceptor);
+        interceptor.beforeInvocation(targetClass, method);
+    }
+
+    @Override
+    public <T> T replaceTarget(InvocationContext context, T target) throws Exception {
+        return context.get(interceptor).replaceTarget(target);
+    }
+
+    @Override
+    public Object[] prepareInvocation(InvocationContext context, Object target, Object[] arguments)
+            throws Exception {
+        return context.get(interceptor).prepareInvocation(target, method, arguments);
+    }
+
+    @Override
+    public Object replaceResult(InvocationContext context, Object result) throws Exception {
+        return context.get(interceptor).replaceResult(result);
+    }
+
+    @Override
+    public void invocationSucceeded(InvocationContext context, Object target, Object result) throws Exception {
+        context.get(interceptor).invocationSucceeded(target, result);
+    }
+
+    @Override
+    public Throwable invocationFailed(InvocationContext context, Throwable exception) throws Exception {
+        return context.get(interceptor).invocationFailed(exception);
+    }
+}
@@ -0,0 +1,259 @@
+package org.mwanzia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * State of a single remote invocation. The Application creates a context for
+ * each call (and one for each batch, which is the parent of the contexts of
+ * its calls) and closes it once the response has been written, at which point
+ * its close actions run and its attributes are discarded. Interceptors get
+ * the context of the invocation they intercept from getContext().
+ * </p>
+ * 
+ * <p>
+ * While the invocation is being processed, its context is also the current
+ * context of the processing thread, including on the threads that complete
+ * asynchronous invocations. To carry the context over to other threads, use
+ * wrap().
+ * </p>
+ * 
+ * <p>
+ * Attributes are identified by typed Keys, which are usually constants of the
+ * Plugin that uses them:
+ * </p>
+ * 
+ * <pre>
+ * private static final InvocationContext.Key&lt;EntityManager&gt; ENTITY_MANAGER = new InvocationContext.Key&lt;EntityManager&gt;(
+ *         &quot;entityManager&quot;);
+ * </pre>
+ */
+public final class InvocationContext {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvocationContext.class);
+    private static final ThreadLocal<InvocationContext> CURRENT = new ThreadLocal<InvocationContext>();
+
+    private final Application application;
+    private final InvocationContext parent;
+    private volatile RemoteMethod remoteMethod;
+    private final Map<Key, Object> attributes = new HashMap<Key, Object>();
+    private final List<Runnable> closeActions = new ArrayList<Runnable>();
+    private boolean closed;
+    private final Timings timings;
+    // Measured by the Application for its Metrics
+    volatile long requestBytes = -1;
+    volatile long responseBytes = -1;
+    volatile Throwable exception;
+    // The fields that the caller asked for, or null for all of them
+    volatile Projection projection;
+    // Whether this is the context of an atomic batch
+    volatile boolean atomic;
+
+    InvocationContext(Application application, InvocationContext parent) {
+        this.application = application;
+        this.parent = parent;
+        this.timings = new Timings(parent != null ? parent.timings : null);
+        if (parent != null) {
+            parent.onClose(new Runnable() {
+                public void run() {
+                    close();
+                }
+            });
+        }
+    }
+
+    /**
+     * The context of the invocation being processed by the current thread.
+     * 
+     * @return the context, or null if the thread isn't processing an
+     *         invocation
+     */
+    public static InvocationContext current() {
+        return CURRENT.get();
+    }
+
+    public Application getApplication() {
+        return application;
+    }
+
+    /**
+     * The context of the batch that this invocation is part of.
+     * 
+     * @return the batch's context, or null if this isn't part of a batch
+     */
+    public InvocationContext getParent() {
+        return parent;
+    }
+
+    /**
+     * @return the method being invoked, or null until it has been looked up
+     *         (and for batches)
+     */
+    public RemoteMethod getRemoteMethod() {
+        return remoteMethod;
+    }
+
+    /**
+     * How long the phases of this invocation took so far.
+     * 
+     * @return
+     */
+    public Timings getTimings() {
+        return timings;
+    }
+
+    void setRemoteMethod(RemoteMethod remoteMethod) {
+        this.remoteMethod = remoteMethod;
+    }
+
+    /**
+     * Get the value of the given attribute, falling back to the parent
+     * context.
+     * 
+     * @param <T>
+     * @param key
+     * @return the value, or null if it isn't set
+     */
+    public <T> T get(Key<T> key) {
+        synchronized (this) {
+            Object value = attributes.get(key);
+            if (value != null || parent == null)
+                return (T) value;
+        }
+        return parent.get(key);
+    }
+
+    public synchronized <T> void set(Key<T> key, T value) {
+        checkOpen();
+        attributes.put(key, value);
+    }
+
+    public synchronized <T> T remove(Key<T> key) {
+        return (T) attributes.remove(key);
+    }
+
+    /**
+     * Register an action to run when the invocation is over, whether it
+     * succeeded or not. Actions run in the reverse order of registration, and
+     * exceptions thrown by them are logged.
+     * 
+     * @param action
+     */
+    public synchronized void onClose(Runnable action) {
+        checkOpen();
+        closeActions.add(action);
+    }
+
+    /**
+     * Make this context the current context while running the given task, on
+     * whatever thread that happens.
+     * 
+     * @param task
+     * @return
+     */
+    public Runnable wrap(final Runnable task) {
+        return new Runnable() {
+            public void run() {
+                InvocationContext previous = attach();
+                try {
+                    task.run();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make this context the current context while calling the given task, on
+     * whatever thread that happens.
+     * 
+     * @param <T>
+     * @param task
+     * @return
+     */
+    public <T> Callable<T> wrap(final Callable<T> task) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                InvocationContext previous = attach();
+                try {
+                    return task.call();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make this the current thread's context.
+     * 
+     * @return the previous context, to be passed to detach()
+     */
+    InvocationContext attach() {
+        InvocationContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    void detach(InvocationContext previous) {
+        if (previous != null)
+            CURRENT.set(previous);
+        else
+            CURRENT.remove();
+    }
+
+    /**
+     * Run the close actions and discard the attributes. Closing a context more
+     * than once has no effect.
+     */
+    void close() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            actions = new ArrayList<Runnable>(closeActions);
+            closeActions.clear();
+        }
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            try {
+                actions.get(i).run();
+            } catch (Throwable t) {
+                LOGGER.error(String.format("Unable to close context of %1$s", remoteMethod), t);
+            }
+        }
+        synchronized (this) {
+            attributes.clear();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException(String.format("Context of %1$s is already closed", remoteMethod));
+    }
+
+    /**
+     * Identifies an attribute of type T. Keys are compared by identity.
+     * 
+     * @param <T>
+     */
+    public static final class Key<T> {
+        private final String name;
+
+        public Key(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.mwanzia;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Builds the Executors on which Applications process their invocations (see
+ * Application.setInvocationExecutor()), based on Mwanzia's configuration:
+ * </p>
+ * 
+ * <p>
+ * invocationExecutor - "pool" for a bounded pool of threads per Application,
+ * "virtual" for a virtual thread per invocation (this needs a Java 21 runtime,
+ * otherwise a pool is used). If not set, invocations are processed on the
+ * container's threads.
+ * </p>
+ * 
+ * <p>
+ * invocationThreads - the number of threads in a pool (default 32)
+ * </p>
+ * 
+ * <p>
+ * invocationQueue - the number of invocations that can wait for a thread of a
+ * pool (default 256). Once the queue is full, callers process their
+ * invocations themselves.
+ * </p>
+ */
+final class InvocationExecutors {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvocationExecutors.class);
+
+    private InvocationExecutors() {
+    }
+
+    /**
+     * @return the configured Executor for the named Application, or null if
+     *         invocations should be processed on the calling thread
+     */
+    static ExecutorService forConfig(Map<String, String> config, String applicationName) {
+        String type = config.get("invocationExecutor");
+        if (type == null || type.trim().length() == 0)
+            return null;
+        type = type.trim();
+        if ("virtual".equalsIgnoreCase(type)) {
+            ExecutorService virtual = virtual();
+            if (virtual != null)
+                return virtual;
+            LOGGER.warn("Virtual threads are not available, using a pool of threads for application {}",
+                    applicationName);
+        } else if (!"pool".equalsIgnoreCase(type)) {
+            throw new MwanziaError(String.format("Unknown invocationExecutor %1$s", type));
+        }
+        return pool(applicationName, intValue(config, "invocationThreads", 32), intValue(config,
+                "invocationQueue",
+                256));
+    }
+
+    /**
+     * A bounded pool of daemon threads named after the Application.
+     */
+    static ExecutorService pool(final String applicationName, int threads, int queue) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, String.format("mwanzia-%1$s-%2$s",
+                                applicationName,
+                                count.incrementAndGet()));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * A virtual thread per task, looked up reflectively since Mwanzia targets
+     * Java 6.
+     * 
+     * @return the Executor, or null if the runtime doesn't have virtual threads
+     */
+    static ExecutorService virtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int intValue(Map<String, String> config, String key, int defaultValue) {
+        String value = config.get(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
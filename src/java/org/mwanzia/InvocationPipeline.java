@@ -0,0 +1,105 @@
+package org.mwanzia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * The stages through which invocations of a particular remote method are
+ * processed, compiled once from the Application's Plugins. For each callback,
+ * the pipeline only holds the stages that actually override it, so Plugins
+ * that don't apply to a method (or to a callback) cost nothing per invocation.
+ * </p>
+ */
+final class InvocationPipeline {
+    private static final InvocationStage[] NO_STAGES = new InvocationStage[0];
+
+    private final InvocationStage[] starting;
+    // Stages that replace the target and/or prepare the invocation, which
+    // happens stage by stage for both callbacks together
+    final InvocationStage[] preparing;
+    private final InvocationStage[] replacingResult;
+    private final InvocationStage[] succeeding;
+    private final InvocationStage[] failing;
+
+    private InvocationPipeline(List<InvocationStage> stages) {
+        List<InvocationStage> starting = new ArrayList<InvocationStage>();
+        List<InvocationStage> preparing = new ArrayList<InvocationStage>();
+        List<InvocationStage> replacingResult = new ArrayList<InvocationStage>();
+        List<InvocationStage> succeeding = new ArrayList<InvocationStage>();
+        List<InvocationStage> failing = new ArrayList<InvocationStage>();
+        for (InvocationStage stage : stages) {
+            Class stageClass = stage.getClass();
+            if (overrides(stageClass, "beforeInvocation", InvocationContext.class))
+                starting.add(stage);
+            if (overrides(stageClass, "replaceTarget", InvocationContext.class, Object.class)
+                    || overrides(stageClass, "prepareInvocation", InvocationContext.class, Object.class,
+                            Object[].class))
+                preparing.add(stage);
+            if (overrides(stageClass, "replaceResult", InvocationContext.class, Object.class))
+                replacingResult.add(stage);
+            if (overrides(stageClass, "invocationSucceeded", InvocationContext.class, Object.class, Object.class))
+                succeeding.add(stage);
+            if (overrides(stageClass, "invocationFailed", InvocationContext.class, Throwable.class))
+                failing.add(stage);
+        }
+        this.starting = starting.toArray(NO_STAGES);
+        this.preparing = preparing.toArray(NO_STAGES);
+        this.replacingResult = replacingResult.toArray(NO_STAGES);
+        this.succeeding = succeeding.toArray(NO_STAGES);
+        this.failing = failing.toArray(NO_STAGES);
+    }
+
+    /**
+     * Compile the pipeline for the given remote method from the stages
+     * contributed by the given Plugins (in order). Plugins that still build
+     * Interceptors contribute them through an InterceptorStage.
+     */
+    static InvocationPipeline compile(RemoteMethod remoteMethod, List<Plugin> plugins) {
+        List<InvocationStage> stages = new ArrayList<InvocationStage>();
+        for (Plugin plugin : plugins) {
+            InvocationStage stage = plugin.buildStage(remoteMethod);
+            if (stage != null)
+                stages.add(stage);
+            if (overrides(plugin.getClass(), "buildInterceptor"))
+                stages.add(new InterceptorStage(plugin, remoteMethod));
+        }
+        return new InvocationPipeline(stages);
+    }
+
+    void beforeInvocation(InvocationContext context) throws Exception {
+        for (InvocationStage stage : starting) {
+            stage.beforeInvocation(context);
+        }
+    }
+
+    Object replaceResult(InvocationContext context, Object result) throws Exception {
+        for (InvocationStage stage : replacingResult) {
+            result = stage.replaceResult(context, result);
+        }
+        return result;
+    }
+
+    void invocationSucceeded(InvocationContext context, Object target, Object result) throws Exception {
+        for (InvocationStage stage : succeeding) {
+            stage.invocationSucceeded(context, target, result);
+        }
+    }
+
+    Throwable invocationFailed(InvocationContext context, Throwable exception) throws Exception {
+        for (InvocationStage stage : failing) {
+            exception = stage.invocationFailed(context, exception);
+        }
+        return exception;
+    }
+
+    private static boolean overrides(Class clazz, String methodName, Class... parameterTypes) {
+        try {
+            Class declaringClass = clazz.getMethod(methodName, parameterTypes).getDeclaringClass();
+            return declaringClass != InvocationStage.class && declaringClass != Plugin.class;
+        } catch (NoSuchMethodException nsme) {
+            throw new MwanziaError(String.format("Unable to find method %1$s on %2$s", methodName, clazz.getName()),
+                    nsme);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.mwanzia;
+
+/**
+ * The future response of an invocation (or batch), which also gives the
+ * MwanziaServlet access to the invocation's Timings.
+ */
+final class InvocationResponse extends RemoteFuture<Void> {
+    private final Timings timings;
+
+    InvocationResponse(Timings timings) {
+        this.timings = timings;
+    }
+
+    Timings getTimings() {
+        return timings;
+    }
+}
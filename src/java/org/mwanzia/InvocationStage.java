@@ -0,0 +1,104 @@
+package org.mwanzia;
+
+/**
+ * <p>
+ * A stage of the pipeline through which invocations of a particular remote
+ * method are processed. The default implementation does not affect the
+ * invocation at all.
+ * </p>
+ * 
+ * <p>
+ * Stages are built once per remote method (see Plugin.buildStage()) and are
+ * shared by all invocations of that method, so unlike Interceptors they must
+ * not store per-invocation state in instance fields. Per-invocation state
+ * belongs in the InvocationContext that is passed to every callback.
+ * </p>
+ * 
+ * <p>
+ * Only the callbacks that a stage overrides are called, so a stage that only
+ * cares about, say, prepareInvocation() costs nothing for the rest of the
+ * invocation.
+ * </p>
+ */
+public class InvocationStage {
+    /**
+     * This callback fires before the Application starts processing the
+     * invocation (at the very beginning).
+     * 
+     * @param context
+     * @throws Exception
+     */
+    public void beforeInvocation(InvocationContext context) throws Exception {
+    }
+
+    /**
+     * This callback fires before the remote method is invoked on the target and
+     * allows the stage to substitute another object for the target. This
+     * callback does not fire for static method invocations, as there is no
+     * target object.
+     * 
+     * @param context
+     * @param target
+     * @return
+     * @throws Exception
+     */
+    public <T> T replaceTarget(InvocationContext context, T target) throws Exception {
+        return target;
+    }
+
+    /**
+     * This callback fires before the remote method is invoked and allows the
+     * stage to replace the arguments to the method. This callback should return
+     * the same number of arguments as were supplied.
+     * 
+     * @param context
+     * @param target
+     * @param arguments
+     * @return
+     * @throws Exception
+     */
+    public Object[] prepareInvocation(InvocationContext context, Object target, Object[] arguments)
+            throws Exception {
+        return arguments;
+    }
+
+    /**
+     * This callback fires after the remote method has been successfully invoked
+     * and allows the stage to replace the method's return value with a
+     * different object.
+     * 
+     * @param context
+     * @param result
+     * @return
+     * @throws Exception
+     */
+    public Object replaceResult(InvocationContext context, Object result) throws Exception {
+        return result;
+    }
+
+    /**
+     * This callback fires after the remote method has been invoked, if and only
+     * if the method invocation did not throw an exception.
+     * 
+     * @param context
+     * @param target
+     * @param result
+     * @throws Exception
+     */
+    public void invocationSucceeded(InvocationContext context, Object target, Object result) throws Exception {
+    }
+
+    /**
+     * This callback fires after the remote method has been invoked, if and only
+     * if the method invocation threw an exception.
+     * 
+     * @param context
+     * @param exception
+     *            the exception thrown by the method invocation
+     * @return
+     * @throws Exception
+     */
+    public Throwable invocationFailed(InvocationContext context, Throwable exception) throws Exception {
+        return exception;
+    }
+}
@@ -0,0 +1,26 @@
+package org.mwanzia;
+
+/**
+ * <p>
+ * Calls a specific remote method. Invokers are stateless and are shared by all
+ * invocations of their method.
+ * </p>
+ * 
+ * <p>
+ * Unlike Method.invoke(), an Invoker throws whatever the method itself threw
+ * instead of wrapping it in an InvocationTargetException.
+ * </p>
+ */
+public interface Invoker {
+    /**
+     * Invoke the method.
+     * 
+     * @param target
+     *            the object on which to invoke the method (null for static
+     *            methods)
+     * @param arguments
+     * @return the method's result (boxed if primitive, null if void)
+     * @throws Throwable
+     */
+    Object invoke(Object target, Object[] arguments) throws Throwable;
+}
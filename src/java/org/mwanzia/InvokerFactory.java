@@ -0,0 +1,129 @@
+package org.mwanzia;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Builds Invokers for remote methods. Where possible, the Invoker is a
+ * generated class that calls the method directly (so that the JIT can inline
+ * through to the domain method). If generation isn't possible, for example
+ * because Javassist isn't on the classpath, the Invoker falls back to
+ * reflection.
+ * </p>
+ */
+public class InvokerFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvokerFactory.class);
+
+    // Invokers are stateless, so they can be shared across Applications
+    private static final Map<Method, Invoker> INVOKER_CACHE = new ConcurrentHashMap<Method, Invoker>();
+
+    /**
+     * Get the Invoker for the given method.
+     * 
+     * @param method
+     * @return
+     */
+    public static Invoker forMethod(Method method) {
+        Invoker invoker = INVOKER_CACHE.get(method);
+        if (invoker == null) {
+            try {
+                invoker = generate(method);
+            } catch (Throwable t) {
+                LOGGER.debug("Unable to generate invoker for {}, falling back to reflection: {}", method, t);
+                invoker = reflective(method);
+            }
+            INVOKER_CACHE.put(method, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * Build an Invoker that uses Method.invoke().
+     * 
+     * @param method
+     * @return
+     */
+    static Invoker reflective(Method method) {
+        return new ReflectiveInvoker(method);
+    }
+
+    /**
+     * Generate an Invoker that calls the method directly.
+     * 
+     * @param method
+     * @return
+     * @throws Exception
+     *             if the Invoker couldn't be generated
+     */
+    static Invoker generate(Method method) throws Exception {
+        Class declaringClass = method.getDeclaringClass();
+        Class[] parameterTypes = method.getParameterTypes();
+        // The generated class lives in the declaring class's package, so
+        // every type it mentions must be accessible from there
+        Bytecode.checkAccessible(declaringClass, declaringClass);
+        for (Class parameterType : parameterTypes) {
+            Bytecode.checkAccessible(parameterType, declaringClass);
+        }
+        // Reject the same arguments that Method.invoke() rejects, with the
+        // same IllegalArgumentException, instead of failing with a
+        // NullPointerException or ClassCastException while unboxing
+        StringBuilder checks = new StringBuilder();
+        if (parameterTypes.length == 0) {
+            checks.append("if (arguments != null && arguments.length != 0)");
+        } else {
+            checks.append("if (arguments == null || arguments.length != ").append(parameterTypes.length).append(")");
+        }
+        checks.append(" throw new IllegalArgumentException(\"wrong number of arguments\"); ");
+        StringBuilder call = new StringBuilder();
+        if (Modifier.isStatic(method.getModifiers())) {
+            call.append(Bytecode.sourceName(declaringClass));
+        } else {
+            checks.append("if (target != null && !").append(Bytecode.accepts(declaringClass, "target")).append(
+                    ") throw new IllegalArgumentException(\"object is not an instance of declaring class\"); ");
+            call.append(Bytecode.unbox(declaringClass, "target"));
+        }
+        call.append(".").append(method.getName()).append("(");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0)
+                call.append(", ");
+            call.append(Bytecode.unbox(parameterTypes[i], "arguments[" + i + "]"));
+            checks.append("if (!").append(Bytecode.accepts(parameterTypes[i], "arguments[" + i + "]")).append(
+                    ") throw new IllegalArgumentException(\"argument type mismatch\"); ");
+        }
+        call.append(")");
+        String body = checks.toString();
+        if (Void.TYPE == method.getReturnType()) {
+            body += call + "; return null;";
+        } else {
+            body += "return " + Bytecode.box(method.getReturnType(), call.toString()) + ";";
+        }
+        return Bytecode.generate(declaringClass,
+                "Invoker$$" + method.getName(),
+                Invoker.class,
+                "public Object invoke(Object target, Object[] arguments) throws Throwable { " + body + " }");
+    }
+
+    private static class ReflectiveInvoker implements Invoker {
+        private final Method method;
+
+        ReflectiveInvoker(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] arguments) throws Throwable {
+            try {
+                return method.invoke(target, arguments);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+    }
+}
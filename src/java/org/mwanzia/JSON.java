@@ -1,16 +1,18 @@
 package org.mwanzia;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Modifier;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.mwanzia.JsonInput.Token;
 import org.mwanzia.SmallPropertyUtils.Property;
 
 /**
@@ -24,16 +26,37 @@ import org.mwanzia.SmallPropertyUtils.Property;
  */
 public class JSON {
     public static final String MWANZIA_TYPE = "@class";
+    /**
+     * Marks a collection written in columns, see Columnar
+     */
+    public static final String MWANZIA_COLUMNS = "@columns";
+    /**
+     * @deprecated SimpleDateFormat isn't thread-safe, use ISO8601 instead
+     */
+    @Deprecated
     public static final SimpleDateFormat ISO8601_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-    private static final List<SerializationModifier> SERIALIZATION_MODIFIERS = new ArrayList<SerializationModifier>();
-    private static final List<DeserializationModifier> DESERIALIZATION_MODIFIERS = new ArrayList<DeserializationModifier>();
-
+    /**
+     * Register a modifier that applies to all values in all Applications.
+     * 
+     * @deprecated modifiers see every single value this way, register them
+     *             for the types they apply to on the Application's
+     *             ModifierRegistry instead
+     */
+    @Deprecated
     public static void addSerializationModifier(SerializationModifier modifier) {
-        SERIALIZATION_MODIFIERS.add(modifier);
+        ModifierRegistry.GLOBAL.addSerializationModifier(Object.class, modifier);
     }
 
+    /**
+     * Register a modifier that applies to all values in all Applications.
+     * 
+     * @deprecated modifiers see every single value this way, register them
+     *             for the types they apply to on the Application's
+     *             ModifierRegistry instead
+     */
+    @Deprecated
     public static void addDeserializationModifier(DeserializationModifier modifier) {
-        DESERIALIZATION_MODIFIERS.add(modifier);
+        ModifierRegistry.GLOBAL.addDeserializationModifier(Object.class, modifier);
     }
 
     /**
@@ -62,6 +85,20 @@ public class JSON {
      * @return
      */
     public static <T> T fromJson(Object json, Class clazz) {
+        return (T) fromJson(json, clazz, ModifierRegistry.GLOBAL);
+    }
+
+    /**
+     * Convert the given json to a strongly typed object, applying the given
+     * modifiers.
+     * 
+     * @param <T>
+     * @param json
+     * @param clazz
+     * @param modifiers
+     * @return
+     */
+    public static <T> T fromJson(Object json, Class clazz, ModifierRegistry modifiers) {
         if (json == null)
             return null;
         Object result = null;
@@ -80,14 +117,14 @@ public class JSON {
                     // Treat it like a map
                     Map<String, Object> map = new HashMap<String, Object>();
                     for (Map.Entry<String, Object> entry : in.entrySet()) {
-                        map.put(entry.getKey(), fromJson(entry.getValue(), null));
+                        map.put(entry.getKey(), fromJson(entry.getValue(), null, modifiers));
                     }
                     result = map;
-                } else if (Date.class.isAssignableFrom(clazz)) {
+                } else if (ISO8601.isTemporal(clazz)) {
                     // This is a date - grab the isoString property and parse it
                     String isoString = (String) in.get("isoString");
                     try {
-                        result = ISO8601_DATE_FORMAT.parseObject(isoString);
+                        result = ISO8601.parse(isoString, clazz);
                     } catch (ParseException pe) {
                         throw new RuntimeException(String.format("Unable to parse ISO8601 date %1$s: %2$s",
                                 isoString,
@@ -101,7 +138,9 @@ public class JSON {
                     for (Map.Entry<String, Object> entry : in.entrySet()) {
                         Property property = properties.get(entry.getKey());
                         if (property != null && property.isWriteable()) {
-                            property.write(result, fromJson(entry.getValue(), property.getPropertyType()));
+                            property.write(result, fromJson(entry.getValue(),
+                                    property.getPropertyType(),
+                                    modifiers));
                         }
                     }
                 }
@@ -117,7 +156,7 @@ public class JSON {
                 // Treat the array as a List
                 List<Object> out = new ArrayList<Object>();
                 for (int i = 0; i < in.length; i++) {
-                    out.add(fromJson(in[i], null));
+                    out.add(fromJson(in[i], null, modifiers));
                 }
                 result = out;
             } else {
@@ -127,7 +166,7 @@ public class JSON {
                     componentType = clazz.getComponentType();
                 Object[] out = (Object[]) Array.newInstance(componentType, in.length);
                 for (int i = 0; i < in.length; i++) {
-                    out[i] = fromJson(in[i], null);
+                    out[i] = fromJson(in[i], null, modifiers);
                 }
                 result = out;
             }
@@ -138,7 +177,7 @@ public class JSON {
                 // Treat the list as a list
                 List<Object> out = new ArrayList<Object>();
                 for (Object item : in) {
-                    out.add(fromJson(item, null));
+                    out.add(fromJson(item, null, modifiers));
                 }
                 result = out;
             } else {
@@ -149,7 +188,7 @@ public class JSON {
                 Object[] out = (Object[]) Array.newInstance(componentType, in.size());
                 int i = 0;
                 for (Object item : in) {
-                    out[i] = fromJson(item, componentType);
+                    out[i] = fromJson(item, componentType, modifiers);
                     i += 1;
                 }
                 result = out;
@@ -160,7 +199,7 @@ public class JSON {
 
         // Allow plugins to modify results using DeserializationModifiers
         if (result != null) {
-            for (DeserializationModifier modifier : DESERIALIZATION_MODIFIERS) {
+            for (DeserializationModifier modifier : modifiers.getDeserializationModifiers(result.getClass())) {
                 try {
                     result = modifier.modify(result, json);
                 } catch (Exception e) {
@@ -176,6 +215,302 @@ public class JSON {
         return (T) result;
     }
 
+    /**
+     * Read the value at the input's current token as a strongly typed object.
+     * This follows the same rules as fromJson() but builds objects directly
+     * from the token stream, without first materializing the JSON as maps and
+     * lists.
+     * 
+     * <p>
+     * Objects whose type is known up front, either from clazz or from a leading
+     * "@class" field, are streamed. Objects of unknown type that don't start
+     * with "@class" are read into a map and handed to fromJson(). Since the
+     * JSON itself is never materialized, DeserializationModifiers see a map
+     * holding just the object's "@class" (if any) as the original value for
+     * objects, and null for arrays.
+     * </p>
+     * 
+     * @param <T>
+     * @param in
+     *            - the input, positioned at the first token of the value
+     * @param clazz
+     *            - the target class for the object being read (optional)
+     * @return
+     * @throws IOException
+     */
+    public static <T> T readJson(JsonInput in, Class clazz) throws IOException {
+        return (T) readJson(in, clazz, ModifierRegistry.GLOBAL);
+    }
+
+    /**
+     * Read the value at the input's current token as a strongly typed object,
+     * applying the given modifiers.
+     * 
+     * @param <T>
+     * @param in
+     * @param clazz
+     * @param modifiers
+     * @return
+     * @throws IOException
+     */
+    public static <T> T readJson(JsonInput in, Class clazz, ModifierRegistry modifiers) throws IOException {
+        Object result = null;
+        Object original = null;
+        switch (in.current()) {
+        case NULL:
+            return null;
+        case START_OBJECT:
+            Token token = in.next();
+            String className = null;
+            if (token == Token.FIELD_NAME && MWANZIA_TYPE.equals(in.getText())) {
+                in.next();
+                className = in.getText();
+                token = in.next();
+            }
+            if (className == null && (clazz == null || Object.class == clazz)) {
+                // We can't tell what this is until we've seen all of it
+                Map<String, Object> json = new LinkedHashMap<String, Object>();
+                readFields(in, json);
+                return (T) fromJson(json, clazz, modifiers);
+            }
+            original = className == null ? Collections.EMPTY_MAP : Collections.singletonMap(MWANZIA_TYPE, className);
+            try {
+                if (clazz == null || Object.class == clazz) {
+                    clazz = JSON.class.getClassLoader().loadClass(className);
+                }
+                if (Map.class.isAssignableFrom(clazz)) {
+                    // Treat it like a map
+                    Map<String, Object> map = new HashMap<String, Object>();
+                    if (className != null)
+                        map.put(MWANZIA_TYPE, className);
+                    for (; token == Token.FIELD_NAME; token = in.next()) {
+                        String name = in.getText();
+                        in.next();
+                        map.put(name, readJson(in, null, modifiers));
+                    }
+                    result = map;
+                } else if (ISO8601.isTemporal(clazz)) {
+                    // This is a date - grab the isoString property and parse it
+                    String isoString = null;
+                    for (; token == Token.FIELD_NAME; token = in.next()) {
+                        String name = in.getText();
+                        in.next();
+                        if ("isoString".equals(name))
+                            isoString = in.getText();
+                        else
+                            skipValue(in);
+                    }
+                    try {
+                        result = ISO8601.parse(isoString, clazz);
+                    } catch (ParseException pe) {
+                        throw new RuntimeException(String.format("Unable to parse ISO8601 date %1$s: %2$s",
+                                isoString,
+                                pe.getMessage()), pe);
+                    }
+                } else {
+                    // Otherwise treat as a normal class
+                    result = clazz.newInstance();
+                    Map<String, Property> properties = SmallPropertyUtils.getProperties(clazz);
+                    for (; token == Token.FIELD_NAME; token = in.next()) {
+                        Property property = properties.get(in.getText());
+                        in.next();
+                        if (property != null && property.isWriteable()) {
+                            property.write(result, readJson(in, property.getPropertyType(), modifiers));
+                        } else {
+                            skipValue(in);
+                        }
+                    }
+                }
+            } catch (IOException ioe) {
+                throw ioe;
+            } catch (Exception e) {
+                throw new RuntimeException(String.format("Unable to build class '%1$s' from json: %2$s",
+                        clazz,
+                        e.getMessage()), e);
+            }
+            break;
+        case START_ARRAY:
+            if (clazz != null && Collection.class.isAssignableFrom(clazz)) {
+                // Treat the array as a list
+                List<Object> out = new ArrayList<Object>();
+                while (in.next() != Token.END_ARRAY) {
+                    out.add(readJson(in, null, modifiers));
+                }
+                result = out;
+            } else {
+                // Treat the array as an array
+                Class componentType = clazz != null ? clazz.getComponentType() : null;
+                if (componentType == null)
+                    componentType = Object.class;
+                List<Object> items = new ArrayList<Object>();
+                while (in.next() != Token.END_ARRAY) {
+                    items.add(readJson(in, componentType, modifiers));
+                }
+                Object out = Array.newInstance(componentType, items.size());
+                for (int i = 0; i < items.size(); i++) {
+                    Array.set(out, i, items.get(i));
+                }
+                result = out;
+            }
+            break;
+        case STRING:
+            result = in.getText();
+            original = result;
+            break;
+        case NUMBER:
+            result = in.getNumber();
+            original = result;
+            break;
+        case TRUE:
+            result = original = Boolean.TRUE;
+            break;
+        case FALSE:
+            result = original = Boolean.FALSE;
+            break;
+        default:
+            throw new IOException("Unexpected JSON token " + in.current());
+        }
+
+        // Allow plugins to modify results using DeserializationModifiers
+        for (DeserializationModifier modifier : modifiers.getDeserializationModifiers(result.getClass())) {
+            try {
+                result = modifier.modify(result, original);
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        // Now coerce the result value to the target type
+        if (clazz != null) {
+            result = SmallPropertyUtils.coerce(result, clazz);
+        }
+        return (T) result;
+    }
+
+    /**
+     * Skip over the value at the input's current token, including all of its
+     * children.
+     * 
+     * @param in
+     * @throws IOException
+     */
+    public static void skipValue(JsonInput in) throws IOException {
+        int depth = 0;
+        Token token = in.current();
+        while (true) {
+            if (token == Token.START_OBJECT || token == Token.START_ARRAY)
+                depth += 1;
+            else if (token == Token.END_OBJECT || token == Token.END_ARRAY)
+                depth -= 1;
+            else if (token == Token.END)
+                throw new IOException("Unexpected end of JSON");
+            if (depth == 0)
+                return;
+            token = in.next();
+        }
+    }
+
+    /**
+     * Copy the value at the input's current token, including all of its
+     * children, to the given output (e.g. to transcode between Codecs),
+     * leaving the input at the value's last token.
+     *
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public static void copyValue(JsonInput in, JsonOutput out) throws IOException {
+        int depth = 0;
+        Token token = in.current();
+        while (true) {
+            switch (token) {
+            case START_OBJECT:
+                out.writeStartObject();
+                depth += 1;
+                break;
+            case START_ARRAY:
+                out.writeStartArray();
+                depth += 1;
+                break;
+            case END_OBJECT:
+                out.writeEndObject();
+                depth -= 1;
+                break;
+            case END_ARRAY:
+                out.writeEndArray();
+                depth -= 1;
+                break;
+            case FIELD_NAME:
+                out.writeFieldName(in.getText());
+                break;
+            case STRING:
+                out.writeString(in.getText());
+                break;
+            case NUMBER:
+                out.writeNumber(in.getNumber());
+                break;
+            case TRUE:
+                out.writeBoolean(true);
+                break;
+            case FALSE:
+                out.writeBoolean(false);
+                break;
+            case NULL:
+                out.writeNull();
+                break;
+            default:
+                throw new IOException("Unexpected end of JSON");
+            }
+            if (depth == 0)
+                return;
+            token = in.next();
+        }
+    }
+
+    /**
+     * Reads the remaining fields of the current object as plain JSON
+     * maps/lists/primitives, leaving the input at the object's END_OBJECT.
+     */
+    private static void readFields(JsonInput in, Map<String, Object> json) throws IOException {
+        for (Token token = in.current(); token == Token.FIELD_NAME; token = in.next()) {
+            String name = in.getText();
+            in.next();
+            json.put(name, readPlain(in));
+        }
+    }
+
+    /**
+     * Reads the value at the input's current token as plain JSON
+     * maps/lists/primitives.
+     */
+    static Object readPlain(JsonInput in) throws IOException {
+        switch (in.current()) {
+        case START_OBJECT:
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            in.next();
+            readFields(in, map);
+            return map;
+        case START_ARRAY:
+            List<Object> list = new ArrayList<Object>();
+            while (in.next() != Token.END_ARRAY) {
+                list.add(readPlain(in));
+            }
+            return list;
+        case STRING:
+            return in.getText();
+        case NUMBER:
+            return in.getNumber();
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case NULL:
+            return null;
+        default:
+            throw new IOException("Unexpected JSON token " + in.current());
+        }
+    }
+
     /**
      * Convert the given value to JSON.
      * 
@@ -185,7 +520,20 @@ public class JSON {
      * @return
      */
     public static Object toJson(Object value, boolean whitelist) {
-        return toJson(value, whitelist, new HashMap<String, Object>());
+        return toJson(value, whitelist, ModifierRegistry.GLOBAL);
+    }
+
+    /**
+     * Convert the given value to JSON, applying the given modifiers.
+     * 
+     * @param value
+     * @param whitelist
+     *            - whether or not to use property whitelisting
+     * @param modifiers
+     * @return
+     */
+    public static Object toJson(Object value, boolean whitelist, ModifierRegistry modifiers) {
+        return toJson(value, whitelist, modifiers, new HashMap<String, Object>());
     }
 
     /**
@@ -198,14 +546,15 @@ public class JSON {
      *            current pass of serialization
      * @return
      */
-    private static Object toJson(Object value, boolean whitelist, Map<String, Object> serializationContext) {
+    private static Object toJson(Object value, boolean whitelist, ModifierRegistry modifiers,
+            Map<String, Object> serializationContext) {
         if (value == null) {
             return null;
         }
         if (value instanceof Class) {
             return ((Class) value).getName();
         }
-        for (SerializationModifier modifier : SERIALIZATION_MODIFIERS) {
+        for (SerializationModifier modifier : modifiers.getSerializationModifiers(value.getClass())) {
             try {
                 value = modifier.modify(value, serializationContext);
             } catch (Exception e) {
@@ -213,50 +562,313 @@ public class JSON {
             }
         }
         Class<?> clazz = value.getClass();
-        if (clazz.isArray()) {
-            Object[] in = (Object[]) value;
-            Object[] result = (Object[]) Array.newInstance(clazz.getComponentType(), in.length);
-            for (int i = 0; i < in.length; i++) {
-                result[i] = toJson(in[i], whitelist, serializationContext);
-            }
-            return result;
-        } else if (value instanceof Collection) {
-            Collection in = (Collection) value;
-            List<Object> result = new ArrayList<Object>();
-            for (Object item : in) {
-                result.add(toJson(item, whitelist, serializationContext));
+        SerializationPlan plan = SerializationPlan.forClass(clazz, whitelist);
+        switch (plan.getKind()) {
+        case COLLECTION:
+            if (clazz.isArray()) {
+                Object[] in = (Object[]) value;
+                Object[] result = (Object[]) Array.newInstance(clazz.getComponentType(), in.length);
+                for (int i = 0; i < in.length; i++) {
+                    result[i] = toJson(in[i], whitelist, modifiers, serializationContext);
+                }
+                return result;
+            } else {
+                Collection in = (Collection) value;
+                List<Object> result = new ArrayList<Object>(in.size());
+                for (Object item : in) {
+                    result.add(toJson(item, whitelist, modifiers, serializationContext));
+                }
+                return result;
             }
-            return result;
-        } else if (Map.class.isAssignableFrom(clazz)) {
+        case MAP: {
             // Convert the map
-            Map<Object, Object> result = new HashMap<Object, Object>();
-            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
-                result.put(entry.getKey(), toJson(entry.getValue(), whitelist, serializationContext));
+            Map<Object, Object> in = (Map<Object, Object>) value;
+            Map<Object, Object> result = new HashMap<Object, Object>(in.size() * 4 / 3 + 1);
+            for (Map.Entry<Object, Object> entry : in.entrySet()) {
+                result.put(entry.getKey(), toJson(entry.getValue(), whitelist, modifiers, serializationContext));
             }
             return result;
-        } else if (Modifier.isFinal(clazz.getModifiers()) || Number.class.isAssignableFrom(clazz)) {
+        }
+        case SCALAR:
             // Just return the value as is
             return value;
-        } else {
+        case DATE: {
+            // Dates get special treatment
+            Map<String, Object> result = new HashMap<String, Object>(4);
+            result.put("@class", clazz);
+            result.put("isoString", ISO8601.format(value));
+            return result;
+        }
+        default: {
             // Treat this as an object
-            Map<String, Object> result = new HashMap<String, Object>();
+            Map<String, Object> result = new HashMap<String, Object>((plan.size() + 1) * 4 / 3 + 1);
             result.put("@class", clazz);
-            if (value instanceof Date) {
-                // Dates get special treatment
-                Date in = (Date) value;
-                result.put("isoString", ISO8601_DATE_FORMAT.format(in));
-            } else {
-                Map<String, Property> properties = SmallPropertyUtils.getProperties(clazz);
-                for (Map.Entry<String, Property> entry : properties.entrySet()) {
-                    Property property = entry.getValue();
+            for (int i = 0; i < plan.size(); i++) {
+                result.put(plan.getName(i), toJson(plan.read(value, i), whitelist, modifiers, serializationContext));
+            }
+            return result;
+        }
+        }
+    }
 
-                    boolean includeProperty = whitelist ? property.isJsonIncluded() : !property.isJsonExcluded();
-                    if (includeProperty) {
-                        result.put(entry.getKey(), toJson(property.read(value), whitelist, serializationContext));
-                    }
+    /**
+     * Write the given value as JSON directly to the given output. This follows
+     * the same rules as toJson() but makes a single pass over the object graph
+     * without building any intermediate maps or lists.
+     * 
+     * @param value
+     * @param whitelist
+     *            - whether or not to use property whitelisting
+     * @param out
+     * @throws IOException
+     */
+    public static void writeJson(Object value, boolean whitelist, JsonOutput out) throws IOException {
+        writeJson(value, whitelist, out, ModifierRegistry.GLOBAL);
+    }
+
+    /**
+     * Write the given value as JSON directly to the given output, applying the
+     * given modifiers.
+     * 
+     * @param value
+     * @param whitelist
+     *            - whether or not to use property whitelisting
+     * @param out
+     * @param modifiers
+     * @throws IOException
+     */
+    public static void writeJson(Object value, boolean whitelist, JsonOutput out, ModifierRegistry modifiers)
+            throws IOException {
+        writeJson(value, whitelist, out, modifiers, new HashMap<String, Object>(), null);
+    }
+
+    /**
+     * The projection limits which properties are written (and read); null
+     * means all of them.
+     */
+    private static void writeJson(Object value, boolean whitelist, JsonOutput out, ModifierRegistry modifiers,
+            Map<String, Object> serializationContext, Projection projection) throws IOException {
+        if (value == null) {
+            out.writeNull();
+            return;
+        }
+        if (value instanceof Class) {
+            out.writeString(((Class) value).getName());
+            return;
+        }
+        if (value instanceof RawJson) {
+            ((RawJson) value).writeTo(out);
+            return;
+        }
+        if (value instanceof Projected) {
+            Projected projected = (Projected) value;
+            writeJson(projected.getValue(), whitelist, out, modifiers, serializationContext,
+                    projected.getProjection());
+            return;
+        }
+        if (value instanceof Columns) {
+            writeColumns(((Columns) value).getValue(), whitelist, out, modifiers, serializationContext, projection);
+            return;
+        }
+        writeModified(modify(value, modifiers, serializationContext), whitelist, out, modifiers,
+                serializationContext, projection);
+    }
+
+    private static Object modify(Object value, ModifierRegistry modifiers, Map<String, Object> serializationContext) {
+        for (SerializationModifier modifier : modifiers.getSerializationModifiers(value.getClass())) {
+            try {
+                value = modifier.modify(value, serializationContext);
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Write the given value, to which the modifiers have already been
+     * applied.
+     */
+    private static void writeModified(Object value, boolean whitelist, JsonOutput out, ModifierRegistry modifiers,
+            Map<String, Object> serializationContext, Projection projection) throws IOException {
+        if (value == null) {
+            out.writeNull();
+            return;
+        }
+        Class<?> clazz = value.getClass();
+        SerializationPlan plan = SerializationPlan.forClass(clazz, whitelist);
+        switch (plan.getKind()) {
+        case COLLECTION:
+            out.writeStartArray();
+            if (clazz.isArray()) {
+                int length = Array.getLength(value);
+                for (int i = 0; i < length; i++) {
+                    writeJson(Array.get(value, i), whitelist, out, modifiers, serializationContext, projection);
+                }
+            } else {
+                for (Object item : (Collection) value) {
+                    writeJson(item, whitelist, out, modifiers, serializationContext, projection);
                 }
             }
-            return result;
+            out.writeEndArray();
+            break;
+        case MAP:
+            out.writeStartObject();
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                Projection valueProjection = projection != null ? projection.child(key) : null;
+                if (projection != null && valueProjection == null)
+                    continue;
+                out.writeFieldName(key);
+                writeJson(entry.getValue(), whitelist, out, modifiers, serializationContext, valueProjection);
+            }
+            out.writeEndObject();
+            break;
+        case SCALAR:
+            writeScalar(value, out);
+            break;
+        case DATE:
+            // Dates get special treatment
+            out.writeStartObject();
+            out.writeFieldName(MWANZIA_TYPE);
+            out.writeString(clazz.getName());
+            out.writeFieldName("isoString");
+            out.writeString(ISO8601.format(value));
+            out.writeEndObject();
+            break;
+        default:
+            // Treat this as an object
+            out.writeStartObject();
+            out.writeFieldName(MWANZIA_TYPE);
+            out.writeString(clazz.getName());
+            for (int i = 0; i < plan.size(); i++) {
+                // Properties outside of the projection aren't even read
+                Projection propertyProjection = projection != null ? projection.child(plan.getName(i)) : null;
+                if (projection != null && propertyProjection == null)
+                    continue;
+                out.writeFieldName(plan.getName(i));
+                writeProperty(plan.read(value, i), plan.getKind(i), whitelist, out, modifiers, serializationContext,
+                        propertyProjection);
+            }
+            out.writeEndObject();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Write the value of a property of the given kind. Like any other value, it
+     * goes through the modifiers, but values of SCALAR properties that the
+     * modifiers leave alone are written without looking up their plan.
+     */
+    private static void writeProperty(Object value, SerializationPlan.Kind kind, boolean whitelist,
+            JsonOutput out, ModifierRegistry modifiers, Map<String, Object> serializationContext,
+            Projection projection) throws IOException {
+        if (value == null) {
+            out.writeNull();
+        } else if (kind == SerializationPlan.Kind.SCALAR) {
+            Object modified = modify(value, modifiers, serializationContext);
+            if (modified == value)
+                writeScalar(value, out);
+            else
+                writeModified(modified, whitelist, out, modifiers, serializationContext, projection);
+        } else {
+            writeJson(value, whitelist, out, modifiers, serializationContext, projection);
+        }
+    }
+
+    /**
+     * Write the given collection in columns if all of its elements are beans
+     * of the same class (see Columnar), and as usual otherwise. The modifiers
+     * are applied to each element up front, and only once.
+     */
+    private static void writeColumns(Object value, boolean whitelist, JsonOutput out, ModifierRegistry modifiers,
+            Map<String, Object> serializationContext, Projection projection) throws IOException {
+        if (value == null) {
+            out.writeNull();
+            return;
+        }
+        value = modify(value, modifiers, serializationContext);
+        if (SerializationPlan.forClass(value.getClass(), whitelist).getKind() != SerializationPlan.Kind.COLLECTION) {
+            writeModified(value, whitelist, out, modifiers, serializationContext, projection);
+            return;
+        }
+        Object[] rows;
+        if (value instanceof Collection) {
+            rows = ((Collection) value).toArray();
+        } else {
+            rows = new Object[Array.getLength(value)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = Array.get(value, i);
+            }
+        }
+        // Every row is modified, as writeModified() expects, even once it is
+        // clear that they won't be written in columns
+        Class rowClass = null;
+        boolean uniform = rows.length > 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] == null) {
+                uniform = false;
+                continue;
+            }
+            rows[i] = modify(rows[i], modifiers, serializationContext);
+            if (rows[i] == null || (rowClass != null && rows[i].getClass() != rowClass))
+                uniform = false;
+            else
+                rowClass = rows[i].getClass();
+        }
+        SerializationPlan plan = uniform ? SerializationPlan.forClass(rowClass, whitelist) : null;
+        if (plan == null || plan.getKind() != SerializationPlan.Kind.BEAN || plan.size() == 0) {
+            // Not a single class of objects with properties, so write the
+            // (already modified) rows as usual
+            out.writeStartArray();
+            for (Object row : rows) {
+                writeModified(row, whitelist, out, modifiers, serializationContext, projection);
+            }
+            out.writeEndArray();
+            return;
+        }
+        // The columns within the projection, and their projections
+        int[] columns = new int[plan.size()];
+        Projection[] columnProjections = new Projection[plan.size()];
+        int columnCount = 0;
+        for (int i = 0; i < plan.size(); i++) {
+            Projection columnProjection = projection != null ? projection.child(plan.getName(i)) : null;
+            if (projection == null || columnProjection != null) {
+                columns[columnCount] = i;
+                columnProjections[columnCount++] = columnProjection;
+            }
+        }
+        out.writeStartObject();
+        out.writeFieldName(MWANZIA_COLUMNS);
+        out.writeString(rowClass.getName());
+        out.writeFieldName("names");
+        out.writeStartArray();
+        for (int c = 0; c < columnCount; c++) {
+            out.writeString(plan.getName(columns[c]));
+        }
+        out.writeEndArray();
+        out.writeFieldName("values");
+        out.writeStartArray();
+        for (int c = 0; c < columnCount; c++) {
+            int i = columns[c];
+            out.writeStartArray();
+            for (Object row : rows) {
+                writeProperty(plan.read(row, i), plan.getKind(i), whitelist, out, modifiers, serializationContext,
+                        columnProjections[c]);
+            }
+            out.writeEndArray();
+        }
+        out.writeEndArray();
+        out.writeEndObject();
+    }
+
+    private static void writeScalar(Object value, JsonOutput out) throws IOException {
+        if (value instanceof String)
+            out.writeString((String) value);
+        else if (value instanceof Number)
+            out.writeNumber((Number) value);
+        else if (value instanceof Boolean)
+            out.writeBoolean((Boolean) value);
+        else
+            out.writeValue(value);
+    }
+}
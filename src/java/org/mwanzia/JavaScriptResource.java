@@ -0,0 +1,147 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * The generated JavaScript for a particular base URL, encoded once and kept
+ * ready to be served: as UTF-8 bytes, and compressed with gzip and with
+ * deflate. Its version is a hash of its content, which is used both for
+ * ETags and for versioned URLs (see Mwanzia.getJavaScriptUrl()).
+ * </p>
+ */
+public final class JavaScriptResource {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * A representation of the JavaScript in a particular content encoding.
+     */
+    public static final class Variant {
+        private final String encoding;
+        private final byte[] bytes;
+        private final String etag;
+
+        private Variant(String encoding, byte[] bytes, String etag) {
+            this.encoding = encoding;
+            this.bytes = bytes;
+            this.etag = etag;
+        }
+
+        /**
+         * @return the content encoding, or null for the uncompressed bytes
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public int getLength() {
+            return bytes.length;
+        }
+
+        /**
+         * @return a strong ETag (including quotes) that is specific to this
+         *         encoding
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+    }
+
+    private final String version;
+    private final Variant identity;
+    private final Variant gzip;
+    private final Variant deflate;
+
+    public JavaScriptResource(String javaScript) throws IOException {
+        byte[] bytes = javaScript.getBytes(UTF8);
+        this.version = hash(bytes);
+        this.identity = new Variant(null, bytes, etag(null));
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length / 4);
+        GZIPOutputStream gzipOut = new GZIPOutputStream(gzipped);
+        gzipOut.write(bytes);
+        gzipOut.close();
+        this.gzip = new Variant("gzip", gzipped.toByteArray(), etag("gzip"));
+        // HTTP's deflate is the zlib format, which is what DeflaterOutputStream
+        // writes
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length / 4);
+        DeflaterOutputStream deflateOut = new DeflaterOutputStream(deflated);
+        deflateOut.write(bytes);
+        deflateOut.close();
+        this.deflate = new Variant("deflate", deflated.toByteArray(), etag("deflate"));
+    }
+
+    /**
+     * @return a hash of the JavaScript, as 16 hex digits
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * The variant to send to a client that sent the given Accept-Encoding
+     * header, preferring gzip over deflate over no compression. A "*" only
+     * stands for the codings that the header doesn't list, so it doesn't
+     * override an explicit refusal such as "gzip;q=0".
+     *
+     * @param acceptEncoding
+     *            the header, or null
+     * @return
+     */
+    public Variant select(String acceptEncoding) {
+        String encoding = CompressingOutputStream.negotiate(acceptEncoding);
+        return "gzip".equals(encoding) ? gzip : "deflate".equals(encoding) ? deflate : identity;
+    }
+
+    /**
+     * Whether the given If-None-Match header matches any of the variants, in
+     * which case the client's copy is still current. Since all variants have
+     * the same content, it doesn't matter which one the client has.
+     *
+     * @param ifNoneMatch
+     *            the header, or null
+     * @return
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // If-None-Match uses the weak comparison
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if ("*".equals(tag) || tag.equals(identity.etag) || tag.equals(gzip.etag) || tag.equals(deflate.etag))
+                return true;
+        }
+        return false;
+    }
+
+    private String etag(String encoding) {
+        return encoding == null ? String.format("\"%1$s\"", version) : String.format("\"%1$s-%2$s\"", version,
+                encoding);
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            char[] hex = new char[16];
+            for (int i = 0; i < hex.length / 2; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (Exception e) {
+            throw new MwanziaException(String.format("Unable to hash JavaScript: %1$s", e.getMessage()), e);
+        }
+    }
+}
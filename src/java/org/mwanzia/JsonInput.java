@@ -0,0 +1,45 @@
+package org.mwanzia;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * A streaming source of JSON tokens. JSON.readJson() pulls tokens from a
+ * JsonInput and builds strongly typed objects directly, without first
+ * materializing the JSON as maps and lists.
+ * </p>
+ */
+public interface JsonInput {
+    public static enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL,
+        /**
+         * No more input
+         */
+        END
+    }
+
+    /**
+     * Advance to the next token.
+     * 
+     * @return the new current token
+     * @throws IOException
+     */
+    Token next() throws IOException;
+
+    /**
+     * @return the current token (null before the first call to next())
+     */
+    Token current();
+
+    /**
+     * @return the field name for FIELD_NAME tokens, the value for STRING
+     *         tokens
+     */
+    String getText() throws IOException;
+
+    /**
+     * @return the value for NUMBER tokens, as an Integer, Long or BigInteger
+     *         for integral values and a Double otherwise
+     */
+    Number getNumber() throws IOException;
+}
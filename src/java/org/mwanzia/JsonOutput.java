@@ -0,0 +1,60 @@
+package org.mwanzia;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * A streaming sink for JSON tokens. JSON.writeJson() walks an object graph
+ * and emits its tokens straight into a JsonOutput, so that responses can be
+ * written without first building an intermediate tree or String.
+ * </p>
+ * 
+ * <p>
+ * Implementations are responsible for separators (commas and colons) and for
+ * escaping, and are used by a single thread at a time.
+ * </p>
+ */
+public interface JsonOutput {
+    void writeStartObject() throws IOException;
+
+    void writeEndObject() throws IOException;
+
+    void writeStartArray() throws IOException;
+
+    void writeEndArray() throws IOException;
+
+    void writeFieldName(String name) throws IOException;
+
+    void writeNull() throws IOException;
+
+    void writeString(String value) throws IOException;
+
+    void writeBoolean(boolean value) throws IOException;
+
+    void writeNumber(Number value) throws IOException;
+
+    /**
+     * Write a leaf value that isn't a String, Number or Boolean (for example
+     * an enum, a UUID or a Locale).
+     * 
+     * @param value
+     * @throws IOException
+     */
+    void writeValue(Object value) throws IOException;
+
+    /**
+     * Write a value that has already been serialized to JSON (for example a
+     * cached result) without parsing or escaping it.
+     * 
+     * @param json
+     * @throws IOException
+     */
+    void writeRawValue(String json) throws IOException;
+
+    /**
+     * Flush any buffered output to the underlying stream without closing it.
+     * 
+     * @throws IOException
+     */
+    void flush() throws IOException;
+}
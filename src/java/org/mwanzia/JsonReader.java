@@ -0,0 +1,252 @@
+package org.mwanzia;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * Default JsonInput that tokenizes UTF-8 encoded JSON text from an
+ * InputStream. It has no dependencies beyond the JDK.
+ * </p>
+ */
+public class JsonReader implements JsonInput {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Reader reader;
+    private int peeked = -2;
+    // For each open container, whether it is an object (true) or array (false)
+    private boolean[] inObject = new boolean[16];
+    private int depth = 0;
+    private boolean expectFieldName = false;
+    private Token current;
+    private String text;
+    private Number number;
+    private final StringBuilder buffer = new StringBuilder();
+
+    public JsonReader(InputStream in) {
+        this(new BufferedReader(new InputStreamReader(in, UTF8), 8192));
+    }
+
+    public JsonReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Token current() {
+        return current;
+    }
+
+    @Override
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public Number getNumber() {
+        return number;
+    }
+
+    @Override
+    public Token next() throws IOException {
+        text = null;
+        number = null;
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            if (depth == 0)
+                throw syntaxError("Unexpected ','");
+            expectFieldName = inObject[depth - 1];
+            c = nextNonWhitespace();
+        } else if (c == ':') {
+            c = nextNonWhitespace();
+        }
+        switch (c) {
+        case -1:
+            current = Token.END;
+            break;
+        case '{':
+            push(true);
+            current = Token.START_OBJECT;
+            break;
+        case '[':
+            push(false);
+            current = Token.START_ARRAY;
+            break;
+        case '}':
+            pop(true);
+            current = Token.END_OBJECT;
+            break;
+        case ']':
+            pop(false);
+            current = Token.END_ARRAY;
+            break;
+        case '"':
+            text = readString();
+            if (expectFieldName) {
+                expectFieldName = false;
+                current = Token.FIELD_NAME;
+            } else {
+                current = Token.STRING;
+            }
+            break;
+        case 't':
+            readLiteral("rue");
+            current = Token.TRUE;
+            break;
+        case 'f':
+            readLiteral("alse");
+            current = Token.FALSE;
+            break;
+        case 'n':
+            readLiteral("ull");
+            current = Token.NULL;
+            break;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                number = readNumber((char) c);
+                current = Token.NUMBER;
+            } else {
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+            }
+        }
+        return current;
+    }
+
+    private void push(boolean object) {
+        if (depth == inObject.length) {
+            boolean[] expanded = new boolean[depth * 2];
+            System.arraycopy(inObject, 0, expanded, 0, depth);
+            inObject = expanded;
+        }
+        inObject[depth] = object;
+        depth += 1;
+        expectFieldName = object;
+    }
+
+    private void pop(boolean object) throws IOException {
+        if (depth == 0 || inObject[depth - 1] != object)
+            throw syntaxError("Mismatched '" + (object ? '}' : ']') + "'");
+        depth -= 1;
+        expectFieldName = false;
+    }
+
+    private String readString() throws IOException {
+        buffer.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"')
+                break;
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                case 'b':
+                    buffer.append('\b');
+                    break;
+                case 'f':
+                    buffer.append('\f');
+                    break;
+                case 'n':
+                    buffer.append('\n');
+                    break;
+                case 'r':
+                    buffer.append('\r');
+                    break;
+                case 't':
+                    buffer.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0)
+                            throw syntaxError("Invalid unicode escape");
+                        code = (code << 4) | digit;
+                    }
+                    buffer.append((char) code);
+                    break;
+                case -1:
+                    throw syntaxError("Unterminated string");
+                default:
+                    // Covers \", \\ and \/
+                    buffer.append((char) c);
+                }
+            } else {
+                buffer.append((char) c);
+            }
+        }
+        return buffer.toString();
+    }
+
+    private Number readNumber(char first) throws IOException {
+        buffer.setLength(0);
+        buffer.append(first);
+        boolean integral = true;
+        while (true) {
+            int c = peek();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                buffer.append((char) read());
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+                buffer.append((char) read());
+            } else {
+                break;
+            }
+        }
+        String value = buffer.toString();
+        try {
+            if (!integral)
+                return Double.valueOf(value);
+            // Match Jackson: the smallest of Integer, Long and BigInteger
+            int length = value.length();
+            if (length < 10 || (length == 10 && value.charAt(0) != '-' && value.compareTo("2147483647") <= 0)
+                    || (length == 11 && value.charAt(0) == '-' && value.compareTo("-2147483648") <= 0))
+                return Integer.valueOf(value);
+            BigInteger big = new BigInteger(value);
+            if (big.bitLength() < 64)
+                return big.longValue();
+            return big;
+        } catch (NumberFormatException nfe) {
+            throw syntaxError("Invalid number " + value);
+        }
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i))
+                throw syntaxError("Invalid literal");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2)
+            peeked = reader.read();
+        return peeked;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Invalid JSON: " + message);
+    }
+}
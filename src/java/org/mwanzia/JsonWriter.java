@@ -0,0 +1,179 @@
+package org.mwanzia;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * Default JsonOutput that writes UTF-8 encoded JSON text to an OutputStream.
+ * It has no dependencies beyond the JDK.
+ * </p>
+ * 
+ * <p>
+ * Leaf values other than Strings, Numbers and Booleans are written as
+ * strings, using name() for enums and toString() for everything else.
+ * </p>
+ */
+public class JsonWriter implements JsonOutput {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer writer;
+    // For each open object/array, whether it has had a value written yet
+    private boolean[] hasValue = new boolean[16];
+    private int depth = 0;
+    private boolean afterFieldName = false;
+
+    public JsonWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, UTF8), 8192));
+    }
+
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        beforeValue();
+        writer.write('{');
+        push();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        depth -= 1;
+        writer.write('}');
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        beforeValue();
+        writer.write('[');
+        push();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        depth -= 1;
+        writer.write(']');
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        beforeValue();
+        writeQuoted(name);
+        writer.write(':');
+        afterFieldName = true;
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        beforeValue();
+        writer.write("null");
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        beforeValue();
+        writeQuoted(value);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        beforeValue();
+        writer.write(value ? "true" : "false");
+    }
+
+    @Override
+    public void writeNumber(Number value) throws IOException {
+        if ((value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))
+                || (value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite()))) {
+            // Not representable as JSON numbers
+            writeString(value.toString());
+        } else {
+            beforeValue();
+            writer.write(value.toString());
+        }
+    }
+
+    @Override
+    public void writeValue(Object value) throws IOException {
+        if (value == null)
+            writeNull();
+        else if (value instanceof Enum)
+            writeString(((Enum) value).name());
+        else
+            writeString(value.toString());
+    }
+
+    @Override
+    public void writeRawValue(String json) throws IOException {
+        beforeValue();
+        writer.write(json);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterFieldName) {
+            afterFieldName = false;
+        } else if (depth > 0) {
+            if (hasValue[depth - 1])
+                writer.write(',');
+            hasValue[depth - 1] = true;
+        }
+    }
+
+    private void push() {
+        if (depth == hasValue.length) {
+            boolean[] expanded = new boolean[depth * 2];
+            System.arraycopy(hasValue, 0, expanded, 0, depth);
+            hasValue = expanded;
+        }
+        hasValue[depth] = false;
+        depth += 1;
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        writer.write('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                writer.write(value, start, i - start);
+                start = i + 1;
+                switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    writer.write("\\u00");
+                    writer.write(HEX[c >> 4]);
+                    writer.write(HEX[c & 0xF]);
+                }
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+}
@@ -0,0 +1,280 @@
+package org.mwanzia;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.mwanzia.Timings.Phase;
+
+/**
+ * <p>
+ * Counters and histograms for the invocations of a single remote method of an
+ * Application, see Metrics.
+ * </p>
+ */
+public final class MethodMetrics implements MethodMetricsMXBean {
+    private final String application;
+    private final RemoteMethod remoteMethod;
+    private final Histogram latency = new Histogram();
+    private final Histogram requestBytes = new Histogram();
+    private final Histogram responseBytes = new Histogram();
+    private final AtomicLong exceptions = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> exceptionsByType = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+
+    MethodMetrics(String application, RemoteMethod remoteMethod) {
+        this.application = application;
+        this.remoteMethod = remoteMethod;
+    }
+
+    /**
+     * Record an invocation.
+     * 
+     * @param nanos
+     *            how long it took
+     * @param exception
+     *            the exception it returned, or null
+     * @param requestBytes
+     *            size of the call, or -1 if unknown
+     * @param responseBytes
+     *            size of the response, or -1 if unknown
+     * @param timings
+     *            how long its phases took
+     */
+    void record(long nanos, Throwable exception, long requestBytes, long responseBytes, Timings timings) {
+        latency.record(nanos / 1000);
+        for (Phase phase : Phase.values()) {
+            long phaseNanos = timings.getNanos(phase);
+            if (phaseNanos > 0)
+                this.phaseNanos.addAndGet(phase.ordinal(), phaseNanos);
+        }
+        if (exception != null) {
+            exceptions.incrementAndGet();
+            String type = exception.getClass().getName();
+            AtomicLong count = exceptionsByType.get(type);
+            if (count == null) {
+                AtomicLong newCount = new AtomicLong();
+                count = exceptionsByType.putIfAbsent(type, newCount);
+                if (count == null)
+                    count = newCount;
+            }
+            count.incrementAndGet();
+        }
+        if (requestBytes >= 0)
+            this.requestBytes.record(requestBytes);
+        if (responseBytes >= 0)
+            this.responseBytes.record(responseBytes);
+    }
+
+    /**
+     * Record a lookup in the ResultCache (only for @Cacheable methods).
+     * 
+     * @param hit
+     *            whether the result was cached
+     */
+    void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).incrementAndGet();
+    }
+
+    /**
+     * Record a call that waited for an identical call in flight (only for
+     * methods annotated with Coalesce).
+     */
+    void recordCoalesced() {
+        coalescedCalls.incrementAndGet();
+    }
+
+    /**
+     * Record a compressed response (see CompressingOutputStream).
+     * 
+     * @param uncompressedBytes
+     * @param compressedBytes
+     * @param cpuNanos
+     *            CPU time spent compressing
+     */
+    void recordCompression(long uncompressedBytes, long compressedBytes, long cpuNanos) {
+        compressedResponses.incrementAndGet();
+        this.uncompressedBytes.addAndGet(uncompressedBytes);
+        this.compressedBytes.addAndGet(compressedBytes);
+        compressionNanos.addAndGet(cpuNanos);
+    }
+
+    public RemoteMethod getRemoteMethod() {
+        return remoteMethod;
+    }
+
+    public Histogram getLatencyHistogram() {
+        return latency;
+    }
+
+    public Histogram getRequestBytesHistogram() {
+        return requestBytes;
+    }
+
+    public Histogram getResponseBytesHistogram() {
+        return responseBytes;
+    }
+
+    public String getApplication() {
+        return application;
+    }
+
+    public String getTargetClass() {
+        return remoteMethod.getTargetClass().getName();
+    }
+
+    public String getMethod() {
+        return remoteMethod.getName();
+    }
+
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    public long getExceptions() {
+        return exceptions.get();
+    }
+
+    public Map<String, Long> getExceptionsByType() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : exceptionsByType.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    public double getCompressionRatio() {
+        long compressed = compressedBytes.get();
+        return compressed > 0 ? (double) uncompressedBytes.get() / compressed : 0;
+    }
+
+    public double getMeanCompressionMicros() {
+        long responses = compressedResponses.get();
+        return responses > 0 ? compressionNanos.get() / 1000.0 / responses : 0;
+    }
+
+    public double getMeanLatency() {
+        return latency.getMean();
+    }
+
+    public long getLatencyP50() {
+        return latency.getValueAtPercentile(50);
+    }
+
+    public long getLatencyP99() {
+        return latency.getValueAtPercentile(99);
+    }
+
+    public long getLatencyP999() {
+        return latency.getValueAtPercentile(99.9);
+    }
+
+    public long getMaxLatency() {
+        return latency.getMax();
+    }
+
+    public Map<String, Double> getMeanPhaseLatencies() {
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        long calls = getCalls();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.getMetricName(), calls > 0 ? phaseNanos.get(phase.ordinal()) / 1000.0 / calls : 0);
+        }
+        return result;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.getTotal();
+    }
+
+    public double getMeanRequestBytes() {
+        return requestBytes.getMean();
+    }
+
+    public long getMaxRequestBytes() {
+        return requestBytes.getMax();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.getTotal();
+    }
+
+    public double getMeanResponseBytes() {
+        return responseBytes.getMean();
+    }
+
+    public long getMaxResponseBytes() {
+        return responseBytes.getMax();
+    }
+
+    /**
+     * These metrics as a JSON-friendly map.
+     * 
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("calls", getCalls());
+        map.put("exceptions", getExceptions());
+        map.put("exceptionsByType", getExceptionsByType());
+        if (remoteMethod.isAnnotationPresent(Cacheable.class)) {
+            map.put("cacheHits", getCacheHits());
+            map.put("cacheMisses", getCacheMisses());
+        }
+        if (remoteMethod.isAnnotationPresent(Coalesce.class))
+            map.put("coalescedCalls", getCoalescedCalls());
+        Map<String, Object> latencyMicros = new LinkedHashMap<String, Object>();
+        latencyMicros.put("mean", getMeanLatency());
+        latencyMicros.put("p50", getLatencyP50());
+        latencyMicros.put("p99", getLatencyP99());
+        latencyMicros.put("p999", getLatencyP999());
+        latencyMicros.put("max", getMaxLatency());
+        map.put("latencyMicros", latencyMicros);
+        map.put("meanPhaseMicros", getMeanPhaseLatencies());
+        map.put("requestBytes", sizes(requestBytes));
+        map.put("responseBytes", sizes(responseBytes));
+        if (getCompressedResponses() > 0) {
+            Map<String, Object> compression = new LinkedHashMap<String, Object>();
+            compression.put("responses", getCompressedResponses());
+            compression.put("ratio", getCompressionRatio());
+            compression.put("meanCpuMicros", getMeanCompressionMicros());
+            map.put("compression", compression);
+        }
+        return map;
+    }
+
+    private Map<String, Object> sizes(Histogram histogram) {
+        Map<String, Object> sizes = new LinkedHashMap<String, Object>();
+        sizes.put("total", histogram.getTotal());
+        sizes.put("mean", histogram.getMean());
+        sizes.put("p99", histogram.getValueAtPercentile(99));
+        sizes.put("max", histogram.getMax());
+        return sizes;
+    }
+}
@@ -0,0 +1,91 @@
+package org.mwanzia;
+
+import java.util.Map;
+
+/**
+ * JMX view of the MethodMetrics of a remote method. Latencies are in
+ * microseconds, from the moment the Application received the call until its
+ * response had been written.
+ */
+public interface MethodMetricsMXBean {
+    String getApplication();
+
+    String getTargetClass();
+
+    String getMethod();
+
+    long getCalls();
+
+    long getExceptions();
+
+    Map<String, Long> getExceptionsByType();
+
+    /**
+     * Calls answered from the ResultCache (always 0 for methods that aren't
+     * annotated with Cacheable).
+     * 
+     * @return
+     */
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * Calls that shared the invocation of an identical call in flight (always
+     * 0 for methods that aren't annotated with Coalesce).
+     * 
+     * @return
+     */
+    long getCoalescedCalls();
+
+    double getMeanLatency();
+
+    long getLatencyP50();
+
+    long getLatencyP99();
+
+    long getLatencyP999();
+
+    long getMaxLatency();
+
+    /**
+     * The mean time spent in each Timings.Phase, in microseconds.
+     * 
+     * @return
+     */
+    Map<String, Double> getMeanPhaseLatencies();
+
+    long getRequestBytes();
+
+    double getMeanRequestBytes();
+
+    long getMaxRequestBytes();
+
+    long getResponseBytes();
+
+    double getMeanResponseBytes();
+
+    long getMaxResponseBytes();
+
+    /**
+     * Responses that were compressed by the servlet (responseBytes are before
+     * compression).
+     * 
+     * @return
+     */
+    long getCompressedResponses();
+
+    /**
+     * Uncompressed over compressed size of all compressed responses.
+     * 
+     * @return
+     */
+    double getCompressionRatio();
+
+    /**
+     * The mean CPU time spent compressing a response, in microseconds.
+     * 
+     * @return
+     */
+    double getMeanCompressionMicros();
+}
@@ -0,0 +1,223 @@
+package org.mwanzia;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Per remote method instrumentation of an Application: call and exception
+ * counts, latency and request/response sizes (see MethodMetrics). Recording is
+ * lock-free and cheap enough to always be on.
+ * </p>
+ * 
+ * <p>
+ * Each remote method's MethodMetrics is registered as an MXBean named
+ * org.mwanzia:type=RemoteMethod,application=...,class=...,method=... when it
+ * is first invoked, unless JMX is disabled (e.g. on platforms that don't allow
+ * it).
+ * </p>
+ */
+public final class Metrics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+
+    private final String application;
+    private final ConcurrentMap<RemoteMethod, MethodMetrics> methods = new ConcurrentHashMap<RemoteMethod, MethodMetrics>();
+    private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+    private volatile boolean jmxEnabled = true;
+
+    Metrics(String application) {
+        this.application = application;
+    }
+
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * The metrics of the given remote method, created on first use.
+     * 
+     * @param remoteMethod
+     * @return
+     */
+    public MethodMetrics forMethod(RemoteMethod remoteMethod) {
+        MethodMetrics metrics = methods.get(remoteMethod);
+        if (metrics == null) {
+            MethodMetrics newMetrics = new MethodMetrics(application, remoteMethod);
+            metrics = methods.putIfAbsent(remoteMethod, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+                if (jmxEnabled)
+                    register(metrics);
+            }
+        }
+        return metrics;
+    }
+
+    public Collection<MethodMetrics> getMethods() {
+        return methods.values();
+    }
+
+    /**
+     * The metrics of all remote methods that have been invoked, keyed by
+     * class.method, as a JSON-friendly map.
+     * 
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new TreeMap<String, Object>();
+        for (MethodMetrics metrics : methods.values()) {
+            map.put(metrics.getRemoteMethod().toString(), metrics.toMap());
+        }
+        return map;
+    }
+
+    /**
+     * Unregister the MXBeans registered so far.
+     */
+    public void unregister() {
+        synchronized (registeredNames) {
+            for (ObjectName name : registeredNames) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                } catch (Exception e) {
+                    LOGGER.warn("Unable to unregister {}: {}", name, e.getMessage());
+                }
+            }
+            registeredNames.clear();
+        }
+    }
+
+    private void register(MethodMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(String.format("org.mwanzia:type=RemoteMethod,application=%1$s,class=%2$s,method=%3$s",
+                    quote(application),
+                    quote(metrics.getTargetClass()),
+                    quote(metrics.getMethod())));
+            synchronized (registeredNames) {
+                server.registerMBean(metrics, name);
+                registeredNames.add(name);
+            }
+        } catch (Throwable t) {
+            // Metrics are still collected, they just aren't available via JMX
+            LOGGER.warn("Unable to register metrics for {} with JMX: {}", metrics.getRemoteMethod(), t.getMessage());
+        }
+    }
+
+    private static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (",=:\"*?\n".indexOf(value.charAt(i)) >= 0)
+                return ObjectName.quote(value);
+        }
+        return value;
+    }
+
+    /**
+     * The number of bytes that the given String takes up in UTF-8.
+     */
+    static long utf8Length(String string) {
+        long length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Counts the bytes read from the underlying stream.
+     */
+    static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the bytes written to the underlying stream.
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
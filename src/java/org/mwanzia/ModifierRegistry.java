@@ -0,0 +1,195 @@
+package org.mwanzia;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mwanzia.JSON.DeserializationModifier;
+import org.mwanzia.JSON.SerializationModifier;
+
+/**
+ * <p>
+ * The SerializationModifiers and DeserializationModifiers in effect for an
+ * Application. Each modifier is registered for the values it applies to,
+ * either by type (the modifier sees instances of that type or its subtypes)
+ * or by class annotation (the modifier sees instances of classes annotated
+ * with it).
+ * </p>
+ * 
+ * <p>
+ * The chain of modifiers that applies to a class is resolved the first time
+ * a value of that class is seen and cached from then on, so values that no
+ * modifier is interested in (Strings, Longs and so on) don't pay for
+ * modifiers at all. The chain is resolved for the class of the value as it
+ * was before any modifier ran.
+ * </p>
+ * 
+ * <p>
+ * A registry inherits the modifiers of its parent, which come first in each
+ * chain. Application registries have the global registry (populated by the
+ * deprecated JSON.addSerializationModifier() and
+ * JSON.addDeserializationModifier()) as their parent.
+ * </p>
+ */
+public class ModifierRegistry {
+    /**
+     * JVM-wide modifiers, kept for compatibility with JSON's static
+     * registration methods
+     */
+    public static final ModifierRegistry GLOBAL = new ModifierRegistry(null);
+
+    private static final SerializationModifier[] NO_SERIALIZATION_MODIFIERS = new SerializationModifier[0];
+    private static final DeserializationModifier[] NO_DESERIALIZATION_MODIFIERS = new DeserializationModifier[0];
+
+    // Bumped on every registration, so that children notice changes to their
+    // parents
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private final ModifierRegistry parent;
+    private final List<Registration<SerializationModifier>> serializationModifiers = new ArrayList<Registration<SerializationModifier>>();
+    private final List<Registration<DeserializationModifier>> deserializationModifiers = new ArrayList<Registration<DeserializationModifier>>();
+    private final Map<Class, SerializationModifier[]> serializationChains = new ConcurrentHashMap<Class, SerializationModifier[]>();
+    private final Map<Class, DeserializationModifier[]> deserializationChains = new ConcurrentHashMap<Class, DeserializationModifier[]>();
+    private volatile int generation = -1;
+
+    public ModifierRegistry(ModifierRegistry parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Register a modifier for values of the given type (and its subtypes).
+     * 
+     * @param type
+     * @param modifier
+     */
+    public synchronized void addSerializationModifier(Class type, SerializationModifier modifier) {
+        serializationModifiers.add(new Registration<SerializationModifier>(type, null, modifier));
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Register a modifier for values whose class is annotated with the given
+     * annotation.
+     * 
+     * @param annotation
+     * @param modifier
+     */
+    public synchronized void addAnnotatedSerializationModifier(Class<? extends Annotation> annotation,
+            SerializationModifier modifier) {
+        serializationModifiers.add(new Registration<SerializationModifier>(null, annotation, modifier));
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Register a modifier for deserialized values of the given type (and its
+     * subtypes).
+     * 
+     * @param type
+     * @param modifier
+     */
+    public synchronized void addDeserializationModifier(Class type, DeserializationModifier modifier) {
+        deserializationModifiers.add(new Registration<DeserializationModifier>(type, null, modifier));
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Register a modifier for deserialized values whose class is annotated
+     * with the given annotation.
+     * 
+     * @param annotation
+     * @param modifier
+     */
+    public synchronized void addAnnotatedDeserializationModifier(Class<? extends Annotation> annotation,
+            DeserializationModifier modifier) {
+        deserializationModifiers.add(new Registration<DeserializationModifier>(null, annotation, modifier));
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * The SerializationModifiers that apply to values of the given class, in
+     * order.
+     * 
+     * @param clazz
+     * @return
+     */
+    public SerializationModifier[] getSerializationModifiers(Class clazz) {
+        checkGeneration();
+        SerializationModifier[] chain = serializationChains.get(clazz);
+        if (chain == null) {
+            List<SerializationModifier> modifiers = new ArrayList<SerializationModifier>();
+            collectSerializationModifiers(clazz, modifiers);
+            chain = modifiers.isEmpty() ? NO_SERIALIZATION_MODIFIERS : modifiers
+                    .toArray(new SerializationModifier[modifiers.size()]);
+            serializationChains.put(clazz, chain);
+        }
+        return chain;
+    }
+
+    /**
+     * The DeserializationModifiers that apply to deserialized values of the
+     * given class, in order.
+     * 
+     * @param clazz
+     * @return
+     */
+    public DeserializationModifier[] getDeserializationModifiers(Class clazz) {
+        checkGeneration();
+        DeserializationModifier[] chain = deserializationChains.get(clazz);
+        if (chain == null) {
+            List<DeserializationModifier> modifiers = new ArrayList<DeserializationModifier>();
+            collectDeserializationModifiers(clazz, modifiers);
+            chain = modifiers.isEmpty() ? NO_DESERIALIZATION_MODIFIERS : modifiers
+                    .toArray(new DeserializationModifier[modifiers.size()]);
+            deserializationChains.put(clazz, chain);
+        }
+        return chain;
+    }
+
+    private synchronized void collectSerializationModifiers(Class clazz, List<SerializationModifier> modifiers) {
+        if (parent != null)
+            parent.collectSerializationModifiers(clazz, modifiers);
+        for (Registration<SerializationModifier> registration : serializationModifiers) {
+            if (registration.appliesTo(clazz) && !modifiers.contains(registration.modifier))
+                modifiers.add(registration.modifier);
+        }
+    }
+
+    private synchronized void collectDeserializationModifiers(Class clazz, List<DeserializationModifier> modifiers) {
+        if (parent != null)
+            parent.collectDeserializationModifiers(clazz, modifiers);
+        for (Registration<DeserializationModifier> registration : deserializationModifiers) {
+            if (registration.appliesTo(clazz) && !modifiers.contains(registration.modifier))
+                modifiers.add(registration.modifier);
+        }
+    }
+
+    private void checkGeneration() {
+        int current = GENERATION.get();
+        if (generation != current) {
+            serializationChains.clear();
+            deserializationChains.clear();
+            generation = current;
+        }
+    }
+
+    private static class Registration<M> {
+        private final Class type;
+        private final Class<? extends Annotation> annotation;
+        private final M modifier;
+
+        Registration(Class type, Class<? extends Annotation> annotation, M modifier) {
+            this.type = type;
+            this.annotation = annotation;
+            this.modifier = modifier;
+        }
+
+        boolean appliesTo(Class clazz) {
+            if (type != null)
+                return type.isAssignableFrom(clazz);
+            return clazz.isAnnotationPresent(annotation);
+        }
+    }
+}
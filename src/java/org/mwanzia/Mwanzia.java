@@ -1,7 +1,15 @@
 package org.mwanzia;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.ServletException;
 
@@ -18,8 +26,19 @@ public class Mwanzia {
 	private static final Logger LOGGER = LoggerFactory.getLogger(Mwanzia.class);
 
 	private static String s_javascript;
+	// The most recently used base URLs, which come from requests
+	private static final int MAX_JAVASCRIPT_RESOURCES = 16;
 
 	private Map<String, Application> applications = new HashMap<String, Application>();
+	private List<ExecutorService> invocationExecutors = new ArrayList<ExecutorService>();
+	private Map<String, Application> configuredApplications = new TreeMap<String, Application>();
+	private final Map<String, JavaScriptResource> javaScriptResources = new LinkedHashMap<String, JavaScriptResource>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JavaScriptResource> eldest) {
+			return size() > MAX_JAVASCRIPT_RESOURCES;
+		}
+	};
 
 	public Mwanzia(Map<String, String> config) throws Exception {
 		this.init(config);
@@ -41,6 +60,35 @@ public class Mwanzia {
 		return js.toString();
 	}
 
+	/**
+	 * The JavaScript for the given base URL, ready to be served. It is only
+	 * generated the first time, unless the system property mwanzia.mode is
+	 * "dev".
+	 */
+	public JavaScriptResource getJavaScriptResource(String baseUrl) throws Exception {
+		boolean dev = "dev".equalsIgnoreCase(System.getProperty("mwanzia.mode"));
+		synchronized (javaScriptResources) {
+			JavaScriptResource resource = javaScriptResources.get(baseUrl);
+			if (resource != null && !dev)
+				return resource;
+		}
+		JavaScriptResource resource = new JavaScriptResource(getJavaScript(baseUrl));
+		synchronized (javaScriptResources) {
+			javaScriptResources.put(baseUrl, resource);
+		}
+		return resource;
+	}
+
+	/**
+	 * The versioned URL of the JavaScript served at the given base URL (the
+	 * absolute URL of the MwanziaServlet), which browsers can cache for good
+	 * because it changes whenever the JavaScript does. Pages can get at this
+	 * Mwanzia through the servlet context attribute named after this class.
+	 */
+	public String getJavaScriptUrl(String baseUrl) throws Exception {
+		return String.format("%1$s?v=%2$s", baseUrl, getJavaScriptResource(baseUrl).getVersion());
+	}
+
 	public String call(String applicationName, String targetClass, String methodName, String callString)
 			throws Exception {
 	    try {
@@ -51,15 +99,159 @@ public class Mwanzia {
         }
 	}
 
+	/**
+	 * Make a call and stream the JSON response to the given OutputStream. The
+	 * returned future is done once the response has been written, which for
+	 * asynchronous remote methods may be after this returns.
+	 */
+	public RemoteFuture<Void> call(String applicationName, String targetClass, String methodName,
+			String callString, OutputStream out) throws Exception {
+		return call(applicationName, targetClass, methodName, callString, out, null);
+	}
+
+	/**
+	 * Make a call and stream the response to the given OutputStream in the
+	 * format of the given Codec (JSON if it's null), see above.
+	 */
+	public RemoteFuture<Void> call(String applicationName, String targetClass, String methodName,
+			String callString, OutputStream out, Codec codec) throws Exception {
+		try {
+			return applications.get(applicationName).invoke(targetClass, methodName, callString, out, codec);
+		} catch (Exception e) {
+			LOGGER.error(String.format("Unable to call application %1$s : %2$s", applicationName, e.getMessage()), e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Make a call whose JSON is read from the given InputStream and stream the
+	 * JSON response to the given OutputStream, see above.
+	 */
+	public RemoteFuture<Void> call(String applicationName, String targetClass, String methodName, InputStream in,
+			OutputStream out) throws Exception {
+		return call(applicationName, targetClass, methodName, in, out, null, null);
+	}
+
+	/**
+	 * Make a call that is read from the given InputStream in the format of the
+	 * request Codec and stream the response in the format of the response
+	 * Codec to the given OutputStream (either Codec is null for JSON), see
+	 * above.
+	 */
+	public RemoteFuture<Void> call(String applicationName, String targetClass, String methodName, InputStream in,
+			OutputStream out, Codec requestCodec, Codec responseCodec) throws Exception {
+		try {
+			return applications.get(applicationName).invoke(targetClass, methodName, in, out, requestCodec,
+					responseCodec);
+		} catch (Exception e) {
+			LOGGER.error(String.format("Unable to call application %1$s : %2$s", applicationName, e.getMessage()), e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Make a batch of calls and stream the JSON response to the given
+	 * OutputStream, see Application.invokeBatch().
+	 */
+	public RemoteFuture<Void> callBatch(String applicationName, String batchString, OutputStream out)
+			throws Exception {
+		return callBatch(applicationName, batchString, out, null);
+	}
+
+	/**
+	 * Make a batch of calls and stream the response to the given OutputStream
+	 * in the format of the given Codec (JSON if it's null).
+	 */
+	public RemoteFuture<Void> callBatch(String applicationName, String batchString, OutputStream out,
+			Codec codec) throws Exception {
+		try {
+			return applications.get(applicationName).invokeBatch(batchString, out, codec);
+		} catch (Exception e) {
+			LOGGER.error(String.format("Unable to call application %1$s : %2$s", applicationName, e.getMessage()),
+					e);
+			throw e;
+		}
+	}
+
 	private void init(Map<String, String> config) throws Exception {
+		String codecs = config.get("codecs");
+		if (codecs != null) {
+			// Additional Codecs, as a comma-separated list of class names
+			for (String codecClass : codecs.split(",")) {
+				if (codecClass.trim().length() > 0)
+					Codecs.register((Codec) this.getClass().getClassLoader().loadClass(codecClass.trim())
+							.newInstance());
+			}
+		}
 		String applicationName = config.get("application");
 		// TODO: add support for multiple applications
 		Application application = (Application) this.getClass().getClassLoader().loadClass(applicationName)
 					.newInstance();
 		this.applications.put(application.getName(), application);
+		configureApplication(application, config);
 		buildJavaScript();
 	}
 
+	/**
+	 * Configure the given Application: its invocation Executor (see
+	 * InvocationExecutors for the options) and whether its Metrics are
+	 * registered with JMX ("metricsJmx", true by default).
+	 */
+	protected void configureApplication(Application application, Map<String, String> config) {
+		configuredApplications.put(application.getName(), application);
+		application.getMetrics().setJmxEnabled(!"false".equalsIgnoreCase(config.get("metricsJmx")));
+		ExecutorService invocationExecutor = InvocationExecutors.forConfig(config, application.getName());
+		if (invocationExecutor != null) {
+			invocationExecutors.add(invocationExecutor);
+			application.setInvocationExecutor(invocationExecutor);
+		}
+	}
+
+	/**
+	 * The MethodMetrics of the given remote method, or null if there's no such
+	 * method.
+	 */
+	public MethodMetrics getMethodMetrics(String applicationName, String targetClass, String methodName) {
+		Application application = applications.get(applicationName);
+		if (application == null || targetClass == null || methodName == null)
+			return null;
+		try {
+			return application.getMetrics().forMethod(application.lookupRemoteMethod(targetClass, methodName));
+		} catch (MwanziaException e) {
+			// The call itself will fail
+			return null;
+		}
+	}
+
+	/**
+	 * Write the Metrics of all Applications as JSON, keyed by application name
+	 * and then by remote method.
+	 */
+	public void writeMetrics(OutputStream out) throws IOException {
+		Map<String, Object> metrics = new TreeMap<String, Object>();
+		for (Application application : configuredApplications.values()) {
+			metrics.put(application.getName(), application.getMetrics().toMap());
+		}
+		JsonOutput json = new JsonWriter(out);
+		JSON.writeJson(metrics, false, json);
+		json.flush();
+	}
+
+	/**
+	 * Shut down the invocation Executors created by configureApplication(),
+	 * unregister the Applications' Metrics from JMX and destroy the
+	 * Applications.
+	 */
+	public void destroy() {
+		for (ExecutorService invocationExecutor : invocationExecutors) {
+			invocationExecutor.shutdown();
+		}
+		for (Application application : configuredApplications.values()) {
+			application.getMetrics().unregister();
+			application.destroy();
+		}
+	}
+
 	private void buildJavaScript() throws ServletException {
 		LOGGER.info("Building Mwanzia JavaScript");
 		try {
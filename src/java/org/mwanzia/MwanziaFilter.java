@@ -23,7 +23,9 @@ public class MwanziaFilter extends MwanziaServlet implements Filter {
 		HttpServletRequest req = (HttpServletRequest) request;
 		HttpServletResponse resp = (HttpServletResponse) response;
 		String method = req.getMethod().toUpperCase();
-		if ("GET".equals(method))
+		if ("GET".equals(method) && isMetricsRequest(req))
+			getMetrics(req, resp);
+		else if ("GET".equals(method))
 			getJavaScript(req, resp, getServletContext());
 		else if ("POST".equals(method))
 			call(req, resp, getServletContext());
@@ -39,15 +41,22 @@ public class MwanziaFilter extends MwanziaServlet implements Filter {
 			String key = keys.nextElement();
 			configMap.put(key, config.getInitParameter(key));
 		}
+		metricsPath = configMap.get("metricsPath");
+		serverTiming = Boolean.parseBoolean(configMap.get("serverTiming"));
+		if (configMap.get("compressionThreshold") != null)
+			compressionThreshold = Integer.parseInt(configMap.get("compressionThreshold").trim());
 		try {
 			mwanzia = new Mwanzia(configMap);
 		} catch (Exception e) {
 			throw new ServletException("Unable to initialize Mwanzia: "
 					+ e.getMessage(), e);
 		}
+		config.getServletContext().setAttribute(Mwanzia.class.getName(), mwanzia);
 	}
 
 	@Override
 	public void destroy() {
+		if (mwanzia != null)
+			mwanzia.destroy();
 	}
 }
@@ -1,7 +1,11 @@
 package org.mwanzia;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,16 +13,64 @@ import java.util.Map;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * <p>
  * Servlet responsible both for rendering the JavaScript for exporting
  * Applications and for processing inbound calls from the client tier. A GET
  * request to this servlet returns the JavaScript form of the Application while
- * a POST request is handled as a remote invocation.
+ * a POST request is handled as a remote invocation, or as a batch of remote
+ * invocations if it has a "batch" parameter.
+ * </p>
+ * 
+ * <p>
+ * The JavaScript is generated once per base URL and served precompressed
+ * (gzip or deflate) with an ETag, so that browsers only download it again
+ * when it has changed. Pages that include it from its versioned URL (see
+ * Mwanzia.getJavaScriptUrl()) don't even revalidate it.
+ * </p>
+ * 
+ * <p>
+ * If the "metricsPath" init parameter is set (e.g. to "/metrics"), a GET
+ * request to that path returns the Metrics of the Applications as JSON
+ * instead.
+ * </p>
+ * 
+ * <p>
+ * If the "serverTiming" init parameter is true, responses to calls carry a
+ * Server-Timing header with the Timings of the call, which browsers show in
+ * their developer tools. Since headers have to precede the body, this means
+ * that responses are buffered rather than streamed.
+ * </p>
+ * 
+ * <p>
+ * Responses to calls that are larger than the "compressionThreshold" init
+ * parameter (1024 bytes by default, -1 to turn compression off) are
+ * compressed with gzip or deflate if the client accepts it. Remote methods can
+ * override this with the Compress annotation.
+ * </p>
+ * 
+ * <p>
+ * Besides JSON, calls and responses can use any format registered with
+ * Codecs (such as CBOR). A call posted with a registered Content-Type is read
+ * in that format, and the response is written in the format that the
+ * client's Accept header prefers.
+ * </p>
+ * 
+ * <p>
+ * On Servlet 3.0 containers, calls to asynchronous remote methods (see
+ * RemoteFuture) don't hold on to the container's thread while they're
+ * running, as long as async-supported is enabled for the servlet (or the
+ * MwanziaFilter). If such a call fails after part of its response has been
+ * sent, the request is dispatched again to report the failure to the
+ * container, so the MwanziaFilter should also be mapped to ASYNC dispatches.
  * </p>
  * 
  * @author percy
@@ -26,11 +78,29 @@ import javax.servlet.http.HttpServletResponse;
  */
 public class MwanziaServlet extends HttpServlet {
     private static final long serialVersionUID = -3767422239799721120L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(MwanziaServlet.class);
+    // Asynchronous processing is only available as of Servlet 3.0, so it's
+    // looked up reflectively
+    private static final Method IS_ASYNC_SUPPORTED = servletMethod(ServletRequest.class, "isAsyncSupported");
+    private static final Method START_ASYNC = servletMethod(ServletRequest.class, "startAsync");
+    private static final Method COMPLETE = START_ASYNC != null ? servletMethod(START_ASYNC.getReturnType(), "complete")
+            : null;
+    private static final Method DISPATCH = START_ASYNC != null ? servletMethod(START_ASYNC.getReturnType(), "dispatch")
+            : null;
+    // Request attribute that carries the failure of an asynchronous call back
+    // to the container, see respond()
+    private static final String ASYNC_FAILURE = MwanziaServlet.class.getName() + ".asyncFailure";
     protected Mwanzia mwanzia;
+    protected String metricsPath;
+    protected boolean serverTiming;
+    protected int compressionThreshold = 1024;
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        getJavaScript(req, resp, getServletContext());
+        if (isMetricsRequest(req))
+            getMetrics(req, resp);
+        else
+            getJavaScript(req, resp, getServletContext());
     }
 
     @Override
@@ -38,13 +108,29 @@ public class MwanziaServlet extends HttpServlet {
         call(req, resp, getServletContext());
     }
 
+    /**
+     * Serve the JavaScript, compressed if the client accepts it. Clients
+     * revalidate it on every use (with its ETag), except at its versioned URL
+     * (see Mwanzia.getJavaScriptUrl()), where it never changes.
+     */
     protected void getJavaScript(HttpServletRequest req, HttpServletResponse resp, ServletContext servletContext)
             throws ServletException {
         try {
-            byte[] bytes = getJavaScript(req.getRequestURL().toString()).getBytes(Charset.forName("UTF-8"));
+            JavaScriptResource javaScript = getJavaScriptResource(req.getRequestURL().toString());
+            JavaScriptResource.Variant variant = javaScript.select(req.getHeader("Accept-Encoding"));
+            resp.setHeader("Cache-Control", javaScript.getVersion().equals(req.getParameter("v"))
+                    ? "public, max-age=31536000, immutable" : "no-cache");
+            resp.setHeader("Vary", "Accept-Encoding");
+            resp.setHeader("ETag", variant.getETag());
+            if (javaScript.matches(req.getHeader("If-None-Match"))) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
             resp.setContentType("text/javascript; charset=utf-8");
-            resp.setContentLength(bytes.length);
-            resp.getOutputStream().write(bytes);
+            if (variant.getEncoding() != null)
+                resp.setHeader("Content-Encoding", variant.getEncoding());
+            resp.setContentLength(variant.getLength());
+            variant.writeTo(resp.getOutputStream());
         } catch (Exception e) {
             throw new ServletException(e.getMessage(), e);
         }
@@ -54,22 +140,244 @@ public class MwanziaServlet extends HttpServlet {
         return mwanzia.getJavaScript(baseUrl);
     }
 
+    protected JavaScriptResource getJavaScriptResource(String baseUrl) throws Exception {
+        return mwanzia.getJavaScriptResource(baseUrl);
+    }
+
+    /**
+     * Whether the given request is for the metrics path, relative to this
+     * servlet or (for the MwanziaFilter) to the web application.
+     */
+    protected boolean isMetricsRequest(HttpServletRequest req) {
+        if (metricsPath == null)
+            return false;
+        if (metricsPath.equals(req.getPathInfo()))
+            return true;
+        return metricsPath.equals(req.getRequestURI().substring(req.getContextPath().length()));
+    }
+
+    protected void getMetrics(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
+        try {
+            resp.setContentType("application/json");
+            resp.setHeader("Cache-Control", "no-cache");
+            mwanzia.writeMetrics(resp.getOutputStream());
+        } catch (Exception e) {
+            throw new ServletException(e.getMessage(), e);
+        }
+    }
+
     protected void call(HttpServletRequest req, HttpServletResponse resp, ServletContext servletContext)
             throws ServletException {
+        Throwable asyncFailure = (Throwable) req.getAttribute(ASYNC_FAILURE);
+        if (asyncFailure != null) {
+            req.removeAttribute(ASYNC_FAILURE);
+            throw new ServletException(asyncFailure.getMessage(), asyncFailure);
+        }
         String applicationName = req.getParameter("application");
         String targetClass = req.getParameter("targetClass");
         String methodName = req.getParameter("method");
+        OutputStream body = null;
+        try {
+            // The response is streamed, so its length isn't known up front,
+            // unless it's buffered for the sake of the Server-Timing header
+            Codec requestCodec = requestCodec(req);
+            Codec responseCodec = responseCodec(req);
+            resp.setContentType(responseCodec != null ? responseCodec.getContentType() : "application/json");
+            resp.setHeader("Vary", "Accept");
+            String batchString = req.getParameter("batch");
+            body = batchString != null ? responseBody(req, resp, null) : responseBody(req, resp, mwanzia
+                    .getMethodMetrics(applicationName, targetClass, methodName));
+            OutputStream out = serverTiming ? new ByteArrayOutputStream() : body;
+            if (batchString != null) {
+                // A batch of calls, either as a form parameter or as the body
+                if (requestCodec != null)
+                    batchString = transcodeBody(req, requestCodec);
+                else if (isJsonBody(req))
+                    batchString = readBody(req);
+                respond(req, resp, callBatch(applicationName, batchString, out, responseCodec), out, body);
+            } else if (requestCodec != null || isJsonBody(req)) {
+                // The call is the request body, so read it as a stream
+                respond(req, resp, call(applicationName, targetClass, methodName, req.getInputStream(), out,
+                        requestCodec, responseCodec), out, body);
+            } else {
+                String callString = req.getParameter("call");
+                respond(req, resp, call(applicationName, targetClass, methodName, callString, out, responseCodec),
+                        out, body);
+            }
+        } catch (Exception e) {
+            discard(resp, body);
+            throw new ServletException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Clean up after a response that couldn't be written. If none of it has
+     * been sent yet, it is reset (headers such as Content-Encoding included) so
+     * that the container can send an error instead. Otherwise the failure has
+     * to reach the container, which then aborts the response rather than
+     * ending a truncated body as if it were complete.
+     */
+    private static void discard(HttpServletResponse resp, OutputStream body) {
+        end(body);
+        if (!resp.isCommitted())
+            resp.reset();
+    }
+
+    /**
+     * @return the Codec to read the request body with, or null if it's JSON
+     *         (or form parameters)
+     */
+    protected Codec requestCodec(HttpServletRequest req) {
+        return Codecs.forContentType(req.getContentType());
+    }
+
+    /**
+     * @return the Codec to write the response with, or null for JSON
+     */
+    protected Codec responseCodec(HttpServletRequest req) {
+        return Codecs.negotiate(req.getHeader("Accept"));
+    }
+
+    /**
+     * The stream to write the body of a response to, which compresses it if
+     * the client accepts that and the response turns out to be large enough.
+     * 
+     * @param req
+     * @param resp
+     * @param metrics
+     *            the MethodMetrics of the remote method, or null for batches
+     *            and unknown methods
+     * @return
+     * @throws IOException
+     */
+    protected OutputStream responseBody(HttpServletRequest req, HttpServletResponse resp, MethodMetrics metrics)
+            throws IOException {
+        int threshold = compressionThreshold;
+        Compress compress = metrics != null ? metrics.getRemoteMethod().getAnnotation(Compress.class) : null;
+        if (compress != null)
+            threshold = !compress.value() ? -1 : compress.threshold() >= 0 ? compress.threshold() : threshold;
+        if (threshold < 0)
+            return resp.getOutputStream();
+        resp.addHeader("Vary", "Accept-Encoding");
+        String encoding = CompressingOutputStream.negotiate(req.getHeader("Accept-Encoding"));
+        return encoding != null ? new CompressingOutputStream(resp, encoding, threshold, metrics) : resp
+                .getOutputStream();
+    }
 
-        String callString = req.getParameter("call");
+    /**
+     * Finish the given response once it has been written. If it hasn't been
+     * written yet (because the remote method is asynchronous) and the container
+     * supports it, the request is put into asynchronous mode so that the
+     * container's thread is freed up in the meantime. Otherwise, this thread
+     * waits for the response.
+     * 
+     * <p>
+     * A failed asynchronous response that hasn't been sent yet is replaced by
+     * an error. Once part of it has been sent, only the container can abort
+     * it, so the request is dispatched again and call() rethrows the failure.
+     * </p>
+     */
+    private void respond(final HttpServletRequest req, final HttpServletResponse resp,
+            final RemoteFuture<Void> response, final OutputStream out, final OutputStream body) throws Exception {
+        if (!response.isDone()) {
+            final Object asyncContext = startAsync(req);
+            if (asyncContext != null) {
+                response.onCompletion(new RemoteFuture.Callback<Void>() {
+                    public void completed(Void result) {
+                        try {
+                            finishResponse(resp, response, out, body);
+                        } catch (Exception e) {
+                            failed(e);
+                            return;
+                        }
+                        completeAsync(asyncContext);
+                    }
+
+                    public void failed(Throwable exception) {
+                        LOGGER.error("Unable to finish asynchronous call", exception);
+                        discard(resp, body);
+                        if (resp.isCommitted()) {
+                            req.setAttribute(ASYNC_FAILURE, exception);
+                            dispatchAsync(asyncContext);
+                        } else {
+                            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                            completeAsync(asyncContext);
+                        }
+                    }
+                });
+                return;
+            }
+        }
+        response.await();
+        finishResponse(resp, response, out, body);
+    }
 
+    private void finishResponse(HttpServletResponse resp, RemoteFuture<Void> response, OutputStream out,
+            OutputStream body) throws IOException {
         try {
-            String json = call(applicationName, targetClass, methodName, callString);
-            byte[] data = json.getBytes(Charset.forName("UTF-8"));
-            resp.setContentType("application/json");
-            resp.setContentLength(data.length);
-            resp.getOutputStream().write(data);
+            if (out instanceof ByteArrayOutputStream) {
+                ByteArrayOutputStream buffer = (ByteArrayOutputStream) out;
+                if (response instanceof InvocationResponse)
+                    resp.setHeader("Server-Timing", ((InvocationResponse) response).getTimings().toServerTiming());
+                if (!(body instanceof CompressingOutputStream))
+                    resp.setContentLength(buffer.size());
+                buffer.writeTo(body);
+            }
+            if (body instanceof CompressingOutputStream)
+                ((CompressingOutputStream) body).finish();
+            else
+                resp.getOutputStream().flush();
+        } finally {
+            end(body);
+        }
+    }
+
+    /**
+     * Release the compressor of the given response body, if it has one and it
+     * hasn't been finished (e.g. because writing the response failed).
+     */
+    private static void end(OutputStream body) {
+        if (body instanceof CompressingOutputStream)
+            ((CompressingOutputStream) body).end();
+    }
+
+    /**
+     * Start asynchronous processing of the given request, if the container
+     * supports it (Servlet 3.0, with async-supported enabled for this servlet
+     * or filter).
+     * 
+     * @param req
+     * @return the request's AsyncContext, or null if asynchronous processing
+     *         isn't supported
+     * @throws Exception
+     */
+    protected Object startAsync(HttpServletRequest req) throws Exception {
+        if (START_ASYNC == null || !Boolean.TRUE.equals(IS_ASYNC_SUPPORTED.invoke(req)))
+            return null;
+        return START_ASYNC.invoke(req);
+    }
+
+    private void completeAsync(Object asyncContext) {
+        try {
+            COMPLETE.invoke(asyncContext);
         } catch (Exception e) {
-            throw new ServletException(e.getMessage(), e);
+            LOGGER.error("Unable to complete asynchronous request", e);
+        }
+    }
+
+    private void dispatchAsync(Object asyncContext) {
+        try {
+            DISPATCH.invoke(asyncContext);
+        } catch (Exception e) {
+            LOGGER.error("Unable to dispatch asynchronous request", e);
+        }
+    }
+
+    private static Method servletMethod(Class type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException nsme) {
+            return null;
         }
     }
 
@@ -78,6 +386,56 @@ public class MwanziaServlet extends HttpServlet {
         return mwanzia.call(applicationName, targetClass, methodName, callString);
     }
 
+    protected RemoteFuture<Void> call(String applicationName, String targetClass, String methodName,
+            String callString, OutputStream out, Codec responseCodec) throws Exception {
+        return mwanzia.call(applicationName, targetClass, methodName, callString, out, responseCodec);
+    }
+
+    protected RemoteFuture<Void> call(String applicationName, String targetClass, String methodName, InputStream in,
+            OutputStream out, Codec requestCodec, Codec responseCodec) throws Exception {
+        return mwanzia.call(applicationName, targetClass, methodName, in, out, requestCodec, responseCodec);
+    }
+
+    protected RemoteFuture<Void> callBatch(String applicationName, String batchString, OutputStream out,
+            Codec responseCodec) throws Exception {
+        return mwanzia.callBatch(applicationName, batchString, out, responseCodec);
+    }
+
+    /**
+     * Calls posted with a content type of application/json carry the call as
+     * the request body, with the application, targetClass and method in the
+     * query string.
+     */
+    protected boolean isJsonBody(HttpServletRequest req) {
+        String contentType = req.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith("application/json");
+    }
+
+    private String readBody(HttpServletRequest req) throws IOException {
+        InputStream in = req.getInputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+
+    /**
+     * Read a request body in the format of the given Codec as JSON, for
+     * batches (which are parsed as a whole anyway).
+     */
+    private String transcodeBody(HttpServletRequest req, Codec codec) throws IOException {
+        JsonInput in = codec.createInput(req.getInputStream());
+        in.next();
+        StringWriter json = new StringWriter();
+        JsonOutput out = new JsonWriter(json);
+        JSON.copyValue(in, out);
+        out.flush();
+        return json.toString();
+    }
+
     @Override
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
@@ -87,10 +445,22 @@ public class MwanziaServlet extends HttpServlet {
             String key = keys.nextElement();
             configMap.put(key, config.getInitParameter(key));
         }
+        metricsPath = configMap.get("metricsPath");
+        serverTiming = Boolean.parseBoolean(configMap.get("serverTiming"));
+        if (configMap.get("compressionThreshold") != null)
+            compressionThreshold = Integer.parseInt(configMap.get("compressionThreshold").trim());
         try {
             mwanzia = new Mwanzia(configMap);
         } catch (Exception e) {
             throw new ServletException("Unable to initialize Mwanzia: " + e.getMessage(), e);
         }
+        config.getServletContext().setAttribute(Mwanzia.class.getName(), mwanzia);
+    }
+
+    @Override
+    public void destroy() {
+        if (mwanzia != null)
+            mwanzia.destroy();
+        super.destroy();
     }
 }
@@ -9,7 +9,7 @@ import java.util.Set;
  * <p>
  * Defines a Plugin to the Mwanzia framework. Plugins can contribute
  * enhancements to the generated JavaScript code and can also modify the request
- * processing behavior by registering an Interceptor.
+ * processing behavior by contributing InvocationStages.
  * </p>
  * 
  * @author percy
@@ -58,8 +58,31 @@ public abstract class Plugin {
     }
 
     /**
+     * <p>
+     * The stage that this Plugin contributes to the pipeline through which
+     * invocations of the given remote method are processed, or null if this
+     * Plugin doesn't apply to the method. This is called once per remote
+     * method, when it is first invoked.
+     * </p>
+     * 
+     * @param remoteMethod
+     * @return
+     */
+    public InvocationStage buildStage(RemoteMethod remoteMethod) {
+        return null;
+    }
+
+    /**
+     * <p>
      * A new Interceptor to use for the duration of the current method
      * invocation.
+     * </p>
+     * 
+     * <p>
+     * Plugins that override this are still supported, but cost an Interceptor
+     * and all of its callbacks on every invocation of every remote method.
+     * Prefer buildStage().
+     * </p>
      * 
      * @return
      */
@@ -67,6 +90,42 @@ public abstract class Plugin {
         return new Interceptor();
     }
 
+    /**
+     * A new BatchInterceptor to use for the duration of an atomic batch of
+     * method invocations, or null if this Plugin doesn't care about batches.
+     * 
+     * @return
+     */
+    public BatchInterceptor buildBatchInterceptor() {
+        return null;
+    }
+
+    /**
+     * Hook for carrying state of the calling thread (e.g. the current user)
+     * over to the thread that processes an invocation, when the Application
+     * processes invocations on an Executor. This is called on the calling
+     * thread, while the returned Runnable runs on the Executor's thread.
+     * 
+     * @param invocation
+     * @return
+     */
+    public Runnable propagateContext(Runnable invocation) {
+        return invocation;
+    }
+
+    /**
+     * The user on whose behalf the current invocation is being processed, or
+     * null if this Plugin doesn't know. This is only called for @Coalesce
+     * methods, whose calls are only coalesced for the same principal (as
+     * compared with equals()).
+     * 
+     * @param context
+     * @return
+     */
+    public Object getPrincipal(InvocationContext context) {
+        return null;
+    }
+
     /**
      * Hook for registering additional remote types with the Application that is
      * loading this Plugin.
@@ -0,0 +1,23 @@
+package org.mwanzia;
+
+/**
+ * The result of a call that asked for only some of its properties (see
+ * Projection), which JSON.writeJson() writes accordingly.
+ */
+final class Projected {
+    private final Object value;
+    private final Projection projection;
+
+    Projected(Object value, Projection projection) {
+        this.value = value;
+        this.projection = projection;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    Projection getProjection() {
+        return projection;
+    }
+}
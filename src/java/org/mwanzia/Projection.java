@@ -0,0 +1,86 @@
+package org.mwanzia;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The properties that a caller asked for (see the "fields" of a call), as a
+ * tree of property names. For example, the fields "id", "name" and
+ * "owner.lastName" include the whole id and name, and only the lastName of
+ * the owner. JSON.writeJson() only reads the properties that are included, so
+ * properties that weren't asked for aren't loaded either.
+ * </p>
+ *
+ * <p>
+ * A projection applies to each element of collections and to the values of
+ * maps (by key) as well.
+ * </p>
+ */
+final class Projection {
+    /**
+     * Includes everything
+     */
+    static final Projection ALL = new Projection(null);
+
+    // The included properties by name, or null for everything
+    private final Map<String, Projection> children;
+
+    private Projection(Map<String, Projection> children) {
+        this.children = children;
+    }
+
+    /**
+     * @param fields
+     *            dotted property paths, or null
+     * @return the projection, or null if there are no fields (i.e. the caller
+     *         wants everything)
+     */
+    static Projection parse(Collection<String> fields) {
+        if (fields == null || fields.isEmpty())
+            return null;
+        Projection root = new Projection(new HashMap<String, Projection>());
+        for (String field : fields) {
+            String[] path = field.split("\\.");
+            Projection node = root;
+            for (int i = 0; i < path.length && node != ALL; i++) {
+                String name = path[i].trim();
+                if (i == path.length - 1) {
+                    // A whole property includes all of its own properties
+                    node.children.put(name, ALL);
+                } else {
+                    Projection child = node.children.get(name);
+                    if (child == null) {
+                        child = new Projection(new HashMap<String, Projection>());
+                        node.children.put(name, child);
+                    }
+                    node = child;
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * @param name
+     * @return the projection of the named property, or null if it isn't
+     *         included
+     */
+    Projection child(String name) {
+        return children == null ? this : children.get(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return children == null ? 0 : children.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Projection))
+            return false;
+        Projection other = (Projection) obj;
+        return children == null ? other.children == null : children.equals(other.children);
+    }
+}
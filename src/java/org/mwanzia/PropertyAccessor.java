@@ -0,0 +1,33 @@
+package org.mwanzia;
+
+/**
+ * <p>
+ * Reads and writes the properties of one particular class. Properties are
+ * identified by slot, which is the index of their read or write method in the
+ * arrays that the accessor was built from (see PropertyAccessorFactory).
+ * </p>
+ */
+public interface PropertyAccessor {
+    /**
+     * Call the read method in the given slot on the given bean.
+     * 
+     * @param bean
+     * @param slot
+     * @return the property value (boxed if primitive)
+     * @throws Throwable
+     *             whatever the read method throws
+     */
+    Object read(Object bean, int slot) throws Throwable;
+
+    /**
+     * Call the write method in the given slot on the given bean. The value
+     * must already be of the property's type (or its wrapper).
+     * 
+     * @param bean
+     * @param slot
+     * @param value
+     * @throws Throwable
+     *             whatever the write method throws
+     */
+    void write(Object bean, int slot, Object value) throws Throwable;
+}
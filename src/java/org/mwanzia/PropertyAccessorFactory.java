@@ -0,0 +1,103 @@
+package org.mwanzia;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Builds PropertyAccessors. Where possible, the accessor is a generated class
+ * that calls each getter and setter directly, switching on the slot. If
+ * generation isn't possible, for example for JDK classes or when Javassist
+ * isn't on the classpath, the accessor falls back to reflection.
+ * </p>
+ */
+public class PropertyAccessorFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PropertyAccessorFactory.class);
+
+    /**
+     * Build an accessor for the given read and write methods of the given
+     * class. The slot of each method is its index in its array.
+     * 
+     * @param clazz
+     * @param readMethods
+     * @param writeMethods
+     * @return
+     */
+    public static PropertyAccessor forClass(Class clazz, Method[] readMethods, Method[] writeMethods) {
+        try {
+            return generate(clazz, readMethods, writeMethods);
+        } catch (Throwable t) {
+            LOGGER.debug("Unable to generate property accessor for {}, falling back to reflection: {}", clazz, t);
+            return reflective(readMethods, writeMethods);
+        }
+    }
+
+    static PropertyAccessor reflective(Method[] readMethods, Method[] writeMethods) {
+        return new ReflectivePropertyAccessor(readMethods, writeMethods);
+    }
+
+    static PropertyAccessor generate(Class clazz, Method[] readMethods, Method[] writeMethods) throws Exception {
+        // The generated class lives in clazz's package, so every type it
+        // mentions must be accessible from there
+        Bytecode.checkAccessible(clazz, clazz);
+        String bean = Bytecode.unbox(clazz, "bean");
+
+        StringBuilder read = new StringBuilder(
+                "public Object read(Object bean, int slot) throws Throwable { switch (slot) { ");
+        for (int i = 0; i < readMethods.length; i++) {
+            Method method = readMethods[i];
+            Bytecode.checkAccessible(method.getDeclaringClass(), clazz);
+            Bytecode.checkAccessible(method.getReturnType(), clazz);
+            String call = bean + "." + method.getName() + "()";
+            read.append("case ").append(i).append(": return ").append(Bytecode.box(method.getReturnType(), call))
+                    .append("; ");
+        }
+        read.append("} throw new java.lang.IllegalArgumentException(\"No read method in slot\"); }");
+
+        StringBuilder write = new StringBuilder(
+                "public void write(Object bean, int slot, Object value) throws Throwable { switch (slot) { ");
+        for (int i = 0; i < writeMethods.length; i++) {
+            Method method = writeMethods[i];
+            Class parameterType = method.getParameterTypes()[0];
+            Bytecode.checkAccessible(method.getDeclaringClass(), clazz);
+            Bytecode.checkAccessible(parameterType, clazz);
+            write.append("case ").append(i).append(": ").append(bean).append(".").append(method.getName())
+                    .append("(").append(Bytecode.unbox(parameterType, "value")).append("); return; ");
+        }
+        write.append("} throw new java.lang.IllegalArgumentException(\"No write method in slot\"); }");
+
+        return Bytecode.generate(clazz, "PropertyAccessor", PropertyAccessor.class, read.toString(), write
+                .toString());
+    }
+
+    private static class ReflectivePropertyAccessor implements PropertyAccessor {
+        private final Method[] readMethods;
+        private final Method[] writeMethods;
+
+        ReflectivePropertyAccessor(Method[] readMethods, Method[] writeMethods) {
+            this.readMethods = readMethods;
+            this.writeMethods = writeMethods;
+        }
+
+        @Override
+        public Object read(Object bean, int slot) throws Throwable {
+            try {
+                return readMethods[slot].invoke(bean);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+
+        @Override
+        public void write(Object bean, int slot, Object value) throws Throwable {
+            try {
+                writeMethods[slot].invoke(bean, value);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+    }
+}
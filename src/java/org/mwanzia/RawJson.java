@@ -0,0 +1,43 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A value that has already been serialized, which JSON.writeJson() writes out
+ * as is (see ResultCache). For CBOR responses it is transcoded once, and the
+ * encoded bytes are kept along with the JSON, so that a cached result costs no
+ * more to write as CBOR than as JSON.
+ */
+final class RawJson {
+    private final String json;
+    // Encoded the first time the value is written as CBOR
+    private volatile byte[] cbor;
+
+    RawJson(String json) {
+        this.json = json;
+    }
+
+    String getJson() {
+        return json;
+    }
+
+    /**
+     * Write the value to the given output in its format.
+     */
+    void writeTo(JsonOutput out) throws IOException {
+        if (out instanceof CborWriter) {
+            byte[] encoded = cbor;
+            if (encoded == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length());
+                CborWriter writer = new CborWriter(bytes);
+                writer.writeRawValue(json);
+                writer.flush();
+                encoded = cbor = bytes.toByteArray();
+            }
+            ((CborWriter) out).writeEncoded(encoded);
+        } else {
+            out.writeRawValue(json);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.mwanzia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>
+ * A result that becomes available later. Remote methods that return a
+ * RemoteFuture are asynchronous - the Application only considers the
+ * invocation finished (and only then fires invocationSucceeded() or
+ * invocationFailed() on its Interceptors and responds to the client) once the
+ * future has been completed by whoever is computing the result, e.g.:
+ * </p>
+ * 
+ * <pre>
+ * &#064;Remote
+ * public RemoteFuture&lt;Report&gt; buildReport() {
+ *     final RemoteFuture&lt;Report&gt; report = new RemoteFuture&lt;Report&gt;();
+ *     executor.execute(new Runnable() {
+ *         public void run() {
+ *             try {
+ *                 report.complete(slowlyBuildReport());
+ *             } catch (Exception e) {
+ *                 report.fail(e);
+ *             }
+ *         }
+ *     });
+ *     return report;
+ * }
+ * </pre>
+ * 
+ * <p>
+ * Callbacks run on the thread that completes the future, or right away on the
+ * registering thread if the future is already done.
+ * </p>
+ * 
+ * @param <T>
+ *            type of the result
+ */
+public class RemoteFuture<T> implements Future<T> {
+    private T result;
+    private Throwable exception;
+    private boolean done;
+    private List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>();
+
+    /**
+     * Complete this future with the given result.
+     * 
+     * @param result
+     * @return false if the future was already done
+     */
+    public boolean complete(T result) {
+        return finish(result, null);
+    }
+
+    /**
+     * Complete this future with the given exception.
+     * 
+     * @param exception
+     * @return false if the future was already done
+     */
+    public boolean fail(Throwable exception) {
+        return finish(null, exception);
+    }
+
+    /**
+     * Register a callback to fire once this future is done.
+     * 
+     * @param callback
+     */
+    public void onCompletion(Callback<? super T> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        fire(callback);
+    }
+
+    /**
+     * Complete the given future the same way as this one, once this one is
+     * done.
+     * 
+     * @param other
+     */
+    public void forwardTo(final RemoteFuture<? super T> other) {
+        onCompletion(new Callback<T>() {
+            public void completed(T result) {
+                other.complete(result);
+            }
+
+            public void failed(Throwable exception) {
+                other.fail(exception);
+            }
+        });
+    }
+
+    /**
+     * Like get(), but throws the exception that the future failed with instead
+     * of wrapping it in an ExecutionException.
+     * 
+     * @return
+     * @throws Exception
+     */
+    public T await() throws Exception {
+        try {
+            return get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new MwanziaException(cause);
+        }
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    public synchronized boolean isCancelled() {
+        return exception instanceof CancellationException;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (exception instanceof CancellationException)
+            throw (CancellationException) exception;
+        if (exception != null)
+            throw new ExecutionException(exception);
+        return result;
+    }
+
+    private boolean finish(T result, Throwable exception) {
+        List<Callback<? super T>> callbacks;
+        synchronized (this) {
+            if (done)
+                return false;
+            this.result = result;
+            this.exception = exception;
+            this.done = true;
+            callbacks = this.callbacks;
+            this.callbacks = null;
+            notifyAll();
+        }
+        for (Callback<? super T> callback : callbacks) {
+            fire(callback);
+        }
+        return true;
+    }
+
+    private void fire(Callback<? super T> callback) {
+        if (exception != null)
+            callback.failed(exception);
+        else
+            callback.completed(result);
+    }
+
+    /**
+     * Callback for the completion of a RemoteFuture.
+     * 
+     * @param <T>
+     */
+    public static interface Callback<T> {
+        void completed(T result);
+
+        void failed(Throwable exception);
+    }
+}
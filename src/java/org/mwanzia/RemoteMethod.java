@@ -0,0 +1,120 @@
+package org.mwanzia;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Immutable descriptor for a method that is remotely executable within a
+ * particular Application. Descriptors are built once, when the remote type is
+ * registered, so that dispatching a call doesn't require any class loading or
+ * reflective scanning.
+ * </p>
+ *
+ * <p>
+ * The target class is the class under which the method was requested by the
+ * client, which may be a subclass of the method's declaring class.
+ * </p>
+ */
+public final class RemoteMethod {
+    private final Class targetClass;
+    private final Method method;
+    private final Class[] parameterTypes;
+    private final Annotation[][] parameterAnnotations;
+    private final Map<Class<? extends Annotation>, Annotation> annotations;
+    private final boolean staticMethod;
+    private final boolean asynchronous;
+    private final Invoker invoker;
+
+    RemoteMethod(Class targetClass, Method method) {
+        this.targetClass = targetClass;
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+        this.parameterAnnotations = method.getParameterAnnotations();
+        Map<Class<? extends Annotation>, Annotation> annotations = new HashMap<Class<? extends Annotation>, Annotation>();
+        for (Annotation annotation : method.getAnnotations()) {
+            annotations.put(annotation.annotationType(), annotation);
+        }
+        this.annotations = annotations;
+        this.staticMethod = Modifier.isStatic(method.getModifiers());
+        this.asynchronous = RemoteFuture.class.isAssignableFrom(method.getReturnType());
+        this.invoker = InvokerFactory.forMethod(method);
+    }
+
+    public Class getTargetClass() {
+        return targetClass;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getName() {
+        return method.getName();
+    }
+
+    public boolean isStatic() {
+        return staticMethod;
+    }
+
+    /**
+     * Asynchronous methods return a RemoteFuture, see there.
+     * 
+     * @return
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    public int getParameterCount() {
+        return parameterTypes.length;
+    }
+
+    public Class getParameterType(int index) {
+        return parameterTypes[index];
+    }
+
+    public Annotation[] getParameterAnnotations(int index) {
+        return parameterAnnotations[index].clone();
+    }
+
+    public Class getReturnType() {
+        return method.getReturnType();
+    }
+
+    /**
+     * Look up an annotation on the method itself (not on its class).
+     *
+     * @param <A>
+     * @param annotationClass
+     * @return the annotation, or null if the method isn't annotated with it
+     */
+    public <A extends Annotation> A getAnnotation(Class<A> annotationClass) {
+        return (A) annotations.get(annotationClass);
+    }
+
+    public boolean isAnnotationPresent(Class<? extends Annotation> annotationClass) {
+        return annotations.containsKey(annotationClass);
+    }
+
+    /**
+     * Invoke the method on the given target (null for static methods).
+     * Exceptions thrown by the method are passed through as is.
+     *
+     * @param target
+     * @param arguments
+     * @return
+     * @throws Throwable
+     */
+    public Object invoke(Object target, Object[] arguments) throws Throwable {
+        return invoker.invoke(target, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%1$s.%2$s", targetClass.getName(), method.getName());
+    }
+}
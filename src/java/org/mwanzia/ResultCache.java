@@ -0,0 +1,350 @@
+package org.mwanzia;
+
+import java.lang.reflect.Array;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mwanzia.SmallPropertyUtils.Property;
+
+/**
+ * <p>
+ * The cached results of an Application's @Cacheable remote methods. Each
+ * method has its own cache, bounded by its maxEntries with least recently used
+ * eviction, which maps the target and arguments of a call (as the JSON that
+ * the call was made with, so that no live objects are kept) to its result as
+ * serialized JSON (and, once it has been sent as CBOR, as CBOR too).
+ * </p>
+ *
+ * <p>
+ * Results aren't invalidated automatically (other than by their ttl), so code
+ * that changes what a cached method would return should invalidate it, e.g.
+ * InvocationContext.current().getApplication().getResultCache().invalidate(
+ * Account.class, "getBalance", account). Hits and misses are counted in the
+ * method's MethodMetrics.
+ * </p>
+ */
+public final class ResultCache {
+    private final Map<RemoteMethod, MethodCache> methods = new ConcurrentHashMap<RemoteMethod, MethodCache>();
+
+    ResultCache() {
+    }
+
+    /**
+     * Start caching the given method if it is annotated with @Cacheable.
+     */
+    void register(RemoteMethod remoteMethod) {
+        Cacheable cacheable = remoteMethod.getAnnotation(Cacheable.class);
+        if (cacheable != null)
+            methods.put(remoteMethod, new MethodCache(cacheable));
+    }
+
+    /**
+     * @return the cache of the given method, or null if it isn't cacheable
+     */
+    MethodCache forMethod(RemoteMethod remoteMethod) {
+        return methods.get(remoteMethod);
+    }
+
+    /**
+     * Invalidate all cached results.
+     */
+    public void invalidate() {
+        for (MethodCache cache : methods.values()) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Invalidate all cached results of the named method on the given class
+     * (and on its registered subclasses).
+     *
+     * @param targetClass
+     * @param methodName
+     */
+    public void invalidate(Class targetClass, String methodName) {
+        for (Map.Entry<RemoteMethod, MethodCache> entry : methods.entrySet()) {
+            if (matches(entry.getKey(), targetClass, methodName))
+                entry.getValue().clear();
+        }
+    }
+
+    /**
+     * Invalidate the cached results of calling the named method on the given
+     * target (null for static methods) with the given arguments, whichever
+     * fields they were asked for with.
+     * 
+     * <p>
+     * The target and arguments are matched against the JSON of the cached
+     * calls. Objects only need to match in the properties that the call was
+     * made with (clients usually only send some of an object's properties), so
+     * only those properties are read.
+     * </p>
+     *
+     * @param targetClass
+     * @param methodName
+     * @param target
+     * @param arguments
+     */
+    public void invalidate(Class targetClass, String methodName, Object target, Object... arguments) {
+        List<Object> call = Arrays.asList(target, Arrays.asList(arguments));
+        for (Map.Entry<RemoteMethod, MethodCache> entry : methods.entrySet()) {
+            if (matches(entry.getKey(), targetClass, methodName))
+                entry.getValue().removeCall(call);
+        }
+    }
+
+    /**
+     * @return the number of results currently cached for the given method
+     */
+    public int size(RemoteMethod remoteMethod) {
+        MethodCache cache = methods.get(remoteMethod);
+        return cache != null ? cache.size() : 0;
+    }
+
+    private boolean matches(RemoteMethod remoteMethod, Class targetClass, String methodName) {
+        return remoteMethod.getName().equals(methodName) && targetClass.isAssignableFrom(remoteMethod.getTargetClass());
+    }
+
+    /**
+     * The key of a call, from the JSON of its target and arguments as they
+     * were received (before the pipeline gets to replace them). Calls that ask
+     * for different fields have different results, so the projection (if any)
+     * is part of the key.
+     */
+    static Object key(Object targetJson, Object argumentsJson, Projection projection) {
+        List<Object> call = new ArrayList<Object>(2);
+        call.add(canonical(targetJson));
+        call.add(canonical(argumentsJson));
+        return new Key(call, projection);
+    }
+
+    /**
+     * A copy of the given JSON in which equal values are equal objects
+     * regardless of how they were parsed or converted: integers are Longs,
+     * other numbers Doubles, arrays Lists, and other scalars (such as enums
+     * and classes) their names or strings.
+     */
+    static Object canonical(Object json) {
+        if (json == null || json instanceof String || json instanceof Boolean)
+            return json;
+        if (json instanceof Map) {
+            Map<Object, Object> in = (Map<Object, Object>) json;
+            Map<String, Object> result = new HashMap<String, Object>(in.size() * 4 / 3 + 1);
+            for (Map.Entry<Object, Object> entry : in.entrySet()) {
+                result.put(String.valueOf(entry.getKey()), canonical(entry.getValue()));
+            }
+            return result;
+        }
+        if (json instanceof Collection || json.getClass().isArray())
+            return canonicalList(json, true);
+        if (json instanceof Integer || json instanceof Long || json instanceof Short || json instanceof Byte)
+            return Long.valueOf(((Number) json).longValue());
+        if (json instanceof BigInteger)
+            return ((BigInteger) json).bitLength() < 64 ? (Object) Long.valueOf(((BigInteger) json).longValue())
+                    : json;
+        if (json instanceof Float)
+            return Double.valueOf(json.toString());
+        if (json instanceof Number)
+            return Double.valueOf(((Number) json).doubleValue());
+        if (json instanceof Class)
+            return ((Class) json).getName();
+        if (json instanceof Enum)
+            return ((Enum) json).name();
+        return json.toString();
+    }
+
+    /**
+     * The items of the given collection or array as a List, made canonical if
+     * asked to.
+     */
+    private static List<Object> canonicalList(Object items, boolean canonical) {
+        if (items instanceof Collection) {
+            List<Object> result = new ArrayList<Object>(((Collection) items).size());
+            for (Object item : (Collection) items) {
+                result.add(canonical ? canonical(item) : item);
+            }
+            return result;
+        }
+        int length = Array.getLength(items);
+        List<Object> result = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++) {
+            result.add(canonical ? canonical(Array.get(items, i)) : Array.get(items, i));
+        }
+        return result;
+    }
+
+    /**
+     * Whether the given value matches the JSON of a cached call, in the
+     * properties that the JSON has.
+     */
+    private static boolean matches(Object json, Object value) {
+        if (json == null || value == null)
+            return json == value;
+        if (json instanceof Map) {
+            Map<String, Object> properties = (Map<String, Object>) json;
+            if (ISO8601.isTemporal(value.getClass())) {
+                Object isoString = properties.get("isoString");
+                try {
+                    return isoString instanceof String
+                            && ISO8601.parseMillis((String) isoString) == ISO8601.toMillis(value);
+                } catch (ParseException e) {
+                    return false;
+                }
+            }
+            Map<String, Property> beanProperties = value instanceof Map ? null : SmallPropertyUtils
+                    .getProperties(value.getClass());
+            for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                if (JSON.MWANZIA_TYPE.equals(entry.getKey()))
+                    continue;
+                Object propertyValue;
+                if (beanProperties == null) {
+                    if (!((Map) value).containsKey(entry.getKey()))
+                        return false;
+                    propertyValue = ((Map) value).get(entry.getKey());
+                } else {
+                    Property property = beanProperties.get(entry.getKey());
+                    if (property == null || !property.isReadable())
+                        return false;
+                    propertyValue = property.read(value);
+                }
+                if (!matches(entry.getValue(), propertyValue))
+                    return false;
+            }
+            return true;
+        }
+        if (json instanceof List) {
+            List<Object> items = (List<Object>) json;
+            if (!(value instanceof Collection) && !value.getClass().isArray())
+                return false;
+            List<Object> values = (List<Object>) canonicalList(value, false);
+            if (items.size() != values.size())
+                return false;
+            for (int i = 0; i < items.size(); i++) {
+                if (!matches(items.get(i), values.get(i)))
+                    return false;
+            }
+            return true;
+        }
+        return json.equals(canonical(value));
+    }
+
+    /**
+     * The results of a single method.
+     */
+    static class MethodCache {
+        private final long ttlNanos;
+        private final Map<Object, Entry> entries;
+        // Incremented by every invalidation, so that calls that were already
+        // in flight don't cache their (possibly stale) results
+        private long generation;
+
+        MethodCache(Cacheable cacheable) {
+            this.ttlNanos = cacheable.ttl() * 1000000L;
+            final int maxEntries = cacheable.maxEntries();
+            this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        /**
+         * @return the cached result of the given key, or null if there is none
+         *         (or it has expired)
+         */
+        synchronized RawJson get(Object key) {
+            Entry entry = entries.get(key);
+            if (entry == null)
+                return null;
+            if (ttlNanos > 0 && System.nanoTime() - entry.expires > 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.result;
+        }
+
+        /**
+         * @return the current generation, to be passed to put() once the
+         *         result of a miss is known
+         */
+        synchronized long generation() {
+            return generation;
+        }
+
+        /**
+         * Cache the given result, unless the cache has been invalidated since
+         * the given generation.
+         */
+        synchronized void put(Object key, RawJson result, long generation) {
+            if (generation == this.generation)
+                entries.put(key, new Entry(result, System.nanoTime() + ttlNanos));
+        }
+
+        /**
+         * Remove the results of calls that match the given target and
+         * arguments (see matches()) for all projections.
+         */
+        synchronized void removeCall(Object call) {
+            generation += 1;
+            for (Iterator<Object> i = entries.keySet().iterator(); i.hasNext();) {
+                if (matches(((Key) i.next()).call, call))
+                    i.remove();
+            }
+        }
+
+        synchronized void clear() {
+            generation += 1;
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        private final RawJson result;
+        private final long expires;
+
+        Entry(RawJson result, long expires) {
+            this.result = result;
+            this.expires = expires;
+        }
+    }
+
+    private static class Key {
+        private final Object call;
+        private final Projection projection;
+        private final int hashCode;
+
+        Key(Object call, Projection projection) {
+            this.call = call;
+            this.projection = projection;
+            this.hashCode = 31 * call.hashCode() + (projection != null ? projection.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && call.equals(other.call)
+                    && (projection == null ? other.projection == null : projection.equals(other.projection));
+        }
+    }
+}
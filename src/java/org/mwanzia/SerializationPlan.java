@@ -0,0 +1,146 @@
+package org.mwanzia;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mwanzia.SmallPropertyUtils.Property;
+
+/**
+ * <p>
+ * Precomputed instructions for serializing instances of one class in one
+ * whitelisting mode: what kind of value the class is and, for beans, the
+ * properties to include along with the kind of value each one declares.
+ * Plans are built once per (class, whitelist) and cached, so serializing an
+ * object is a loop over a flat array rather than a fresh pass over the
+ * class's properties and annotations.
+ * </p>
+ */
+final class SerializationPlan {
+    /**
+     * How a value is serialized.
+     */
+    static enum Kind {
+        /**
+         * Written as is (strings, numbers, booleans, enums and a few other
+         * JDK value types)
+         */
+        SCALAR,
+        /**
+         * Written as an object with an isoString (see ISO8601)
+         */
+        DATE,
+        /**
+         * Written as an array (collections and arrays)
+         */
+        COLLECTION,
+        /**
+         * Written as an object keyed by the map's keys
+         */
+        MAP,
+        /**
+         * Written as an object with an @class and its properties, or for
+         * declared property types, not known until the value is seen
+         */
+        BEAN
+    }
+
+    // Final JDK classes that are written as is; other final classes (e.g.
+    // immutable value objects or final entities) are still beans
+    private static final Set<Class> SCALAR_TYPES = new HashSet<Class>(Arrays.asList(new Class[] { String.class,
+            Character.class, Boolean.class, UUID.class, URI.class, URL.class, Locale.class, Currency.class }));
+
+    private static final Map<Class, SerializationPlan> WHITELIST_PLANS = new ConcurrentHashMap<Class, SerializationPlan>();
+    private static final Map<Class, SerializationPlan> BLACKLIST_PLANS = new ConcurrentHashMap<Class, SerializationPlan>();
+
+    private final Kind kind;
+    private final String[] names;
+    private final Property[] properties;
+    private final Kind[] kinds;
+
+    private SerializationPlan(Class clazz, boolean whitelist) {
+        this.kind = kindOf(clazz);
+        List<Property> included = new ArrayList<Property>();
+        if (kind == Kind.BEAN) {
+            for (Property property : SmallPropertyUtils.getProperties(clazz).values()) {
+                if (whitelist ? property.isJsonIncluded() : !property.isJsonExcluded())
+                    included.add(property);
+            }
+        }
+        this.properties = included.toArray(new Property[included.size()]);
+        this.names = new String[properties.length];
+        this.kinds = new Kind[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            names[i] = properties[i].getName();
+            kinds[i] = kindOf(properties[i].getPropertyType());
+        }
+    }
+
+    /**
+     * Get the (cached) plan for the given class.
+     * 
+     * @param clazz
+     * @param whitelist
+     *            - whether or not to use property whitelisting
+     * @return
+     */
+    static SerializationPlan forClass(Class clazz, boolean whitelist) {
+        Map<Class, SerializationPlan> plans = whitelist ? WHITELIST_PLANS : BLACKLIST_PLANS;
+        SerializationPlan plan = plans.get(clazz);
+        if (plan == null) {
+            plan = new SerializationPlan(clazz, whitelist);
+            plans.put(clazz, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * The kind of value that instances of the given type are. Properties of a
+     * SCALAR type hold scalars unless a SerializationModifier replaces them, so
+     * their values don't need a plan of their own.
+     */
+    private static Kind kindOf(Class type) {
+        if (type.isArray() || Collection.class.isAssignableFrom(type))
+            return Kind.COLLECTION;
+        if (Map.class.isAssignableFrom(type))
+            return Kind.MAP;
+        if (Class.class == type)
+            return Kind.BEAN;
+        if (type.isPrimitive() || Number.class.isAssignableFrom(type) || Enum.class.isAssignableFrom(type)
+                || SCALAR_TYPES.contains(type))
+            return Kind.SCALAR;
+        if (ISO8601.isTemporal(type))
+            return Kind.DATE;
+        return Kind.BEAN;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    int size() {
+        return properties.length;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    Kind getKind(int index) {
+        return kinds[index];
+    }
+
+    Object read(Object bean, int index) {
+        return properties[index].read(bean);
+    }
+}
@@ -0,0 +1,129 @@
+package org.mwanzia;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The JsonOutput of Applications that don't override createJsonOutput(). It
+ * collects the tokens into a tree of maps, lists and leaf values (like the
+ * tree that JSON.toJson() builds) and, once the outermost value is complete,
+ * writes whatever Application.serializeToJson() makes of that tree. This keeps
+ * serializeToJson() in charge of the format of responses, at the cost of
+ * buffering them.
+ * </p>
+ */
+final class SerializingJsonOutput implements JsonOutput {
+    private final Application application;
+    private final OutputStream out;
+    // The open objects (Maps) and arrays (Lists), innermost last
+    private final List<Object> containers = new ArrayList<Object>();
+    private String fieldName;
+    private Object root;
+    private boolean hasRoot;
+
+    SerializingJsonOutput(Application application, OutputStream out) {
+        this.application = application;
+        this.out = out;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        push(new LinkedHashMap<String, Object>());
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        pop();
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        push(new ArrayList<Object>());
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        pop();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        fieldName = name;
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        add(null);
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        add(value);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        add(Boolean.valueOf(value));
+    }
+
+    @Override
+    public void writeNumber(Number value) throws IOException {
+        add(value);
+    }
+
+    @Override
+    public void writeValue(Object value) throws IOException {
+        // Left for serializeToJson() to deal with
+        add(value);
+    }
+
+    @Override
+    public void writeRawValue(String json) throws IOException {
+        JsonInput in = new JsonReader(new StringReader(json));
+        in.next();
+        add(JSON.readPlain(in));
+    }
+
+    /**
+     * Serialize and write the outermost value, if it is complete.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (hasRoot && containers.isEmpty()) {
+            out.write(application.serializeToJson(root).getBytes("UTF-8"));
+            root = null;
+            hasRoot = false;
+        }
+        out.flush();
+    }
+
+    private void add(Object value) {
+        if (containers.isEmpty()) {
+            if (hasRoot)
+                throw new IllegalStateException("JSON already has a value");
+            root = value;
+            hasRoot = true;
+        } else {
+            Object container = containers.get(containers.size() - 1);
+            if (container instanceof Map)
+                ((Map<String, Object>) container).put(fieldName, value);
+            else
+                ((List<Object>) container).add(value);
+        }
+    }
+
+    private void push(Object container) {
+        add(container);
+        containers.add(container);
+    }
+
+    private void pop() {
+        containers.remove(containers.size() - 1);
+    }
+}
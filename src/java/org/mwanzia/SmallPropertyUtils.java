@@ -3,16 +3,10 @@ package org.mwanzia;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -75,11 +69,33 @@ public class SmallPropertyUtils {
                     }
                 }
             }
+            bindAccessor(clazz, properties);
             PROPERTY_CACHE.put(clazz, properties);
         }
         return properties;
     }
 
+    /**
+     * Give each property a slot in a single PropertyAccessor for the class, so
+     * that reading and writing doesn't have to go through Method.invoke().
+     */
+    private static void bindAccessor(Class clazz, Map<String, Property> properties) {
+        List<Method> readMethods = new ArrayList<Method>();
+        List<Method> writeMethods = new ArrayList<Method>();
+        for (Property property : properties.values()) {
+            if (property.getReadMethod() != null)
+                readMethods.add(property.getReadMethod());
+            if (property.getWriteMethod() != null)
+                writeMethods.add(property.getWriteMethod());
+        }
+        PropertyAccessor accessor = PropertyAccessorFactory.forClass(clazz, readMethods
+                .toArray(new Method[readMethods.size()]), writeMethods.toArray(new Method[writeMethods.size()]));
+        for (Property property : properties.values()) {
+            property.bind(accessor, readMethods.indexOf(property.getReadMethod()), writeMethods.indexOf(property
+                    .getWriteMethod()));
+        }
+    }
+
     /**
      * Read the property of the given object identified by the given name.
      * 
@@ -143,6 +159,10 @@ public class SmallPropertyUtils {
      * Anyting -> String -- using .toString()
      * </p>
      * 
+     * <p>
+     * Custom conversions can be added with Converters.register().
+     * </p>
+     * 
      * @param <T>
      * @param value
      * @param targetType
@@ -151,56 +171,16 @@ public class SmallPropertyUtils {
     public static <T> T coerce(Object value, Class<T> targetType) {
         if (value == null)
             return null;
-
-        if (value.getClass() != targetType && Number.class.isAssignableFrom(targetType)) {
-            // Handle numeric conversions
-            Number number = (Number) value;
-            if (BigDecimal.class == targetType) {
-                value = BigDecimal.valueOf(number.doubleValue());
-            } else if (BigInteger.class == targetType) {
-                value = BigInteger.valueOf(number.longValue());
-            } else if (Byte.class == targetType) {
-                value = number.byteValue();
-            } else if (Double.class == targetType) {
-                value = number.doubleValue();
-            } else if (Float.class == targetType) {
-                value = number.floatValue();
-            } else if (Integer.class == targetType) {
-                value = number.intValue();
-            } else if (Long.class == targetType) {
-                value = number.longValue();
-            } else if (Short.class == targetType) {
-                value = number.shortValue();
-            }
-        } else if (value instanceof Collection) {
-            // Handle collection conversions
-            if (SortedSet.class.isAssignableFrom(targetType)) {
-                value = new TreeSet<Object>((Collection<?>) value);
-            } else if (Set.class.isAssignableFrom(targetType)) {
-                value = new HashSet<Object>((Collection<?>) value);
-            }
-        } else if (value instanceof String && targetType.isArray()
-                && Character.TYPE.isAssignableFrom(targetType.getComponentType())) {
-            // Convert string to char[]
-            value = ((String) value).toCharArray();
-        } else if (value instanceof char[] && String.class.isAssignableFrom(targetType)) {
-            // Convert char[] to string
-            value = String.valueOf((char[]) value);
-        } else if (targetType.isEnum() && value instanceof String) {
-            // Convert string to enum
-            try {
-                value = targetType.getMethod("valueOf", new Class[] { String.class }).invoke(null, value);
-            } catch (Exception e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        } else if (UUID.class.isAssignableFrom(targetType) && value instanceof String) {
-            // Convert string to UUID
-            value = UUID.fromString((String) value);
-        } else if (String.class.isAssignableFrom(targetType) && !(value instanceof String)) {
-            // Convert anything to string
-            value = value.toString();
+        Converter converter = Converters.forTypes(value.getClass(), targetType);
+        if (converter == Converters.NO_CONVERSION)
+            return (T) value;
+        try {
+            return (T) converter.convert(value);
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
-        return (T) value;
     }
 
     /**
@@ -214,6 +194,10 @@ public class SmallPropertyUtils {
         private Method readMethod;
         private Method writeMethod;
         private Class propertyType;
+        private Class writeType;
+        private PropertyAccessor accessor;
+        private int readSlot = -1;
+        private int writeSlot = -1;
         private boolean readable;
         private boolean writeable;
         private boolean jsonIncluded;
@@ -237,6 +221,7 @@ public class SmallPropertyUtils {
 
         public void setReadMethod(Method readMethod) {
             this.readMethod = readMethod;
+            this.accessor = null;
             if (readMethod != null) {
                 this.readable = true;
                 if ("message".equals(name) && Throwable.class.isAssignableFrom(readMethod.getDeclaringClass())) {
@@ -257,14 +242,26 @@ public class SmallPropertyUtils {
 
         public void setWriteMethod(Method writeMethod) {
             this.writeMethod = writeMethod;
+            this.accessor = null;
             if (writeMethod != null) {
                 this.writeable = true;
+                this.writeType = writeMethod.getParameterTypes()[0];
                 if (propertyType == null) {
-                    propertyType = writeMethod.getParameterTypes()[0];
+                    propertyType = writeType;
                 }
             }
         }
 
+        /**
+         * Read and write through the given accessor, using the given slots
+         * (-1 if there's no read or write method).
+         */
+        void bind(PropertyAccessor accessor, int readSlot, int writeSlot) {
+            this.accessor = accessor;
+            this.readSlot = readSlot;
+            this.writeSlot = writeSlot;
+        }
+
         public boolean isReadable() {
             return readable;
         }
@@ -290,6 +287,13 @@ public class SmallPropertyUtils {
         }
 
         public <T> T read(Object source) {
+            if (accessor != null) {
+                try {
+                    return (T) accessor.read(source, readSlot);
+                } catch (Throwable t) {
+                    throw new RuntimeException(t.getMessage(), t);
+                }
+            }
             try {
                 return (T) readMethod.invoke(source, null);
             } catch (IllegalAccessException iae) {
@@ -300,9 +304,16 @@ public class SmallPropertyUtils {
         }
 
         public void write(Object source, Object value) {
+            if (accessor != null) {
+                try {
+                    accessor.write(source, writeSlot, coerce(value, writeType));
+                    return;
+                } catch (Throwable t) {
+                    throw new RuntimeException(t.getMessage(), t);
+                }
+            }
             try {
-                Class propertyType = writeMethod.getParameterTypes()[0];
-                writeMethod.invoke(source, new Object[] { coerce(value, propertyType) });
+                writeMethod.invoke(source, new Object[] { coerce(value, writeType) });
             } catch (InvocationTargetException ite) {
                 throw new RuntimeException(ite.getCause().getMessage(), ite.getCause());
             } catch (Exception e) {
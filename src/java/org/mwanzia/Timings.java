@@ -0,0 +1,143 @@
+package org.mwanzia;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * How long the phases of an invocation took, see Phase. Every
+ * InvocationContext has Timings, which the Application fills in as it
+ * processes the invocation. The time spent by the calls of a batch is also
+ * added to the Timings of the batch.
+ * </p>
+ * 
+ * <p>
+ * The MwanziaServlet can send the Timings to the client as a Server-Timing
+ * header, so that they show up in the browser's developer tools, and the
+ * Metrics keep the mean time spent in each phase per remote method.
+ * </p>
+ */
+public final class Timings {
+    /**
+     * The phases of an invocation, in order.
+     */
+    public static enum Phase {
+        /** Waiting for the invocation Executor */
+        QUEUE("queue"),
+        /** Parsing the JSON of the call */
+        PARSE("parse"),
+        /**
+         * Building the target and arguments from JSON (including parsing, for
+         * calls that are read as a stream)
+         */
+        DESERIALIZE("deserialize"),
+        /** beforeInvocation(), replaceTarget() and prepareInvocation() */
+        INTERCEPT("intercept"),
+        /** The remote method, until its RemoteFuture is done if asynchronous */
+        INVOKE("invoke"),
+        /** replaceResult(), e.g. initializing lazy Hibernate associations */
+        RESULT("result"),
+        /** invocationSucceeded() or invocationFailed(), e.g. commit */
+        COMPLETE("complete"),
+        /** Serializing the response */
+        SERIALIZE("serialize");
+
+        private final String metricName;
+
+        private Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        /**
+         * @return the name of this phase in Server-Timing headers and Metrics
+         */
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Timings parent;
+    private final long startTime = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+
+    Timings(Timings parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Add time spent in the given phase.
+     * 
+     * @param phase
+     * @param nanos
+     */
+    public void add(Phase phase, long nanos) {
+        this.nanos.addAndGet(phase.ordinal(), nanos);
+        if (parent != null)
+            parent.add(phase, nanos);
+    }
+
+    /**
+     * Add the time since the given System.nanoTime() to the given phase.
+     * 
+     * @param phase
+     * @param since
+     * @return the current System.nanoTime(), handy for timing the next phase
+     */
+    public long addSince(Phase phase, long since) {
+        long now = System.nanoTime();
+        add(phase, now - since);
+        return now;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    /**
+     * @return the System.nanoTime() at which the invocation was received
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * The time spent in each phase that took any time, in milliseconds.
+     * 
+     * @return
+     */
+    public Map<String, Double> toMap() {
+        Map<String, Double> map = new LinkedHashMap<String, Double>();
+        for (Phase phase : PHASES) {
+            long phaseNanos = getNanos(phase);
+            if (phaseNanos > 0)
+                map.put(phase.getMetricName(), phaseNanos / 1000000.0);
+        }
+        return map;
+    }
+
+    /**
+     * The value of a Server-Timing header with the time spent in each phase
+     * and the total time so far, e.g.
+     * "parse;dur=0.05, invoke;dur=12.31, serialize;dur=0.42, total;dur=13.1".
+     * 
+     * @return
+     */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Double> entry : toMap().entrySet()) {
+            appendMetric(header, entry.getKey(), entry.getValue());
+        }
+        appendMetric(header, "total", (System.nanoTime() - startTime) / 1000000.0);
+        return header.toString();
+    }
+
+    private void appendMetric(StringBuilder header, String name, double millis) {
+        if (header.length() > 0)
+            header.append(", ");
+        header.append(name).append(";dur=").append(String.format(Locale.US, "%.2f", millis));
+    }
+}
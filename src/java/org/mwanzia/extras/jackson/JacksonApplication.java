@@ -1,9 +1,15 @@
 package org.mwanzia.extras.jackson;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
 
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.mwanzia.Application;
+import org.mwanzia.JsonInput;
+import org.mwanzia.JsonOutput;
 
 /**
  * An application that uses Jackson to process JSON.
@@ -35,6 +41,16 @@ public abstract class JacksonApplication extends Application {
         }
     }
 
+    @Override
+    public JsonOutput createJsonOutput(OutputStream out) throws IOException {
+        return new JacksonJsonOutput(mapper.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8));
+    }
+
+    @Override
+    public JsonInput createJsonInput(InputStream in) throws IOException {
+        return new JacksonJsonInput(mapper.getJsonFactory().createJsonParser(in));
+    }
+
     @Override
     public Map<String, Object> parseJson(String json) {
         try {
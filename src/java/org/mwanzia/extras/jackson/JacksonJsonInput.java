@@ -0,0 +1,76 @@
+package org.mwanzia.extras.jackson;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.mwanzia.JsonInput;
+
+/**
+ * JsonInput that pulls tokens from a Jackson JsonParser.
+ */
+public class JacksonJsonInput implements JsonInput {
+    private final JsonParser parser;
+    private Token current;
+
+    public JacksonJsonInput(JsonParser parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public Token next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            current = Token.END;
+        } else {
+            switch (token) {
+            case START_OBJECT:
+                current = Token.START_OBJECT;
+                break;
+            case END_OBJECT:
+                current = Token.END_OBJECT;
+                break;
+            case START_ARRAY:
+                current = Token.START_ARRAY;
+                break;
+            case END_ARRAY:
+                current = Token.END_ARRAY;
+                break;
+            case FIELD_NAME:
+                current = Token.FIELD_NAME;
+                break;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                current = Token.NUMBER;
+                break;
+            case VALUE_TRUE:
+                current = Token.TRUE;
+                break;
+            case VALUE_FALSE:
+                current = Token.FALSE;
+                break;
+            case VALUE_NULL:
+                current = Token.NULL;
+                break;
+            default:
+                current = Token.STRING;
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public Token current() {
+        return current;
+    }
+
+    @Override
+    public String getText() throws IOException {
+        return parser.getText();
+    }
+
+    @Override
+    public Number getNumber() throws IOException {
+        return parser.getNumberValue();
+    }
+}
@@ -0,0 +1,95 @@
+package org.mwanzia.extras.jackson;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.mwanzia.JsonOutput;
+
+/**
+ * JsonOutput that emits tokens to a Jackson JsonGenerator. Leaf values are
+ * handed to the generator's codec, so they're written the same way that
+ * Jackson would write them as part of a tree.
+ */
+public class JacksonJsonOutput implements JsonOutput {
+    private final JsonGenerator generator;
+
+    public JacksonJsonOutput(JsonGenerator generator) {
+        this.generator = generator;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        generator.writeStartObject();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        generator.writeEndArray();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        generator.writeFieldName(name);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        generator.writeNull();
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        generator.writeString(value);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        generator.writeBoolean(value);
+    }
+
+    @Override
+    public void writeNumber(Number value) throws IOException {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(value.intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber(value.longValue());
+        } else if (value instanceof Double) {
+            generator.writeNumber(value.doubleValue());
+        } else if (value instanceof Float) {
+            generator.writeNumber(value.floatValue());
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    @Override
+    public void writeValue(Object value) throws IOException {
+        generator.writeObject(value);
+    }
+
+    @Override
+    public void writeRawValue(String json) throws IOException {
+        generator.writeRawValue(json);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+}
@@ -11,7 +11,7 @@ import javax.persistence.EntityManager;
 
 import org.mwanzia.Application;
 import org.mwanzia.Interceptor;
-import org.mwanzia.JSON;
+import org.mwanzia.InvocationContext;
 import org.mwanzia.JSON.DeserializationModifier;
 import org.mwanzia.JSON.SerializationModifier;
 import org.mwanzia.Plugin;
@@ -36,10 +36,12 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class JPAPlugin extends Plugin {
     private static final Logger LOGGER = LoggerFactory.getLogger(JPAPlugin.class);
-    private static final ThreadLocal<EntityManager> CURRENT_ENTITY_MANAGER = new ThreadLocal<EntityManager>();
+    private static final InvocationContext.Key<EntityManager> CURRENT_ENTITY_MANAGER = new InvocationContext.Key<EntityManager>(
+            "currentEntityManager");
 
-    static {
-        JSON.addDeserializationModifier(new DeserializationModifier() {
+    public JPAPlugin(Application application) {
+        super(application);
+        application.getModifiers().addAnnotatedDeserializationModifier(Entity.class, new DeserializationModifier() {
             public <T> T modify(T deserialized, Object original) throws Exception {
                 if (original instanceof Map) {
                     Map map = (Map) original;
@@ -51,10 +53,10 @@ public abstract class JPAPlugin extends Plugin {
             }
         });
 
-        JSON.addSerializationModifier(new SerializationModifier() {
+        application.getModifiers().addAnnotatedSerializationModifier(Entity.class, new SerializationModifier() {
             public <T> T modify(T original, Map<String, Object> serializationContext) throws Exception {
                 T result = original;
-                if (original != null && original.getClass().isAnnotationPresent(Entity.class)) {
+                if (original != null) {
                     EntityKey key = new EntityKey(original);
                     Map<EntityKey, Object> serializedObjects = (Map<EntityKey, Object>) serializationContext
                             .get("_alreadySerialized");
@@ -76,12 +78,15 @@ public abstract class JPAPlugin extends Plugin {
         });
     }
 
-    public JPAPlugin(Application application) {
-        super(application);
-    }
-
+    /**
+     * The EntityManager of the invocation being processed by the current
+     * thread.
+     * 
+     * @return the EntityManager, or null outside of an invocation
+     */
     public static EntityManager getCurrentEntityManager() {
-        return CURRENT_ENTITY_MANAGER.get();
+        InvocationContext context = InvocationContext.current();
+        return context != null ? context.get(CURRENT_ENTITY_MANAGER) : null;
     }
 
     protected abstract EntityManager getEntityManager();
@@ -89,7 +94,7 @@ public abstract class JPAPlugin extends Plugin {
     public abstract class JPAInterceptor extends Interceptor {
         @Override
         public void beforeInvocation(Class targetClass, Method method) throws Exception {
-            CURRENT_ENTITY_MANAGER.set(getEntityManager());
+            getContext().set(CURRENT_ENTITY_MANAGER, getEntityManager());
             super.beforeInvocation(targetClass, method);
         }
 
@@ -123,21 +128,9 @@ public abstract class JPAPlugin extends Plugin {
 
         @Override
         public void invocationSucceeded(Object target, Object result) throws Exception {
-            try {
-                if (target != null && isManagedEntity(target)) {
-                    LOGGER.debug("Saving target {}", target);
-                    getEntityManager().persist(target);
-                }
-            } finally {
-                CURRENT_ENTITY_MANAGER.set(null);
-            }
-        }
-
-        public Throwable invocationFailed(Throwable exception) throws Exception {
-            try {
-                return exception;
-            } finally {
-                CURRENT_ENTITY_MANAGER.set(null);
+            if (target != null && isManagedEntity(target)) {
+                LOGGER.debug("Saving target {}", target);
+                getEntityManager().persist(target);
             }
         }
 
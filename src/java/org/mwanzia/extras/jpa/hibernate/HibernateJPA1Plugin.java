@@ -9,8 +9,10 @@ import javax.persistence.EntityManager;
 
 import org.hibernate.EntityMode;
 import org.hibernate.Hibernate;
+import org.hibernate.collection.PersistentCollection;
 import org.hibernate.Session;
 import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.tuple.EntityModeToTuplizerMapping;
 import org.hibernate.tuple.Tuplizer;
 import org.hibernate.tuple.component.PojoComponentTuplizer;
@@ -18,7 +20,6 @@ import org.hibernate.type.ComponentType;
 import org.hibernate.type.Type;
 import org.mwanzia.Application;
 import org.mwanzia.Interceptor;
-import org.mwanzia.JSON;
 import org.mwanzia.JSON.SerializationModifier;
 import org.mwanzia.MwanziaError;
 import org.mwanzia.SmallPropertyUtils;
@@ -33,16 +34,16 @@ import org.mwanzia.extras.jpa.JPAPlugin;
  * 
  */
 public abstract class HibernateJPA1Plugin extends JPAPlugin {
-    static {
-        JSON.addSerializationModifier(new SerializationModifier() {
+    public HibernateJPA1Plugin(Application application) {
+        super(application);
+        SerializationModifier lazyInitializationModifier = new SerializationModifier() {
             public <T> T modify(T original, Map<String, Object> serializationContext) {
                 return HibernatePluginUtil.handleLazyInitialization(original);
             }
-        });
-    }
-
-    public HibernateJPA1Plugin(Application application) {
-        super(application);
+        };
+        // Only proxies and persistent collections can be uninitialized
+        application.getModifiers().addSerializationModifier(HibernateProxy.class, lazyInitializationModifier);
+        application.getModifiers().addSerializationModifier(PersistentCollection.class, lazyInitializationModifier);
     }
 
     @Override
@@ -3,9 +3,10 @@ package org.mwanzia.extras.jpa.hibernate;
 import java.util.Map;
 
 import org.hibernate.Hibernate;
+import org.hibernate.collection.PersistentCollection;
+import org.hibernate.proxy.HibernateProxy;
 import org.mwanzia.Application;
 import org.mwanzia.Interceptor;
-import org.mwanzia.JSON;
 import org.mwanzia.JSON.SerializationModifier;
 import org.mwanzia.extras.jpa.JPA2Plugin;
 
@@ -17,16 +18,16 @@ import org.mwanzia.extras.jpa.JPA2Plugin;
  * 
  */
 public abstract class HibernateJPA2Plugin extends JPA2Plugin {
-    static {
-        JSON.addSerializationModifier(new SerializationModifier() {
+    public HibernateJPA2Plugin(Application application) {
+        super(application);
+        SerializationModifier lazyInitializationModifier = new SerializationModifier() {
             public <T> T modify(T original, Map<String, Object> serializationContext) {
                 return HibernatePluginUtil.handleLazyInitialization(original);
             }
-        });
-    }
-
-    public HibernateJPA2Plugin(Application application) {
-        super(application);
+        };
+        // Only proxies and persistent collections can be uninitialized
+        application.getModifiers().addSerializationModifier(HibernateProxy.class, lazyInitializationModifier);
+        application.getModifiers().addSerializationModifier(PersistentCollection.class, lazyInitializationModifier);
     }
 
     @Override
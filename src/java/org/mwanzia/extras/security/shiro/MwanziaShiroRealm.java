@@ -6,22 +6,46 @@ import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
+import org.mwanzia.InvocationContext;
 
 public class MwanziaShiroRealm extends AuthorizingRealm {
-    private static final ThreadLocal<ShiroSecuredApplication> APPLICATION = new ThreadLocal<ShiroSecuredApplication>();
+    // Set by the ShiroPlugin for each invocation
+    static final InvocationContext.Key<ShiroSecuredApplication> APPLICATION = new InvocationContext.Key<ShiroSecuredApplication>(
+            "shiroSecuredApplication");
+    // Set by setApplication(), for use outside of invocations
+    private static volatile ShiroSecuredApplication defaultApplication;
 
+    /**
+     * Set the application that the realm uses outside of remote invocations
+     * (within them, it uses the invoked application).
+     * 
+     * @deprecated the ShiroPlugin sets the application of each invocation, so
+     *             this is only needed to use the realm outside of invocations
+     */
+    @Deprecated
     public static void setApplication(ShiroSecuredApplication application) {
-        APPLICATION.set(application);
+        defaultApplication = application;
     }
 
     @Override
     protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
-        return APPLICATION.get().getAuthenticationInfo(token);
+        return getApplication().getAuthenticationInfo(token);
     }
 
     @Override
     protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
-        return APPLICATION.get().getAuthorizationInfo(principals);
+        return getApplication().getAuthorizationInfo(principals);
+    }
+
+    private ShiroSecuredApplication getApplication() {
+        InvocationContext context = InvocationContext.current();
+        ShiroSecuredApplication application = context != null ? context.get(APPLICATION) : null;
+        if (application == null)
+            application = defaultApplication;
+        if (application == null)
+            throw new IllegalStateException(
+                    "MwanziaShiroRealm needs a remote invocation or an application set with setApplication()");
+        return application;
     }
 
 }
@@ -1,6 +1,6 @@
 package org.mwanzia.extras.security.shiro;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -8,9 +8,12 @@ import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresRoles;
 import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.mwanzia.Application;
-import org.mwanzia.Interceptor;
+import org.mwanzia.InvocationContext;
+import org.mwanzia.InvocationStage;
 import org.mwanzia.Plugin;
+import org.mwanzia.RemoteMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,43 +39,67 @@ public class ShiroPlugin extends Plugin {
     }
 
     @Override
-    public Interceptor buildInterceptor() {
-        return new Interceptor() {
-            @Override
-            public void beforeInvocation(Class targetClass, Method method) throws Exception {
-                MwanziaShiroRealm.setApplication(application);
-                super.beforeInvocation(targetClass, method);
-            }
+    public Runnable propagateContext(Runnable invocation) {
+        // Process the invocation as the Subject bound to the calling thread
+        Subject subject = ThreadContext.getSubject();
+        return subject != null ? subject.associateWith(invocation) : invocation;
+    }
+
+    @Override
+    public Object getPrincipal(InvocationContext context) {
+        return SecurityUtils.getSubject().getPrincipal();
+    }
 
-            @Override
-            public Object[] prepareInvocation(Object target, Method method, Object[] arguments) throws Exception {
-                if (method.isAnnotationPresent(RequiresAuthentication.class)
-                        || method.isAnnotationPresent(RequiresRoles.class)) {
-                    Subject currentUser = SecurityUtils.getSubject();
-                    if (currentUser == null || !currentUser.isAuthenticated())
-                        throw new AuthenticationException("Please log in");
-                    if (method.isAnnotationPresent(RequiresRoles.class)) {
-                        for (String role : method.getAnnotation(RequiresRoles.class).value().split(",")) {
-                            role = role.trim();
-                            if (role.length() > 0 && !currentUser.hasRole(role.trim())) {
-                                throw new AuthorizationException("Missing required role: " + role);
-                            }
-                        }
-                    }
+    @Override
+    public InvocationStage buildStage(RemoteMethod remoteMethod) {
+        if (remoteMethod.isAnnotationPresent(RequiresAuthentication.class)
+                || remoteMethod.isAnnotationPresent(RequiresRoles.class)) {
+            List<String> roles = new ArrayList<String>();
+            if (remoteMethod.isAnnotationPresent(RequiresRoles.class)) {
+                for (String role : remoteMethod.getAnnotation(RequiresRoles.class).value().split(",")) {
+                    role = role.trim();
+                    if (role.length() > 0)
+                        roles.add(role);
                 }
-                return super.prepareInvocation(target, method, arguments);
             }
+            return new SecuredStage(roles.toArray(new String[roles.size()]));
+        }
+        return new RealmStage();
+    }
 
-            @Override
-            public void invocationSucceeded(Object target, Object result) throws Exception {
-                MwanziaShiroRealm.setApplication(null);
-                super.invocationSucceeded(target, result);
-            }
+    /**
+     * Makes the application available to the MwanziaShiroRealm.
+     */
+    private class RealmStage extends InvocationStage {
+        @Override
+        public void beforeInvocation(InvocationContext context) throws Exception {
+            context.set(MwanziaShiroRealm.APPLICATION, application);
+        }
+    }
 
-            public Throwable invocationFailed(Throwable exception) throws Exception {
-                MwanziaShiroRealm.setApplication(null);
-                return super.invocationFailed(exception);
+    /**
+     * Makes sure that the current user is authenticated and has the required
+     * roles.
+     */
+    private class SecuredStage extends RealmStage {
+        private final String[] roles;
+
+        private SecuredStage(String[] roles) {
+            this.roles = roles;
+        }
+
+        @Override
+        public Object[] prepareInvocation(InvocationContext context, Object target, Object[] arguments)
+                throws Exception {
+            Subject currentUser = SecurityUtils.getSubject();
+            if (currentUser == null || !currentUser.isAuthenticated())
+                throw new AuthenticationException("Please log in");
+            for (String role : roles) {
+                if (!currentUser.hasRole(role)) {
+                    throw new AuthorizationException("Missing required role: " + role);
+                }
             }
-        };
+            return arguments;
+        }
     }
 }
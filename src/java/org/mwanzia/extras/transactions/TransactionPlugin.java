@@ -3,8 +3,13 @@ package org.mwanzia.extras.transactions;
 import java.lang.reflect.Method;
 
 import org.mwanzia.Application;
-import org.mwanzia.Interceptor;
+import org.mwanzia.BatchInterceptor;
+import org.mwanzia.InvocationContext;
+import org.mwanzia.InvocationStage;
 import org.mwanzia.Plugin;
+import org.mwanzia.RemoteMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Plugin that handles transaction demarcation on calling a remote method.
@@ -15,67 +20,97 @@ import org.mwanzia.Plugin;
  *            type of transaction handle
  */
 public abstract class TransactionPlugin<T> extends Plugin {
-    private static final ThreadLocal CURRENT_TRANSACTION = new ThreadLocal();
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionPlugin.class);
+
+    // Transaction spanning an atomic batch, within which calls don't demarcate
+    // their own transactions
+    private final InvocationContext.Key<T> batchTransaction = new InvocationContext.Key<T>("batchTransaction");
+    // Transaction demarcated by a single call
+    private final InvocationContext.Key<T> currentTransaction = new InvocationContext.Key<T>("currentTransaction");
 
     public TransactionPlugin(Application application) {
         super(application);
     }
 
     @Override
-    public Interceptor buildInterceptor() {
-
-        return new Interceptor() {
+    public InvocationStage buildStage(RemoteMethod remoteMethod) {
+        Method method = remoteMethod.getMethod();
+        if (!requiresTransaction(method, method.getDeclaringClass()))
+            return null;
+        return new InvocationStage() {
             @Override
-            public void beforeInvocation(Class targetClass, Method method) throws Exception {
-                if (requiresTransaction(method, method.getDeclaringClass())) {
-                    CURRENT_TRANSACTION.set((T) beginTransaction());
+            public void beforeInvocation(final InvocationContext context) throws Exception {
+                if (context.get(batchTransaction) == null) {
+                    context.set(currentTransaction, beginTransaction());
+                    // Don't leave the transaction open if the invocation never
+                    // gets as far as succeeding or failing (e.g. because a later
+                    // stage's beforeInvocation() failed)
+                    context.onClose(new Runnable() {
+                        public void run() {
+                            T transaction = context.remove(currentTransaction);
+                            if (transaction != null) {
+                                try {
+                                    rollback(transaction);
+                                } catch (Exception e) {
+                                    LOGGER.error("Unable to roll back unfinished transaction", e);
+                                }
+                            }
+                        }
+                    });
                 }
-                super.beforeInvocation(targetClass, method);
             }
 
             @Override
-            public Object[] prepareInvocation(Object target, Method method, Object[] arguments) throws Exception {
-
-                return super.prepareInvocation(target, method, arguments);
+            public void invocationSucceeded(InvocationContext context, Object target, Object result)
+                    throws Exception {
+                T transaction = context.remove(currentTransaction);
+                if (transaction != null) {
+                    commit(transaction);
+                }
             }
 
             @Override
-            public void invocationSucceeded(Object target, Object result) throws Exception {
-                try {
-                    T currentTransaction = (T) CURRENT_TRANSACTION.get();
-                    if (currentTransaction != null) {
-                        commit(currentTransaction);
-                    }
-                } finally {
-                    CURRENT_TRANSACTION.set(null);
+            public Throwable invocationFailed(InvocationContext context, Throwable exception) throws Exception {
+                T transaction = context.remove(currentTransaction);
+                if (transaction != null) {
+                    rollback(transaction);
                 }
+                return exception;
             }
+        };
+    }
 
-            public Throwable invocationFailed(Throwable exception) throws Exception {
-                try {
-                    T currentTransaction = (T) CURRENT_TRANSACTION.get();
-                    if (currentTransaction != null) {
-                        rollback((T) CURRENT_TRANSACTION.get());
-                    }
-                    return exception;
-                } finally {
-                    CURRENT_TRANSACTION.set(null);
-                }
+    @Override
+    public BatchInterceptor buildBatchInterceptor() {
+        return new BatchInterceptor() {
+            @Override
+            public void beforeBatch() throws Exception {
+                getContext().set(batchTransaction, beginTransaction());
             }
 
-            private boolean requiresTransaction(Method method, Class clazz) {
-                boolean methodRequiresTransaction = method.isAnnotationPresent(RequiresTransaction.class);
-                boolean classRequiresTransaction = clazz.isAnnotationPresent(RequiresTransaction.class);
-                if (methodRequiresTransaction || classRequiresTransaction)
-                    return true;
-                Class superclass = clazz.getSuperclass();
-                if (superclass != null)
-                    return requiresTransaction(method, superclass);
-                return false;
+            @Override
+            public void batchSucceeded() throws Exception {
+                commit(getContext().get(batchTransaction));
+            }
+
+            @Override
+            public void batchFailed(Throwable exception) throws Exception {
+                rollback(getContext().get(batchTransaction));
             }
         };
     }
 
+    private boolean requiresTransaction(Method method, Class clazz) {
+        boolean methodRequiresTransaction = method.isAnnotationPresent(RequiresTransaction.class);
+        boolean classRequiresTransaction = clazz.isAnnotationPresent(RequiresTransaction.class);
+        if (methodRequiresTransaction || classRequiresTransaction)
+            return true;
+        Class superclass = clazz.getSuperclass();
+        if (superclass != null)
+            return requiresTransaction(method, superclass);
+        return false;
+    }
+
     /**
      * Begin a transaction.
      * 
@@ -14,11 +14,13 @@ import net.sf.oval.constraint.AssertValid;
 import net.sf.oval.guard.Guard;
 
 import org.mwanzia.Application;
-import org.mwanzia.Interceptor;
+import org.mwanzia.InvocationContext;
+import org.mwanzia.InvocationStage;
 import org.mwanzia.JSON;
 import org.mwanzia.MwanziaError;
 import org.mwanzia.Plugin;
 import org.mwanzia.PrettyPrinter;
+import org.mwanzia.RemoteMethod;
 import org.mwanzia.SmallPropertyUtils;
 import org.mwanzia.SmallPropertyUtils.Property;
 
@@ -46,17 +48,19 @@ public class ValidationPlugin extends Plugin {
     }
 
     @Override
-    public Interceptor buildInterceptor() {
-        return new Interceptor() {
+    public InvocationStage buildStage(RemoteMethod remoteMethod) {
+        if (skipValidation)
+            return null;
+        final Method method = remoteMethod.getMethod();
+        return new InvocationStage() {
             @Override
-            public Object[] prepareInvocation(Object target, Method method, Object[] arguments) throws Exception {
-                if (!skipValidation) {
-                    List<ConstraintViolation> violations = new MwanziaGuard().validateMethodParameters(target,
-                            method,
-                            arguments);
-                    if (violations.size() > 0) {
-                        throw new ValidationException(violations);
-                    }
+            public Object[] prepareInvocation(InvocationContext context, Object target, Object[] arguments)
+                    throws Exception {
+                List<ConstraintViolation> violations = new MwanziaGuard().validateMethodParameters(target,
+                        method,
+                        arguments);
+                if (violations.size() > 0) {
+                    throw new ValidationException(violations);
                 }
                 return arguments;
             }
@@ -123,7 +127,9 @@ public class ValidationPlugin extends Plugin {
                                     js.write(",").newline();
                                 js.write(String.format("%1$s: %2$s",
                                         annotationPropertyName,
-                                        application.serializeToJson(JSON.toJson(method.invoke(annotation), false))));
+                                        application.serializeToJson(JSON.toJson(method.invoke(annotation),
+                                                false,
+                                                application.getModifiers()))));
                                 firstProperty = false;
                             }
                         }
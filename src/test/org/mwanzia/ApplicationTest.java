@@ -0,0 +1,87 @@
+package org.mwanzia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ApplicationTest {
+    private static final Application application = new SerializingApplication();
+    private static final List<Object> serialized = new ArrayList<Object>();
+
+    @Test
+    public void serializesResponsesWithSerializeToJson() throws Exception {
+        serialized.clear();
+        Assert.assertEquals("Wrong response", "{\"result\":{\"@class\":\"" + Point.class.getName()
+                + "\",\"x\":1,\"y\":2},\"exception\":null}", application.invoke(Remotes.class.getName(), "point",
+                "{\"target\":null,\"arguments\":[1,2]}"));
+        Assert.assertEquals("Not serialized once", 1, serialized.size());
+        Map<String, Object> response = (Map<String, Object>) serialized.get(0);
+        Assert.assertTrue("Wrong result", response.get("result") instanceof Map);
+    }
+
+    public static class Point {
+        private int x;
+        private int y;
+
+        public int getX() {
+            return x;
+        }
+
+        public void setX(int x) {
+            this.x = x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public void setY(int y) {
+            this.y = y;
+        }
+    }
+
+    public static class Remotes {
+        @Remote
+        public static Point point(int x, int y) {
+            Point point = new Point();
+            point.setX(x);
+            point.setY(y);
+            return point;
+        }
+    }
+
+    /**
+     * Only implements serializeToJson(), not createJsonOutput().
+     */
+    public static class SerializingApplication extends Application {
+        private final ObjectMapper mapper = new ObjectMapper();
+
+        public SerializingApplication() {
+            super(false);
+            registerRemote(Remotes.class);
+        }
+
+        @Override
+        public String serializeToJson(Object object) {
+            serialized.add(object);
+            try {
+                return mapper.writeValueAsString(object);
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Map<String, Object> parseJson(String json) {
+            try {
+                return mapper.readValue(json, Map.class);
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+    }
+}
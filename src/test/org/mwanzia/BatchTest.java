@@ -0,0 +1,162 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mwanzia.extras.jackson.JacksonApplication;
+
+public class BatchTest {
+    private static final Application application = new TestApplication();
+    private static final List<String> events = new ArrayList<String>();
+    private static int counter;
+    private static int calls;
+    private static String failingPlugin;
+
+    @Before
+    public void setUp() {
+        events.clear();
+        counter = 0;
+        calls = 0;
+        failingPlugin = null;
+    }
+
+    @Test
+    public void processesIndependentCallsOnTheirOwn() throws Exception {
+        List<Map<String, Object>> results = invokeBatch(false, call("increment", "[]"), call("fail", "[]"), call(
+                "increment", "[1]"), call("increment", "[]"));
+        Assert.assertEquals("Wrong first result", 1, results.get(0).get("result"));
+        Assert.assertNotNull("Failed call succeeded", results.get(1).get("exception"));
+        Assert.assertNotNull("Call with wrong arguments succeeded", results.get(2).get("exception"));
+        Assert.assertEquals("Wrong last result", 2, results.get(3).get("result"));
+        Assert.assertNull("Wrong last exception", results.get(3).get("exception"));
+        Assert.assertEquals("Batch intercepted", Arrays.asList(), events);
+    }
+
+    @Test
+    public void commitsAtomicBatches() throws Exception {
+        List<Map<String, Object>> results = invokeBatch(true, call("increment", "[]"), call("increment", "[]"));
+        Assert.assertEquals("Wrong first result", 1, results.get(0).get("result"));
+        Assert.assertEquals("Wrong second result", 2, results.get(1).get("result"));
+        Assert.assertEquals("Wrong events", Arrays.asList("first.beforeBatch", "second.beforeBatch",
+                "third.beforeBatch", "first.batchSucceeded", "second.batchSucceeded", "third.batchSucceeded"),
+                events);
+        Assert.assertEquals("Not committed", 2, counter);
+    }
+
+    @Test
+    public void rollsBackAtomicBatchesWhenACallFails() throws Exception {
+        List<Map<String, Object>> results = invokeBatch(true, call("increment", "[]"), call("fail", "[]"), call(
+                "increment", "[]"));
+        for (Map<String, Object> result : results) {
+            Assert.assertNull("Failed batch returned a result", result.get("result"));
+            Assert.assertNotNull("Failed batch returned no exception", result.get("exception"));
+        }
+        Assert.assertEquals("Called after failure", 2, calls);
+        Assert.assertEquals("Wrong events", Arrays.asList("first.beforeBatch", "second.beforeBatch",
+                "third.beforeBatch", "first.batchFailed", "second.batchFailed", "third.batchFailed"), events);
+        Assert.assertEquals("Not rolled back", 0, counter);
+    }
+
+    @Test
+    public void rollsBackTheRestWhenBatchSucceededFails() throws Exception {
+        failingPlugin = "second";
+        List<Map<String, Object>> results = invokeBatch(true, call("increment", "[]"), call("increment", "[]"));
+        for (Map<String, Object> result : results) {
+            Assert.assertNull("Failed batch returned a result", result.get("result"));
+            Assert.assertNotNull("Failed batch returned no exception", result.get("exception"));
+        }
+        // The failing interceptor is responsible for itself
+        Assert.assertEquals("Wrong events", Arrays.asList("first.beforeBatch", "second.beforeBatch",
+                "third.beforeBatch", "first.batchSucceeded", "second.batchSucceeded", "third.batchFailed"), events);
+    }
+
+    private static String call(String method, String arguments) {
+        return "{\"targetClass\":\"" + Remotes.class.getName() + "\",\"method\":\"" + method
+                + "\",\"target\":null,\"arguments\":" + arguments + "}";
+    }
+
+    private static List<Map<String, Object>> invokeBatch(boolean atomic, String... calls) throws Exception {
+        StringBuilder batch = new StringBuilder("{\"atomic\":").append(atomic).append(",\"calls\":[");
+        for (int i = 0; i < calls.length; i++) {
+            if (i > 0)
+                batch.append(",");
+            batch.append(calls[i]);
+        }
+        batch.append("]}");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        application.invokeBatch(batch.toString(), out);
+        List<Map<String, Object>> results = new ObjectMapper().readValue(out.toString("UTF-8"), List.class);
+        Assert.assertEquals("Wrong number of results", calls.length, results.size());
+        return results;
+    }
+
+    public static class Remotes {
+        @Remote
+        public static int increment() {
+            calls++;
+            return ++counter;
+        }
+
+        @Remote
+        public static int fail() {
+            calls++;
+            throw new IllegalStateException("Failed");
+        }
+    }
+
+    /**
+     * Stands in for a transaction around the batch.
+     */
+    public static class RecordingPlugin extends Plugin {
+        private final String name;
+
+        public RecordingPlugin(Application application, String name) {
+            super(application);
+            this.name = name;
+        }
+
+        @Override
+        public BatchInterceptor buildBatchInterceptor() {
+            return new BatchInterceptor() {
+                private int counterBefore;
+
+                @Override
+                public void beforeBatch() throws Exception {
+                    events.add(name + ".beforeBatch");
+                    counterBefore = counter;
+                }
+
+                @Override
+                public void batchSucceeded() throws Exception {
+                    events.add(name + ".batchSucceeded");
+                    if (name.equals(failingPlugin)) {
+                        counter = counterBefore;
+                        throw new IllegalStateException("Unable to commit");
+                    }
+                }
+
+                @Override
+                public void batchFailed(Throwable exception) throws Exception {
+                    events.add(name + ".batchFailed");
+                    counter = counterBefore;
+                }
+            };
+        }
+    }
+
+    public static class TestApplication extends JacksonApplication {
+        public TestApplication() {
+            registerRemote(Remotes.class);
+            registerPlugin(new RecordingPlugin(this, "first"));
+            registerPlugin(new RecordingPlugin(this, "second"));
+            registerPlugin(new RecordingPlugin(this, "third"));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mwanzia.extras.jackson.JacksonApplication;
+
+public class CoalescerTest {
+    private static final AtomicInteger calls = new AtomicInteger();
+    private static volatile CountDownLatch started;
+    private static volatile CountDownLatch release;
+
+    private Application application;
+
+    @Before
+    public void setUp() {
+        application = new TestApplication();
+        calls.set(0);
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        application.getMetrics().unregister();
+        application.destroy();
+    }
+
+    @Test
+    public void joinsInFlightInvocations() {
+        Coalescer coalescer = new Coalescer();
+        RemoteFuture<Map<String, Object>> first = new RemoteFuture<Map<String, Object>>();
+        RemoteFuture<Map<String, Object>> second = new RemoteFuture<Map<String, Object>>();
+        Assert.assertNull("First invocation not in flight", coalescer.join("key", first));
+        Assert.assertSame("Didn't join in-flight invocation", first, coalescer.join("key", second));
+        Assert.assertNull("Joined invocation with another key", coalescer.join("other", second));
+        first.complete(Collections.<String, Object> emptyMap());
+        Assert.assertNull("Completed invocation still in flight", coalescer.join("key", second));
+        second.fail(new IllegalStateException());
+        Assert.assertNull("Failed invocation still in flight", coalescer.join("other",
+                new RemoteFuture<Map<String, Object>>()));
+    }
+
+    @Test
+    public void runsTimeouts() throws InterruptedException {
+        Coalescer coalescer = new Coalescer();
+        final CountDownLatch ran = new CountDownLatch(1);
+        Assert.assertNotNull("Not scheduled", coalescer.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, 10));
+        Assert.assertTrue("Timeout didn't run", ran.await(5, TimeUnit.SECONDS));
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void doesNotRunCancelledTimeouts() throws InterruptedException {
+        Coalescer coalescer = new Coalescer();
+        final CountDownLatch ran = new CountDownLatch(1);
+        coalescer.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, 50).cancel();
+        Assert.assertFalse("Cancelled timeout ran", ran.await(200, TimeUnit.MILLISECONDS));
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void doesNotScheduleAfterShutdown() {
+        Coalescer coalescer = new Coalescer();
+        coalescer.shutdown();
+        Assert.assertNull("Scheduled after shutdown", coalescer.schedule(new Runnable() {
+            public void run() {
+            }
+        }, 10));
+    }
+
+    @Test
+    public void coalescesConcurrentCalls() throws Exception {
+        Caller first = new Caller("blocking");
+        first.start();
+        Assert.assertTrue("First call didn't start", started.await(5, TimeUnit.SECONDS));
+        Caller second = new Caller("blocking");
+        second.start();
+        MethodMetrics metrics = application.getMetrics().forMethod(
+                application.lookupRemoteMethod(Remotes.class.getName(), "blocking"));
+        for (int i = 0; i < 500 && metrics.getCoalescedCalls() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Second call not coalesced", 1, metrics.getCoalescedCalls());
+        release.countDown();
+        first.join(5000);
+        second.join(5000);
+        Assert.assertEquals("Wrong first result", "{\"result\":1,\"exception\":null}", first.response);
+        Assert.assertEquals("Wrong second result", first.response, second.response);
+        Assert.assertEquals("Wrong number of calls", 1, calls.get());
+        // Once the call is done, the next one invokes the method again
+        Assert.assertEquals("Wrong next result", "{\"result\":2,\"exception\":null}", application.invoke(
+                Remotes.class.getName(), "blocking", "{\"target\":null,\"arguments\":[]}"));
+    }
+
+    @Test
+    public void timesOutWaitingCalls() throws Exception {
+        Caller first = new Caller("timingOut");
+        first.start();
+        Assert.assertTrue("First call didn't start", started.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        String response = application.invoke(Remotes.class.getName(), "timingOut",
+                "{\"target\":null,\"arguments\":[]}");
+        Assert.assertTrue("Didn't time out: " + response, response.startsWith("{\"result\":null,\"exception\":{"));
+        Assert.assertTrue("Timed out too early", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        release.countDown();
+        first.join(5000);
+        Assert.assertEquals("Wrong first result", "{\"result\":1,\"exception\":null}", first.response);
+    }
+
+    @Test
+    public void doesNotCoalesceCallsInAtomicBatches() throws Exception {
+        Caller first = new Caller("blocking");
+        first.start();
+        Assert.assertTrue("First call didn't start", started.await(5, TimeUnit.SECONDS));
+        Caller batch = new Caller("blocking", true);
+        batch.start();
+        for (int i = 0; i < 500 && calls.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Batched call not invoked", 2, calls.get());
+        release.countDown();
+        first.join(5000);
+        batch.join(5000);
+        Assert.assertEquals("Wrong batch result", "[{\"result\":2,\"exception\":null}]", batch.response);
+        Assert.assertEquals("Batched call coalesced", 0, application.getMetrics().forMethod(
+                application.lookupRemoteMethod(Remotes.class.getName(), "blocking")).getCoalescedCalls());
+    }
+
+    private class Caller extends Thread {
+        private final String method;
+        private final boolean atomicBatch;
+        private volatile String response;
+
+        Caller(String method) {
+            this(method, false);
+        }
+
+        Caller(String method, boolean atomicBatch) {
+            this.method = method;
+            this.atomicBatch = atomicBatch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (atomicBatch) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    application.invokeBatch("{\"atomic\":true,\"calls\":[{\"targetClass\":\""
+                            + Remotes.class.getName() + "\",\"method\":\"" + method
+                            + "\",\"target\":null,\"arguments\":[]}]}", out).await();
+                    response = out.toString("UTF-8");
+                } else {
+                    response = application.invoke(Remotes.class.getName(), method,
+                            "{\"target\":null,\"arguments\":[]}");
+                }
+            } catch (Exception e) {
+                response = e.toString();
+            }
+        }
+    }
+
+    public static class Remotes {
+        @Remote
+        @Coalesce
+        public static int blocking() throws InterruptedException {
+            return block();
+        }
+
+        @Remote
+        @Coalesce(timeout = 50)
+        public static int timingOut() throws InterruptedException {
+            return block();
+        }
+
+        private static int block() throws InterruptedException {
+            int call = calls.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return call;
+        }
+    }
+
+    public static class TestApplication extends JacksonApplication {
+        public TestApplication() {
+            registerRemote(Remotes.class);
+        }
+    }
+}
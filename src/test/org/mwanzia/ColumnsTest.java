@@ -0,0 +1,79 @@
+package org.mwanzia;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnsTest {
+    private static final ModifierRegistry modifiers = new ModifierRegistry(null);
+
+    static {
+        modifiers.addSerializationModifier(Secret.class, new JSON.SerializationModifier() {
+            public <T> T modify(T original, Map<String, Object> serializationContext) throws Exception {
+                return (T) new Point(0, 0);
+            }
+        });
+    }
+
+    @Test
+    public void writesRowsOfOneClassInColumns() throws IOException {
+        Assert.assertEquals("Wrong columns", "{\"@columns\":\"" + Point.class.getName()
+                + "\",\"names\":[\"x\",\"y\"],\"values\":[[1,0],[2,0]]}", toJson(Arrays.asList(new Point(1, 2),
+                new Secret())));
+    }
+
+    @Test
+    public void modifiesEveryRowAfterALeadingNull() throws IOException {
+        Assert.assertEquals("Wrong rows", "[null," + point(0, 0) + "," + point(0, 0) + "]", toJson(Arrays.asList(
+                null, new Secret(), new Secret())));
+    }
+
+    @Test
+    public void modifiesEveryRowOfMixedClasses() throws IOException {
+        Assert.assertEquals("Wrong rows", "[\"text\"," + point(0, 0) + "," + point(0, 0) + "]", toJson(Arrays
+                .asList("text", new Secret(), new Secret())));
+    }
+
+    private static String point(int x, int y) {
+        return "{\"@class\":\"" + Point.class.getName() + "\",\"x\":" + x + ",\"y\":" + y + "}";
+    }
+
+    private static String toJson(Object rows) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter out = new JsonWriter(json);
+        JSON.writeJson(new Columns(rows), false, out, modifiers);
+        out.flush();
+        return json.toString();
+    }
+
+    public static final class Point {
+        private final int x;
+        private final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+    }
+
+    /**
+     * Replaced by a Point when serialized.
+     */
+    public static final class Secret {
+        public String getValue() {
+            return "secret";
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.mwanzia;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mwanzia.extras.jackson.JacksonApplication;
+
+public class InterceptorTest {
+    private static final Application application = new TestApplication();
+    private static final List<String> events = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        events.clear();
+    }
+
+    @Test
+    public void closesContextWhenBeforeInvocationFails() throws Exception {
+        try {
+            application.invoke(Remotes.class.getName(), "rejected", "{\"target\":null,\"arguments\":[]}");
+            Assert.fail("Invocation wasn't rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Wrong exception", "Rejected", e.getMessage());
+        }
+        Assert.assertEquals("Wrong events", Arrays.asList("opening.beforeInvocation", "rejecting.beforeInvocation",
+                "opening.closed"), events);
+    }
+
+    @Test
+    public void runsLegacyInterceptors() throws Exception {
+        Assert.assertEquals("Wrong response", "{\"result\":106,\"exception\":null}", application.invoke(
+                Remotes.class.getName(), "add", "{\"target\":null,\"arguments\":[1,2]}"));
+        Assert.assertEquals("Wrong events", Arrays.asList("opening.beforeInvocation", "rejecting.beforeInvocation",
+                "recording.beforeInvocation", "recording.prepareInvocation:add", "add",
+                "recording.replaceResult:add", "recording.invocationSucceeded:add", "opening.closed"), events);
+    }
+
+    @Test
+    public void runsLegacyInterceptorsOnFailure() throws Exception {
+        String response = application.invoke(Remotes.class.getName(), "fail", "{\"target\":null,\"arguments\":[]}");
+        Assert.assertTrue("Exception not replaced: " + response, response.contains("Replaced"));
+        Assert.assertEquals("Wrong events", Arrays.asList("opening.beforeInvocation", "rejecting.beforeInvocation",
+                "recording.beforeInvocation", "recording.prepareInvocation:fail", "fail",
+                "recording.invocationFailed:fail", "opening.closed"), events);
+    }
+
+    public static class Remotes {
+        @Remote
+        public static int rejected() {
+            events.add("rejected");
+            return 1;
+        }
+
+        @Remote
+        public static int add(int a, int b) {
+            events.add("add");
+            return a + b;
+        }
+
+        @Remote
+        public static int fail() {
+            events.add("fail");
+            throw new IllegalStateException("Failed");
+        }
+    }
+
+    /**
+     * Opens a resource that is released when the invocation's context is
+     * closed.
+     */
+    public static class OpeningPlugin extends Plugin {
+        public OpeningPlugin(Application application) {
+            super(application);
+        }
+
+        @Override
+        public Interceptor buildInterceptor() {
+            return new Interceptor() {
+                @Override
+                public void beforeInvocation(Class targetClass, Method method) throws Exception {
+                    events.add("opening.beforeInvocation");
+                    getContext().onClose(new Runnable() {
+                        public void run() {
+                            events.add("opening.closed");
+                        }
+                    });
+                }
+            };
+        }
+    }
+
+    public static class RejectingPlugin extends Plugin {
+        public RejectingPlugin(Application application) {
+            super(application);
+        }
+
+        @Override
+        public Interceptor buildInterceptor() {
+            return new Interceptor() {
+                @Override
+                public void beforeInvocation(Class targetClass, Method method) throws Exception {
+                    events.add("rejecting.beforeInvocation");
+                    if ("rejected".equals(method.getName()))
+                        throw new IllegalStateException("Rejected");
+                }
+            };
+        }
+    }
+
+    /**
+     * Overrides all of the callbacks of its Interceptors, which keep state
+     * for the duration of their invocation.
+     */
+    public static class RecordingPlugin extends Plugin {
+        public RecordingPlugin(Application application) {
+            super(application);
+        }
+
+        @Override
+        public Interceptor buildInterceptor() {
+            return new Interceptor() {
+                private String methodName;
+
+                @Override
+                public void beforeInvocation(Class targetClass, Method method) throws Exception {
+                    events.add("recording.beforeInvocation");
+                    methodName = method.getName();
+                }
+
+                @Override
+                public Object[] prepareInvocation(Object target, Method method, Object[] arguments)
+                        throws Exception {
+                    events.add("recording.prepareInvocation:" + methodName);
+                    Object[] prepared = arguments.clone();
+                    for (int i = 0; i < prepared.length; i++) {
+                        prepared[i] = (Integer) prepared[i] * 2;
+                    }
+                    return prepared;
+                }
+
+                @Override
+                public Object replaceResult(Object result) throws Exception {
+                    events.add("recording.replaceResult:" + methodName);
+                    return (Integer) result + 100;
+                }
+
+                @Override
+                public void invocationSucceeded(Object target, Object result) throws Exception {
+                    events.add("recording.invocationSucceeded:" + methodName);
+                }
+
+                @Override
+                public Throwable invocationFailed(Throwable exception) throws Exception {
+                    events.add("recording.invocationFailed:" + methodName);
+                    return new MwanziaException("Replaced");
+                }
+            };
+        }
+    }
+
+    public static class TestApplication extends JacksonApplication {
+        public TestApplication() {
+            registerRemote(Remotes.class);
+            registerPlugin(new OpeningPlugin(this));
+            registerPlugin(new RejectingPlugin(this));
+            registerPlugin(new RecordingPlugin(this));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.mwanzia;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mwanzia.extras.jackson.JacksonApplication;
+
+public class InvocationTest {
+    private static final Application application = new TestApplication();
+
+    @Test
+    public void readsCallsFromStreams() throws Exception {
+        Assert.assertEquals("Wrong form result", "{\"result\":5,\"exception\":null}", application.invoke(
+                Remotes.class.getName(), "add", "{\"target\":null,\"arguments\":[2,3]}"));
+        Assert.assertEquals("Wrong stream result", "{\"result\":5,\"exception\":null}", invokeStream("add",
+                "{\"fields\":null,\"arguments\":[2,3],\"target\":null}"));
+    }
+
+    @Test
+    public void rejectsWrongNumberOfArguments() throws Exception {
+        String[] arguments = { "[]", "[2]", "[2,3,4]" };
+        for (String argument : arguments) {
+            try {
+                application.invoke(Remotes.class.getName(), "add", "{\"target\":null,\"arguments\":" + argument
+                        + "}");
+                Assert.fail("Form call accepted arguments " + argument);
+            } catch (MwanziaException e) {
+                // Expected
+            }
+            try {
+                invokeStream("add", "{\"target\":null,\"arguments\":" + argument + "}");
+                Assert.fail("Stream call accepted arguments " + argument);
+            } catch (MwanziaException e) {
+                // Expected
+            }
+        }
+        try {
+            invokeStream("add", "{\"target\":null}");
+            Assert.fail("Stream call accepted missing arguments");
+        } catch (MwanziaException e) {
+            // Expected
+        }
+    }
+
+    private String invokeStream(String method, String call) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        application.invoke(Remotes.class.getName(), method, new ByteArrayInputStream(call.getBytes("UTF-8")), out);
+        return out.toString("UTF-8");
+    }
+
+    public static class Remotes {
+        @Remote
+        public static int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    public static class TestApplication extends JacksonApplication {
+        public TestApplication() {
+            registerRemote(Remotes.class);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.mwanzia;
+
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InvokerFactoryTest {
+    @Test
+    public void invokesMethods() throws Throwable {
+        Invoker invoker = InvokerFactory.generate(method("add"));
+        Assert.assertEquals("Wrong result", Long.valueOf(5), invoker.invoke(new Target(), new Object[] { 2, 3L }));
+        Assert.assertEquals("Wrong array result", "b", InvokerFactory.generate(method("last")).invoke(null,
+                new Object[] { new String[] { "a", "b" } }));
+        Assert.assertNull("Wrong void result", InvokerFactory.generate(method("nothing")).invoke(new Target(),
+                null));
+    }
+
+    @Test
+    public void rejectsArgumentsLikeReflection() throws Throwable {
+        assertRejected(method("add"), new Target(), new Object[] { null, 3L });
+        assertRejected(method("add"), new Target(), new Object[] { "2", 3L });
+        assertRejected(method("add"), new Target(), new Object[] { 2 });
+        assertRejected(method("add"), "not a target", new Object[] { 2, 3L });
+        assertRejected(method("last"), null, new Object[] { new Integer[] { 1 } });
+        assertRejected(method("nothing"), new Target(), new Object[] { 1 });
+    }
+
+    @Test
+    public void passesExceptionsThrough() throws Throwable {
+        try {
+            InvokerFactory.generate(method("fail")).invoke(null, new Object[0]);
+            Assert.fail("Didn't throw");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Wrong exception", "Failed", e.getMessage());
+        }
+    }
+
+    private static void assertRejected(Method method, Object target, Object[] arguments) throws Throwable {
+        assertRejected(InvokerFactory.generate(method), target, arguments);
+        assertRejected(InvokerFactory.reflective(method), target, arguments);
+    }
+
+    private static void assertRejected(Invoker invoker, Object target, Object[] arguments) throws Throwable {
+        try {
+            invoker.invoke(target, arguments);
+            Assert.fail("Accepted invalid arguments");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static Method method(String name) {
+        for (Method method : Target.class.getMethods()) {
+            if (method.getName().equals(name))
+                return method;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    public static class Target {
+        public long add(int a, long b) {
+            return a + b;
+        }
+
+        public static String last(String[] values) {
+            return values[values.length - 1];
+        }
+
+        public void nothing() {
+        }
+
+        public static void fail() {
+            throw new IllegalStateException("Failed");
+        }
+    }
+}
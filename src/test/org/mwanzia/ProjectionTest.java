@@ -0,0 +1,94 @@
+package org.mwanzia;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProjectionTest {
+    @Test
+    public void includesEverythingWithoutFields() {
+        Assert.assertNull("Null fields", Projection.parse(null));
+        Assert.assertNull("Empty fields", Projection.parse(Collections.<String> emptyList()));
+        Assert.assertSame("Child of everything", Projection.ALL, Projection.ALL.child("anything"));
+    }
+
+    @Test
+    public void parsesPaths() {
+        Projection projection = Projection.parse(Arrays.asList("id", " name ", "owner.lastName", "owner.address.city"));
+        Assert.assertSame("Wrong id", Projection.ALL, projection.child("id"));
+        Assert.assertSame("Wrong trimmed name", Projection.ALL, projection.child("name"));
+        Assert.assertNull("Unexpected child", projection.child("balance"));
+        Projection owner = projection.child("owner");
+        Assert.assertNotSame("Whole owner", Projection.ALL, owner);
+        Assert.assertSame("Wrong owner.lastName", Projection.ALL, owner.child("lastName"));
+        Assert.assertNull("Unexpected owner.firstName", owner.child("firstName"));
+        Assert.assertSame("Wrong owner.address.city", Projection.ALL, owner.child("address").child("city"));
+    }
+
+    @Test
+    public void includesWholePropertiesOverTheirPaths() {
+        Projection before = Projection.parse(Arrays.asList("owner", "owner.lastName"));
+        Projection after = Projection.parse(Arrays.asList("owner.lastName", "owner"));
+        Assert.assertSame("Wrong owner before its path", Projection.ALL, before.child("owner"));
+        Assert.assertSame("Wrong owner after its path", Projection.ALL, after.child("owner"));
+        Assert.assertEquals("Different projections", before, after);
+    }
+
+    @Test
+    public void comparesByFields() {
+        Projection projection = Projection.parse(Arrays.asList("id", "owner.lastName"));
+        Projection same = Projection.parse(Arrays.asList("owner.lastName", "id", "id"));
+        Projection other = Projection.parse(Arrays.asList("id", "owner.firstName"));
+        Assert.assertEquals("Different projections", projection, same);
+        Assert.assertEquals("Different hash codes", projection.hashCode(), same.hashCode());
+        Assert.assertFalse("Equal projections", projection.equals(other));
+        Assert.assertFalse("Equal to everything", projection.equals(Projection.ALL));
+    }
+
+    @Test
+    public void writesOnlyIncludedProperties() throws IOException {
+        Map<String, Object> owner = new LinkedHashMap<String, Object>();
+        owner.put("firstName", "Ada");
+        owner.put("lastName", "Lovelace");
+        Map<String, Object> account = new LinkedHashMap<String, Object>();
+        account.put("id", 1);
+        account.put("balance", 100);
+        account.put("owner", owner);
+        Projection projection = Projection.parse(Arrays.asList("id", "owner.lastName"));
+        Assert.assertEquals("Wrong map", "{\"id\":1,\"owner\":{\"lastName\":\"Lovelace\"}}", toJson(account,
+                projection));
+        Assert.assertEquals("Wrong list", "[{\"id\":1,\"owner\":{\"lastName\":\"Lovelace\"}},null]", toJson(Arrays
+                .asList(account, null), projection));
+    }
+
+    @Test
+    public void doesNotReadExcludedProperties() throws IOException {
+        Projection projection = Projection.parse(Arrays.asList("name"));
+        Assert.assertEquals("Wrong bean", "{\"@class\":\"" + Bean.class.getName() + "\",\"name\":\"included\"}",
+                toJson(new Bean(), projection));
+    }
+
+    private static String toJson(Object value, Projection projection) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter out = new JsonWriter(json);
+        JSON.writeJson(new Projected(value, projection), false, out);
+        out.flush();
+        return json.toString();
+    }
+
+    public static final class Bean {
+        public String getName() {
+            return "included";
+        }
+
+        public String getExpensive() {
+            throw new IllegalStateException("Read an excluded property");
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.mwanzia;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mwanzia.extras.jackson.JacksonApplication;
+
+public class ResultCacheTest {
+    private static Application application;
+    private static int calls;
+
+    @Before
+    public void setUp() {
+        application = new TestApplication();
+        calls = 0;
+    }
+
+    @After
+    public void tearDown() {
+        application.getMetrics().unregister();
+        application.destroy();
+    }
+
+    @Test
+    public void cachesResults() throws Exception {
+        Assert.assertEquals("Wrong first call", result(1), call("count", "[1]"));
+        Assert.assertEquals("Not cached", result(1), call("count", "[1]"));
+        Assert.assertEquals("Wrong other argument", result(2), call("count", "[2]"));
+        Assert.assertEquals("Wrong number of calls", 2, calls);
+        MethodMetrics metrics = application.getMetrics().forMethod(method("count"));
+        Assert.assertEquals("Wrong hits", 1, metrics.getCacheHits());
+        Assert.assertEquals("Wrong misses", 2, metrics.getCacheMisses());
+        Assert.assertEquals("Wrong size", 2, application.getResultCache().size(method("count")));
+    }
+
+    @Test
+    public void cachesEachProjection() throws Exception {
+        call("count", "[1]");
+        callWithFields("count", "[1]", "[\"id\"]");
+        callWithFields("count", "[1]", "[\"id\"]");
+        Assert.assertEquals("Wrong number of calls", 2, calls);
+        Assert.assertEquals("Wrong size", 2, application.getResultCache().size(method("count")));
+    }
+
+    @Test
+    public void doesNotCacheExceptions() throws Exception {
+        call("fail", "[]");
+        call("fail", "[]");
+        Assert.assertEquals("Wrong number of calls", 2, calls);
+        Assert.assertEquals("Wrong size", 0, application.getResultCache().size(method("fail")));
+    }
+
+    @Test
+    public void expiresResults() throws Exception {
+        Assert.assertEquals("Wrong first call", result(1), call("expiring", "[]"));
+        Assert.assertEquals("Not cached", result(1), call("expiring", "[]"));
+        Thread.sleep(100);
+        Assert.assertEquals("Not expired", result(2), call("expiring", "[]"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        call("bounded", "[1]");
+        call("bounded", "[2]");
+        call("bounded", "[1]");
+        call("bounded", "[3]");
+        Assert.assertEquals("Wrong size", 2, application.getResultCache().size(method("bounded")));
+        Assert.assertEquals("Wrong number of calls", 3, calls);
+        call("bounded", "[1]");
+        Assert.assertEquals("Evicted recently used result", 3, calls);
+        call("bounded", "[2]");
+        Assert.assertEquals("Didn't evict least recently used result", 4, calls);
+    }
+
+    @Test
+    public void invalidatesEverything() throws Exception {
+        call("count", "[1]");
+        call("bounded", "[1]");
+        application.getResultCache().invalidate();
+        call("count", "[1]");
+        call("bounded", "[1]");
+        Assert.assertEquals("Wrong number of calls", 4, calls);
+    }
+
+    @Test
+    public void invalidatesMethods() throws Exception {
+        call("count", "[1]");
+        call("count", "[2]");
+        call("bounded", "[1]");
+        application.getResultCache().invalidate(Remotes.class, "count");
+        Assert.assertEquals("Wrong size", 0, application.getResultCache().size(method("count")));
+        Assert.assertEquals("Invalidated other method", 1, application.getResultCache().size(method("bounded")));
+    }
+
+    @Test
+    public void invalidatesCalls() throws Exception {
+        call("count", "[1]");
+        call("count", "[2]");
+        callWithFields("count", "[1]", "[\"id\"]");
+        // Arguments match whatever type of number they are
+        application.getResultCache().invalidate(Remotes.class, "count", null, 1L);
+        Assert.assertEquals("Wrong size", 1, application.getResultCache().size(method("count")));
+        application.getResultCache().invalidate(Remotes.class, "count", null, Integer.valueOf(2));
+        Assert.assertEquals("Wrong size", 0, application.getResultCache().size(method("count")));
+        application.getResultCache().invalidate(Remotes.class, "count", null, 3);
+    }
+
+    @Test
+    public void invalidatesCallsOnTargets() throws Exception {
+        String call = "{\"target\":{\"@class\":\"" + Account.class.getName() + "\",\"id\":3},\"arguments\":[7]}";
+        String first = application.invoke(Account.class.getName(), "balance", call);
+        Assert.assertEquals("Not cached", first, application.invoke(Account.class.getName(), "balance", call));
+        Account other = new Account();
+        other.setId(4);
+        application.getResultCache().invalidate(Account.class, "balance", other, 7);
+        Assert.assertEquals("Invalidated other target", first, application.invoke(Account.class.getName(),
+                "balance", call));
+        Account account = new Account();
+        account.setId(3);
+        application.getResultCache().invalidate(Account.class, "balance", account, 7);
+        Assert.assertFalse("Not invalidated", first.equals(application.invoke(Account.class.getName(), "balance",
+                call)));
+        Assert.assertEquals("Wrong number of calls", 2, calls);
+    }
+
+    @Test
+    public void doesNotCacheResultsInvalidatedInFlight() throws Exception {
+        Assert.assertEquals("Wrong first call", result(1), call("invalidating", "[]"));
+        Assert.assertEquals("Cached stale result", result(2), call("invalidating", "[]"));
+        Assert.assertEquals("Wrong size", 0, application.getResultCache().size(method("invalidating")));
+    }
+
+    @Test
+    public void doesNotCacheResultsOfAtomicBatches() throws Exception {
+        String call = "{\"targetClass\":\"" + Remotes.class.getName()
+                + "\",\"method\":\"count\",\"target\":null,\"arguments\":[1]}";
+        application.invokeBatch("{\"atomic\":true,\"calls\":[" + call + "]}", new ByteArrayOutputStream());
+        Assert.assertEquals("Cached result of atomic batch", 0, application.getResultCache().size(method("count")));
+        application.invokeBatch("{\"atomic\":false,\"calls\":[" + call + "]}", new ByteArrayOutputStream());
+        Assert.assertEquals("Didn't cache result of independent batch", 1, application.getResultCache().size(
+                method("count")));
+        Assert.assertEquals("Wrong number of calls", 2, calls);
+    }
+
+    private static String call(String method, String arguments) throws Exception {
+        return application.invoke(Remotes.class.getName(), method, "{\"target\":null,\"arguments\":" + arguments
+                + "}");
+    }
+
+    private static String callWithFields(String method, String arguments, String fields) throws Exception {
+        return application.invoke(Remotes.class.getName(), method, "{\"target\":null,\"arguments\":" + arguments
+                + ",\"fields\":" + fields + "}");
+    }
+
+    private static String result(int result) {
+        return "{\"result\":" + result + ",\"exception\":null}";
+    }
+
+    private static RemoteMethod method(String name) {
+        return application.lookupRemoteMethod(Remotes.class.getName(), name);
+    }
+
+    public static class Remotes {
+        @Remote
+        @Cacheable
+        public static int count(int x) {
+            return ++calls;
+        }
+
+        @Remote
+        @Cacheable
+        public static int fail() {
+            calls++;
+            throw new IllegalStateException("Failed");
+        }
+
+        @Remote
+        @Cacheable(ttl = 50)
+        public static int expiring() {
+            return ++calls;
+        }
+
+        @Remote
+        @Cacheable(maxEntries = 2)
+        public static int bounded(int x) {
+            return ++calls;
+        }
+
+        @Remote
+        @Cacheable
+        public static int invalidating() {
+            application.getResultCache().invalidate(Remotes.class, "invalidating");
+            return ++calls;
+        }
+    }
+
+    public static class Account {
+        private int id;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        @Remote
+        @Cacheable
+        public int balance(int x) {
+            return id * 100 + ++calls;
+        }
+    }
+
+    public static class TestApplication extends JacksonApplication {
+        public TestApplication() {
+            registerRemote(Remotes.class);
+            registerRemote(Account.class);
+        }
+    }
+}
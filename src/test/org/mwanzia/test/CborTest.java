@@ -0,0 +1,186 @@
+package org.mwanzia.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mwanzia.CborReader;
+import org.mwanzia.CborWriter;
+import org.mwanzia.JSON;
+import org.mwanzia.JsonInput;
+import org.mwanzia.JsonWriter;
+
+public class CborTest {
+    @Test
+    public void roundTripsIntegers() throws IOException {
+        long[] values = { 0, 1, 23, 24, 255, 256, 65535, 65536, 4294967295L, 4294967296L, Long.MAX_VALUE, -1, -24,
+                -25, -256, -257, -65536, -65537, -4294967296L, -4294967297L, Long.MIN_VALUE };
+        for (long value : values) {
+            Assert.assertEquals("Wrong round trip of " + value, value, ((Number) roundTrip(value)).longValue());
+        }
+        Assert.assertEquals("Wrong int type", Integer.valueOf(5), roundTrip(5));
+        Assert.assertEquals("Wrong long type", Long.valueOf(1L << 40), roundTrip(1L << 40));
+    }
+
+    @Test
+    public void encodesIntegersInTheirShortestForm() throws IOException {
+        assertEncoding(new int[] { 0x17 }, encode(23));
+        assertEncoding(new int[] { 0x18, 0x18 }, encode(24));
+        assertEncoding(new int[] { 0x19, 0x01, 0x00 }, encode(256));
+        assertEncoding(new int[] { 0x1a, 0x00, 0x01, 0x00, 0x00 }, encode(65536));
+        assertEncoding(new int[] { 0x1b, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00 }, encode(4294967296L));
+        assertEncoding(new int[] { 0x20 }, encode(-1));
+        assertEncoding(new int[] { 0x38, 0x63 }, encode(-100));
+    }
+
+    @Test
+    public void roundTripsBignums() throws IOException {
+        String[] values = { "18446744073709551615", "18446744073709551616", "-18446744073709551616",
+                "-18446744073709551617", "123456789012345678901234567890", "-123456789012345678901234567890" };
+        for (String value : values) {
+            Assert.assertEquals("Wrong round trip of " + value, new BigInteger(value), roundTrip(new BigInteger(value)));
+        }
+        // Bignums that fit into a long come back as the smallest type
+        Assert.assertEquals("Wrong small bignum", Integer.valueOf(7), roundTrip(BigInteger.valueOf(7)));
+        Assert.assertEquals("Wrong long bignum", Long.valueOf(Long.MIN_VALUE), roundTrip(BigInteger
+                .valueOf(Long.MIN_VALUE)));
+        // 2^64 is tag 2 with the bytes 01 00 00 00 00 00 00 00 00
+        assertEncoding(new int[] { 0xc2, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0 }, encode(BigInteger.ONE.shiftLeft(64)));
+    }
+
+    @Test
+    public void roundTripsFloats() throws IOException {
+        Assert.assertEquals("Wrong float", 0.1, roundTrip(0.1f));
+        Assert.assertEquals("Wrong double", 0.1, roundTrip(0.1));
+        Assert.assertEquals("Wrong pi", Math.PI, roundTrip(Math.PI));
+        Assert.assertEquals("Wrong negative", -1.5, roundTrip(-1.5));
+        Assert.assertEquals("Wrong infinity", Double.POSITIVE_INFINITY, roundTrip(Double.POSITIVE_INFINITY));
+        Assert.assertTrue("Wrong NaN", Double.isNaN((Double) roundTrip(Double.NaN)));
+        // Lossless single precision floats are written as such
+        assertEncoding(new int[] { 0xfa, 0x3f, 0xc0, 0x00, 0x00 }, encode(1.5));
+        Assert.assertEquals("0.1 not written as a double", 9, encode(0.1).length);
+        Assert.assertEquals("0.1f not written as a double", 9, encode(0.1f).length);
+    }
+
+    @Test
+    public void roundTripsText() throws IOException {
+        String[] values = { "", "hello", "h\u00e9llo", "\u20ac 10", "\u2603 \ud834\udd1e", longString(300, 'x'),
+                longString(300, '\u00e9') };
+        for (String value : values) {
+            Assert.assertEquals("Wrong round trip of " + value, value, roundTrip(value));
+        }
+        // e with an acute accent is 2 bytes of UTF-8
+        assertEncoding(new int[] { 0x62, 0xc3, 0xa9 }, encode("\u00e9"));
+    }
+
+    @Test
+    public void encodesStructures() throws IOException {
+        Map<String, Object> value = new LinkedHashMap<String, Object>();
+        value.put("t", true);
+        value.put("f", false);
+        value.put("n", null);
+        value.put("list", Arrays.asList(1, "two", Collections.emptyList(), Collections.emptyMap()));
+        Map<String, Object> nested = new LinkedHashMap<String, Object>();
+        nested.put("\u00fcber", Arrays.asList(Arrays.asList(2.5)));
+        value.put("nested", nested);
+        Assert.assertEquals("Wrong JSON", "{\"v\":{\"t\":true,\"f\":false,\"n\":null,"
+                + "\"list\":[1,\"two\",[],{}],\"nested\":{\"\u00fcber\":[[2.5]]}}}", toJson(encodeWrapped(value)));
+    }
+
+    @Test
+    public void transcodesRawJson() throws IOException {
+        String json = "{\"a\":[1,2.5,\"x\",null,true,{\"b\":-3}]}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CborWriter writer = new CborWriter(out);
+        writer.writeRawValue(json);
+        writer.flush();
+        Assert.assertEquals("Wrong raw JSON", json, toJson(out.toByteArray()));
+    }
+
+    @Test
+    public void readsDefiniteLengths() throws IOException {
+        // {"a": [1, 2], "b": {}, 1: 1.0 (as a half float)}
+        byte[] cbor = bytes(new int[] { 0xa3, 0x61, 'a', 0x82, 0x01, 0x02, 0x61, 'b', 0xa0, 0x01, 0xf9, 0x3c, 0x00 });
+        Assert.assertEquals("Wrong JSON", "{\"a\":[1,2],\"b\":{},\"1\":1.0}", toJson(cbor));
+    }
+
+    @Test
+    public void readsHalfFloats() throws IOException {
+        Assert.assertEquals("Wrong half float", 1.0, decode(bytes(new int[] { 0xf9, 0x3c, 0x00 })));
+        Assert.assertEquals("Wrong negative half float", -2.0, decode(bytes(new int[] { 0xf9, 0xc0, 0x00 })));
+        Assert.assertEquals("Wrong subnormal half float", Math.pow(2, -24), decode(bytes(new int[] { 0xf9, 0x00,
+                0x01 })));
+        Assert.assertEquals("Wrong infinite half float", Double.POSITIVE_INFINITY, decode(bytes(new int[] { 0xf9,
+                0x7c, 0x00 })));
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        try {
+            toJson(bytes(new int[] { 0x82, 0x01 }));
+            Assert.fail("Read truncated array");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static Object roundTrip(Object value) throws IOException {
+        return decode(encode(value));
+    }
+
+    private static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CborWriter writer = new CborWriter(out);
+        JSON.writeJson(value, false, writer);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeWrapped(Object value) throws IOException {
+        return encode(Collections.singletonMap("v", value));
+    }
+
+    private static Object decode(byte[] cbor) throws IOException {
+        JsonInput in = new CborReader(new ByteArrayInputStream(cbor));
+        in.next();
+        Object result = JSON.readJson(in, Object.class);
+        Assert.assertEquals("Trailing input", JsonInput.Token.END, in.next());
+        return result;
+    }
+
+    private static String toJson(byte[] cbor) throws IOException {
+        JsonInput in = new CborReader(new ByteArrayInputStream(cbor));
+        in.next();
+        StringWriter json = new StringWriter();
+        JsonWriter out = new JsonWriter(json);
+        JSON.copyValue(in, out);
+        out.flush();
+        return json.toString();
+    }
+
+    private static byte[] bytes(int[] values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static void assertEncoding(int[] expected, byte[] actual) {
+        Assert.assertArrayEquals("Wrong encoding", bytes(expected), actual);
+    }
+
+    private static String longString(int length, char c) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
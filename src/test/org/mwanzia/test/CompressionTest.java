@@ -0,0 +1,36 @@
+package org.mwanzia.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mwanzia.CompressingOutputStream;
+
+public class CompressionTest {
+    @Test
+    public void prefersGzip() {
+        Assert.assertEquals("Wrong encoding", "gzip", CompressingOutputStream.negotiate("deflate, gzip"));
+        Assert.assertEquals("Wrong x-gzip encoding", "gzip", CompressingOutputStream.negotiate("x-gzip"));
+        Assert.assertEquals("Wrong deflate encoding", "deflate", CompressingOutputStream.negotiate("deflate, br"));
+        Assert.assertEquals("Wrong weighted encoding", "gzip", CompressingOutputStream
+                .negotiate("gzip;q=0.5, deflate;q=1.0"));
+    }
+
+    @Test
+    public void doesNotCompressForClientsThatDontAcceptIt() {
+        Assert.assertNull("No header", CompressingOutputStream.negotiate(null));
+        Assert.assertNull("Identity", CompressingOutputStream.negotiate("identity"));
+        Assert.assertNull("Refused", CompressingOutputStream.negotiate("gzip;q=0, deflate;q=0.0"));
+        Assert.assertNull("Invalid weight", CompressingOutputStream.negotiate("gzip;q=x"));
+    }
+
+    @Test
+    public void matchesAnyCodingThatIsNotRefused() {
+        Assert.assertEquals("Wrong wildcard", "gzip", CompressingOutputStream.negotiate("*"));
+        Assert.assertEquals("Wildcard overrode refusal", "deflate", CompressingOutputStream
+                .negotiate("gzip;q=0, *"));
+        Assert.assertNull("Wildcard overrode refusals", CompressingOutputStream
+                .negotiate("*, gzip;q=0, deflate;q=0"));
+        Assert.assertNull("Refused wildcard", CompressingOutputStream.negotiate("*;q=0"));
+        Assert.assertEquals("Refused wildcard overrode acceptance", "deflate", CompressingOutputStream
+                .negotiate("deflate, *;q=0"));
+    }
+}
@@ -0,0 +1,79 @@
+package org.mwanzia.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mwanzia.Histogram;
+
+public class HistogramTest {
+    @Test
+    public void isEmptyUntilRecorded() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals("Wrong count", 0, histogram.getCount());
+        Assert.assertEquals("Wrong mean", 0.0, histogram.getMean(), 0.0);
+        Assert.assertEquals("Wrong median", 0, histogram.getValueAtPercentile(50));
+        Assert.assertEquals("Wrong max", 0, histogram.getMax());
+    }
+
+    @Test
+    public void countsSmallValuesExactly() {
+        for (long value = 0; value < 64; value++) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            histogram.record(1000);
+            Assert.assertEquals("Wrong median of " + value, value, histogram.getValueAtPercentile(50));
+        }
+    }
+
+    @Test
+    public void boundsTheErrorOfLargeValues() {
+        for (long value = 64; value < Histogram.MAX_VALUE; value = value * 17 / 16 + 1) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            histogram.record(Histogram.MAX_VALUE);
+            long median = histogram.getValueAtPercentile(50);
+            Assert.assertTrue("Median " + median + " below " + value, median >= value);
+            Assert.assertTrue("Median " + median + " too far above " + value, median <= value + value / 32);
+        }
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        Assert.assertEquals("Wrong count", 10000, histogram.getCount());
+        Assert.assertEquals("Wrong total", 50005000, histogram.getTotal());
+        Assert.assertEquals("Wrong mean", 5000.5, histogram.getMean(), 0.0);
+        Assert.assertEquals("Wrong max", 10000, histogram.getMax());
+        assertNear("Wrong median", 5000, histogram.getValueAtPercentile(50));
+        assertNear("Wrong 90th percentile", 9000, histogram.getValueAtPercentile(90));
+        assertNear("Wrong 99th percentile", 9900, histogram.getValueAtPercentile(99));
+        Assert.assertEquals("Wrong 100th percentile", 10000, histogram.getValueAtPercentile(100));
+        Assert.assertEquals("Wrong percentile above 100", 10000, histogram.getValueAtPercentile(150));
+        Assert.assertEquals("Wrong 0th percentile", 1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void neverReportsMoreThanTheMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000001);
+        Assert.assertEquals("Wrong median", 1000001, histogram.getValueAtPercentile(50));
+        Assert.assertEquals("Wrong max", 1000001, histogram.getMax());
+    }
+
+    @Test
+    public void clampsValuesOutOfRange() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        Assert.assertEquals("Wrong negative value", 0, histogram.getValueAtPercentile(100));
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals("Wrong max", Histogram.MAX_VALUE, histogram.getMax());
+        Assert.assertEquals("Wrong 100th percentile", Histogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+        Assert.assertEquals("Wrong total", Histogram.MAX_VALUE, histogram.getTotal());
+    }
+
+    private static void assertNear(String message, long expected, long actual) {
+        Assert.assertTrue(message + ": " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+}
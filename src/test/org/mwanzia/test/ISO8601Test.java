@@ -0,0 +1,106 @@
+package org.mwanzia.test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mwanzia.ISO8601;
+
+public class ISO8601Test {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void formatsInUtc() {
+        Assert.assertEquals("Wrong epoch", "1970-01-01T00:00:00.000+0000", ISO8601.format(0L));
+        Assert.assertEquals("Wrong date", "2010-05-06T07:08:09.123+0000", ISO8601.format(1273129689123L));
+        Assert.assertEquals("Wrong leap day", "2012-02-29T23:59:59.999+0000", ISO8601.format(1330559999999L));
+        Assert.assertEquals("Wrong length", ISO8601.LENGTH, ISO8601.format(new Date()).length());
+    }
+
+    @Test
+    public void formatsLikeSimpleDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // From 1600 (SimpleDateFormat switches to the Julian calendar before
+        // 1582) to 9999
+        for (long millis = -11676096000000L; millis < 253402300800000L; millis += 7919L * DAY + 3600007L) {
+            Assert.assertEquals("Wrong format of " + millis, format.format(new Date(millis)), ISO8601.format(millis));
+        }
+    }
+
+    @Test
+    public void formatsDatesBeforeTheEpoch() {
+        Assert.assertEquals("Wrong millisecond before the epoch", "1969-12-31T23:59:59.999+0000", ISO8601.format(-1L));
+        Assert.assertEquals("Wrong day before the epoch", "1969-12-31T00:00:00.000+0000", ISO8601.format(-DAY));
+        Assert.assertEquals("Wrong first day", "0000-01-01T00:00:00.000+0000", ISO8601.format(-62167219200000L));
+    }
+
+    @Test
+    public void fallsBackOutsideOfFourDigitYears() throws ParseException {
+        long year10000 = ISO8601.parseMillis("9999-12-31T23:59:59.999Z") + 1;
+        char[] buffer = new char[ISO8601.LENGTH];
+        Assert.assertEquals("Year 10000 formatted into buffer", -1, ISO8601.format(year10000, buffer, 0));
+        Assert.assertEquals("Year -1 formatted into buffer", -1, ISO8601.format(-62167219200000L - 1, buffer, 0));
+        Assert.assertEquals("Wrong fallback", "10000-01-01T00:00:00.000+0000", ISO8601.format(year10000));
+    }
+
+    @Test
+    public void roundTrips() throws ParseException {
+        for (long millis = -62167219200000L; millis < 253402300800000L; millis += 3331L * DAY + 12345679L) {
+            Assert.assertEquals("Wrong round trip of " + millis, millis, ISO8601.parseMillis(ISO8601.format(millis)));
+        }
+    }
+
+    @Test
+    public void parsesOffsets() throws ParseException {
+        long utc = ISO8601.parseMillis("2010-05-06T07:08:09.123Z");
+        Assert.assertEquals("Wrong UTC time", 1273129689123L, utc);
+        Assert.assertEquals("Wrong +0000", utc, ISO8601.parseMillis("2010-05-06T07:08:09.123+0000"));
+        Assert.assertEquals("Wrong +hhmm", utc, ISO8601.parseMillis("2010-05-06T09:08:09.123+0200"));
+        Assert.assertEquals("Wrong +hh:mm", utc, ISO8601.parseMillis("2010-05-06T09:08:09.123+02:00"));
+        Assert.assertEquals("Wrong -hhmm", utc, ISO8601.parseMillis("2010-05-06T01:38:09.123-0530"));
+        Assert.assertEquals("Wrong offset across days", utc, ISO8601.parseMillis("2010-05-05T23:08:09.123-08:00"));
+    }
+
+    @Test
+    public void parsesFractions() throws ParseException {
+        long seconds = ISO8601.parseMillis("2010-05-06T07:08:09Z");
+        Assert.assertEquals("Wrong seconds", 1273129689000L, seconds);
+        Assert.assertEquals("Wrong tenths", seconds + 100, ISO8601.parseMillis("2010-05-06T07:08:09.1Z"));
+        Assert.assertEquals("Wrong hundredths", seconds + 120, ISO8601.parseMillis("2010-05-06T07:08:09.12Z"));
+        Assert.assertEquals("Wrong microseconds", seconds + 123, ISO8601.parseMillis("2010-05-06T07:08:09.123456Z"));
+    }
+
+    @Test
+    public void rejectsInvalidDates() {
+        String[] invalid = { null, "", "2010-05-06", "2010-05-06T07:08:09", "2010-05-06T07:08:09.Z",
+                "2010-13-06T07:08:09Z", "2010-05-32T07:08:09Z", "2010-05-06T24:08:09Z", "2010/05/06T07:08:09Z",
+                "2010-05-06T07:08:09+02", "2010-05-06T07:08:09Zjunk", "20x0-05-06T07:08:09Z" };
+        for (String isoString : invalid) {
+            try {
+                ISO8601.parseMillis(isoString);
+                Assert.fail("Parsed invalid date " + isoString);
+            } catch (ParseException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void buildsTemporalTypes() throws ParseException {
+        String isoString = "2010-05-06T07:08:09.123+0000";
+        Assert.assertEquals("Wrong Timestamp", new java.sql.Timestamp(1273129689123L), ISO8601.parse(isoString,
+                java.sql.Timestamp.class));
+        Assert.assertEquals("Wrong sql Date", java.sql.Date.class, ISO8601.parse(isoString, java.sql.Date.class)
+                .getClass());
+        Calendar calendar = ISO8601.parse(isoString, Calendar.class);
+        Assert.assertEquals("Wrong Calendar", 1273129689123L, calendar.getTimeInMillis());
+        Assert.assertEquals("Wrong format of Calendar", isoString, ISO8601.format((Object) calendar));
+        Assert.assertTrue("Timestamp isn't temporal", ISO8601.isTemporal(java.sql.Timestamp.class));
+        Assert.assertFalse("String is temporal", ISO8601.isTemporal(String.class));
+    }
+}
@@ -7,10 +7,15 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.mwanzia.InvocationContext;
+
 public class JPA {
     private static final Map<String, JPA> INSTANCES = new HashMap<String, JPA>();
 
     private EntityManagerFactory emf;
+    // Within remote invocations, each invocation gets its own EntityManager
+    private final InvocationContext.Key<EntityManager> contextEntityManager = new InvocationContext.Key<EntityManager>(
+            "entityManager");
     private ThreadLocal<EntityManager> currentEntityManager = new ThreadLocal<EntityManager>() {
         protected EntityManager initialValue() {
             return emf.createEntityManager();
@@ -40,10 +45,29 @@ public class JPA {
     }
 
     public EntityManager getEntityManager() {
-        return currentEntityManager.get();
+        InvocationContext context = InvocationContext.current();
+        if (context == null)
+            return currentEntityManager.get();
+        EntityManager entityManager = context.get(contextEntityManager);
+        if (entityManager == null) {
+            final EntityManager newEntityManager = emf.createEntityManager();
+            context.set(contextEntityManager, newEntityManager);
+            context.onClose(new Runnable() {
+                public void run() {
+                    if (newEntityManager.isOpen())
+                        newEntityManager.close();
+                }
+            });
+            entityManager = newEntityManager;
+        }
+        return entityManager;
     }
 
     public void clear() {
-        currentEntityManager.remove();
+        InvocationContext context = InvocationContext.current();
+        if (context != null)
+            context.remove(contextEntityManager);
+        else
+            currentEntityManager.remove();
     }
 }
@@ -0,0 +1,218 @@
+package org.mwanzia.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mwanzia.JSON;
+import org.mwanzia.JsonExclude;
+import org.mwanzia.JsonInclude;
+import org.mwanzia.JsonInput;
+import org.mwanzia.JsonReader;
+import org.mwanzia.JsonWriter;
+
+public class JsonTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void writesWhatToJsonBuilds() throws IOException {
+        Parent parent = parent();
+        Assert.assertEquals("Wrong bean", tree(MAPPER.writeValueAsString(JSON.toJson(parent, false))),
+                tree(writeJson(parent, false)));
+        Assert.assertEquals("Wrong whitelisted bean", tree(MAPPER.writeValueAsString(JSON.toJson(parent, true))),
+                tree(writeJson(parent, true)));
+        Object[] values = { null, "text", 5, 2.5, true, State.TX, new Date(0), Arrays.asList(1, null, "x"),
+                new String[] { "a", "b" }, Parent.class };
+        for (Object value : values) {
+            Assert.assertEquals("Wrong value " + value, tree(MAPPER.writeValueAsString(JSON.toJson(value, false))),
+                    tree(writeJson(value, false)));
+        }
+    }
+
+    @Test
+    public void readsWhatFromJsonBuilds() throws IOException {
+        String json = writeJson(parent(), false);
+        Parent fromJson = JSON.fromJson(MAPPER.readValue(json, Map.class), Parent.class);
+        Parent read = readJson(json, Parent.class);
+        Assert.assertEquals("Wrong bean", writeJson(fromJson, false), writeJson(read, false));
+        Assert.assertEquals("Wrong child state", State.TX, read.getChildren().get(0).getState());
+        // Untyped objects without an @class lead are read as their @class too
+        String untyped = "{\"name\":\"child\",\"@class\":\"" + Child.class.getName() + "\"}";
+        Assert.assertEquals("Wrong untyped bean", writeJson(JSON.fromJson(MAPPER.readValue(untyped, Map.class),
+                null), false), writeJson(readJson(untyped, Object.class), false));
+        String[] values = { "null", "\"text\"", "5", "2.5", "true", "[1,null,\"x\"]" };
+        for (String value : values) {
+            Assert.assertEquals("Wrong value " + value, writeJson(JSON.fromJson(MAPPER.readValue(value,
+                    Object.class), null), false), writeJson(readJson(value, Object.class), false));
+        }
+    }
+
+    @Test
+    public void appliesModifiersToScalarProperties() throws IOException {
+        JSON.addSerializationModifier(new JSON.SerializationModifier() {
+            public <T> T modify(T original, Map<String, Object> serializationContext) throws Exception {
+                if (original instanceof Shade)
+                    return (T) original.toString().toLowerCase();
+                return original;
+            }
+        });
+        Painted painted = new Painted();
+        painted.setShade(Shade.DARK);
+        Assert.assertEquals("Wrong written shade", "dark", ((Map) tree(writeJson(painted, false))).get("shade"));
+        Assert.assertEquals("Wrong shade", "dark", ((Map) JSON.toJson(painted, false)).get("shade"));
+    }
+
+    private static <T> T readJson(String json, Class clazz) throws IOException {
+        JsonInput in = new JsonReader(new StringReader(json));
+        in.next();
+        return (T) JSON.readJson(in, clazz);
+    }
+
+    private static String writeJson(Object value, boolean whitelist) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter out = new JsonWriter(json);
+        JSON.writeJson(value, whitelist, out);
+        out.flush();
+        return json.toString();
+    }
+
+    private static Object tree(String json) throws IOException {
+        return MAPPER.readValue(json, Object.class);
+    }
+
+    private static Parent parent() {
+        Child first = new Child();
+        first.setName("first");
+        first.setState(State.TX);
+        Child second = new Child();
+        second.setName("second \"quoted\" \u00e9");
+        Parent parent = new Parent();
+        parent.setName("parent");
+        parent.setCount(3);
+        parent.setBorn(new Date(1234567890000L));
+        parent.setSecret("secret");
+        parent.getChildren().add(first);
+        parent.getChildren().add(second);
+        parent.getChildren().add(null);
+        parent.getByName().put("first", first);
+        parent.getByName().put("none", null);
+        parent.setTags(new String[] { "a", "b" });
+        return parent;
+    }
+
+    public static class Parent {
+        private String name;
+        private int count;
+        private Date born;
+        private String secret;
+        private List<Child> children = new ArrayList<Child>();
+        private Map<String, Child> byName = new LinkedHashMap<String, Child>();
+        private String[] tags;
+
+        @JsonInclude
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public Date getBorn() {
+            return born;
+        }
+
+        public void setBorn(Date born) {
+            this.born = born;
+        }
+
+        @JsonExclude
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        @JsonInclude
+        public List<Child> getChildren() {
+            return children;
+        }
+
+        public void setChildren(List<Child> children) {
+            this.children = children;
+        }
+
+        public Map<String, Child> getByName() {
+            return byName;
+        }
+
+        public void setByName(Map<String, Child> byName) {
+            this.byName = byName;
+        }
+
+        public String[] getTags() {
+            return tags;
+        }
+
+        public void setTags(String[] tags) {
+            this.tags = tags;
+        }
+    }
+
+    public static enum Shade {
+        LIGHT, DARK
+    }
+
+    public static class Painted {
+        private Shade shade;
+
+        public Shade getShade() {
+            return shade;
+        }
+
+        public void setShade(Shade shade) {
+            this.shade = shade;
+        }
+    }
+
+    public static class Child {
+        private String name;
+        private State state;
+
+        @JsonInclude
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public void setState(State state) {
+            this.state = state;
+        }
+    }
+}
@@ -29,8 +29,9 @@ import org.mwanzia.extras.validation.validators.Required;
 @Guarded
 public class TestApplication extends JacksonApplication implements ShiroSecuredApplication {
     static {
-        // Initialize the JPA persistence context
-        JPA.initialize("demo");
+        // Initialize the JPA persistence context (LoadDriver switches to the
+        // in-memory demo-h2 unit)
+        JPA.initialize(System.getProperty("mwanzia.persistenceUnit", "demo"));
     }
 
     private final ObjectMapper mapper = new ObjectMapper();
@@ -11,6 +11,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mwanzia.Application;
 import org.mwanzia.JSON;
+import org.mwanzia.ModifierRegistry;
 
 public class TestApplicationTest {
     @BeforeClass
@@ -34,9 +35,10 @@ public class TestApplicationTest {
         JPA.getInstance().getEntityManager().close();
         transaction.commit();
         ObjectMapper mapper = new ObjectMapper();
-        String json = mapper.writeValueAsString(JSON.toJson(company, true));
+        ModifierRegistry modifiers = application.getModifiers();
+        String json = mapper.writeValueAsString(JSON.toJson(company, true, modifiers));
         System.out.println(json);
-        Company deserialized = JSON.fromJson(mapper.readValue(json, Map.class), Company.class);
+        Company deserialized = JSON.fromJson(mapper.readValue(json, Map.class), Company.class, modifiers);
         Assert.assertEquals("Wrong company name", company.getName(), deserialized.getName());
         Assert.assertEquals("Wrong number of branches", company.getBranches().size(), deserialized.getBranches().size());
         Assert.assertEquals("Wrong number of company employees", company.getEmployees().size(), deserialized
@@ -49,7 +51,7 @@ public class TestApplicationTest {
         Assert.assertEquals("Wrong account", account, deserialized.getBranches().get("Austin").getAccounts().iterator()
                 .next());
         Customer deserializedOwner = JSON.fromJson(mapper.readValue(mapper.writeValueAsString(JSON.toJson(account
-                .getOwner(), false)), Map.class), Customer.class);
+                .getOwner(), false, modifiers)), Map.class), Customer.class, modifiers);
         Assert.assertEquals("Wrong state", account.getOwner().getAddress().getState(), deserializedOwner.getAddress()
                 .getState());
     }